@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Client;
+import net.runelite.api.clan.ClanChannel;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for the scrape and export hot paths. Run with ./gradlew jmh,
+ * which also reports allocation rates through the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClanMateExportBenchmark
+{
+	@Param({"100", "500", "50000"})
+	public int memberCount;
+
+	private WidgetRosterSource widgetRosterSource;
+	private ClanRosterCapture capture;
+	private List<ClanMemberMap> clanMembers;
+	private ClanPresenceSampler presenceSampler;
+	private ClanChannel clanChannel;
+
+	@Setup
+	public void setUp()
+	{
+		Client client = StubMembersPage.client(memberCount);
+		widgetRosterSource = new WidgetRosterSource(client, new ClanMateExportConfig()
+		{
+		}, new ClanMemberColumnCache(), null);
+		capture = widgetRosterSource.capture();
+		clanMembers = capture.toMembers();
+
+		presenceSampler = new ClanPresenceSampler();
+		clanChannel = StubMembersPage.clanChannel(memberCount);
+		presenceSampler.sample(clanChannel, 0);
+		presenceSampler.drain((time, memberId, world) ->
+		{
+		});
+	}
+
+	/**
+	 * The part of a scrape which runs on the client thread
+	 */
+	@Benchmark
+	public ClanRosterCapture scrapeMembers()
+	{
+		return widgetRosterSource.capture();
+	}
+
+	/**
+	 * A game tick's sample of a clan channel nobody has joined or left, which
+	 * should allocate nothing
+	 */
+	@Benchmark
+	public ClanPresenceSampler samplePresence()
+	{
+		presenceSampler.sample(clanChannel, 0);
+		return presenceSampler;
+	}
+
+	/**
+	 * The part of a scrape which runs on the export thread
+	 */
+	@Benchmark
+	public List<ClanMemberMap> buildMembers()
+	{
+		return capture.toMembers();
+	}
+
+	@Benchmark
+	public String toCSV() throws IOException
+	{
+		StringWriter out = new StringWriter();
+		ClanRosterWriter.writeCsv(clanMembers, false, out);
+		return out.toString();
+	}
+
+	@Benchmark
+	public String toJson()
+	{
+		StringWriter out = new StringWriter();
+		ClanRosterWriter.writeJson(clanMembers, out);
+		return out.toString();
+	}
+
+	@Benchmark
+	public long webRequestModel() throws IOException
+	{
+		Buffer sink = new Buffer();
+		ClanRosterRequestBody.json(new ClanMateExportWebRequestModel("Stub Clan", clanMembers)).writeTo(sink);
+		return sink.size();
+	}
+}
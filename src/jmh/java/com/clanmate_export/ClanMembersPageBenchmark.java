@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the scrape against members pages recorded from the client, played
+ * back from the test fixtures
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClanMembersPageBenchmark
+{
+	@Param({"members-small", "members-500"})
+	public String fixture;
+
+	private Client client;
+	private ClanMemberColumnCache columnCache;
+	private WidgetRosterSource widgetRosterSource;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		client = ClanMembersPageReplay.client(ClanMembersPageReplay.load(fixture));
+		columnCache = new ClanMemberColumnCache();
+		widgetRosterSource = new WidgetRosterSource(client, new ClanMateExportConfig()
+		{
+		}, columnCache, null);
+	}
+
+	/**
+	 * A game tick's check of a members page which hasn't changed
+	 */
+	@Benchmark
+	public boolean updateColumns()
+	{
+		return columnCache.update(client);
+	}
+
+	/**
+	 * The part of a scrape which runs on the client thread
+	 */
+	@Benchmark
+	public ClanRosterCapture scrapeRecordedPage()
+	{
+		return widgetRosterSource.capture();
+	}
+
+	/**
+	 * A whole scrape, through to the members being built
+	 */
+	@Benchmark
+	public ClanRoster buildRecordedMembers()
+	{
+		return widgetRosterSource.capture().toMembers();
+	}
+}
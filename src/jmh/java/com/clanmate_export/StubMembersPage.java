@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.runelite.api.Client;
+import net.runelite.api.clan.ClanChannel;
+import net.runelite.api.clan.ClanChannelMember;
+import net.runelite.api.clan.ClanSettings;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetType;
+
+/**
+ * Stand-ins for the client and the members page widgets, filled with synthetic clan members
+ */
+final class StubMembersPage
+{
+	/**
+	 * Each name is a background, the name and a rank icon
+	 */
+	private static final int NAME_STRIDE = 3;
+
+	private StubMembersPage()
+	{
+	}
+
+	/**
+	 * @return a client showing a members page of the given size, with 'Rank' and 'Joined' selected
+	 */
+	static Client client(int memberCount)
+	{
+		Widget[] rsns = new Widget[memberCount * NAME_STRIDE];
+		Widget[] ranks = new Widget[memberCount * 2];
+		Widget[] joined = new Widget[memberCount * 2];
+		for (int i = 0; i < memberCount; i++)
+		{
+			rsns[i * NAME_STRIDE] = widget(WidgetType.RECTANGLE, null, null);
+			rsns[i * NAME_STRIDE + 1] = widget(WidgetType.TEXT, "Member " + i, null);
+			rsns[i * NAME_STRIDE + 2] = widget(WidgetType.GRAPHIC, null, null);
+			ranks[i] = widget(WidgetType.RECTANGLE, null, null);
+			joined[i] = widget(WidgetType.RECTANGLE, null, null);
+			ranks[memberCount + i] = widget(WidgetType.TEXT, i % 10 == 0 ? "<col=ff0000>Ruby</col>" : "Sapphire", null);
+			joined[memberCount + i] = widget(WidgetType.TEXT, (1 + i % 28) + "-Jun-2021", null);
+		}
+
+		Map<Integer, Widget> widgets = new HashMap<>();
+		widgets.put(ClanMembersWidget.RSN_COLUMN, widget(WidgetType.LAYER, null, rsns));
+		widgets.put(ClanMembersWidget.FIRST_COLUMN, widget(WidgetType.LAYER, null, ranks));
+		widgets.put(ClanMembersWidget.SECOND_COLUMN, widget(WidgetType.LAYER, null, joined));
+		widgets.put(ClanMembersWidget.FIRST_DROP_DOWN, dropDown(ClanMembersWidget.RANK_COLUMN_NAME));
+		widgets.put(ClanMembersWidget.SECOND_DROP_DOWN, dropDown(ClanMembersWidget.JOINED_COLUMN_NAME));
+
+		ClanSettings clanSettings = proxy(ClanSettings.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getName":
+					return "Stub Clan";
+				case "getMembers":
+					return Collections.nCopies(memberCount, null);
+				default:
+					return null;
+			}
+		});
+
+		return proxy(Client.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getWidget":
+					return widgets.get((Integer) args[0]);
+				case "getClanSettings":
+					return clanSettings;
+				default:
+					return null;
+			}
+		});
+	}
+
+	/**
+	 * @return a clan channel with the given number of members in it, spread over a few worlds
+	 */
+	static ClanChannel clanChannel(int memberCount)
+	{
+		List<ClanChannelMember> members = new ArrayList<>(memberCount);
+		for (int i = 0; i < memberCount; i++)
+		{
+			String name = "Member " + i;
+			int world = 301 + i % 50;
+			members.add(proxy(ClanChannelMember.class, (method, args) -> "getName".equals(method) ? name : "getWorld".equals(method) ? world : null));
+		}
+
+		return proxy(ClanChannel.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getName":
+					return "Stub Clan";
+				case "getMembers":
+					return members;
+				default:
+					return null;
+			}
+		});
+	}
+
+	private static Widget dropDown(String label)
+	{
+		Widget[] children = new Widget[ClanMembersWidget.DROP_DOWN_LABEL_INDEX + 1];
+		for (int i = 0; i < children.length; i++)
+		{
+			children[i] = widget(WidgetType.TEXT, i == ClanMembersWidget.DROP_DOWN_LABEL_INDEX ? label : "", null);
+		}
+		return widget(WidgetType.LAYER, null, children);
+	}
+
+	static Widget widget(int type, String text, Widget[] children)
+	{
+		return proxy(Widget.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getType":
+					return type;
+				case "getText":
+					return text;
+				case "getChildren":
+					return children;
+				default:
+					return null;
+			}
+		});
+	}
+
+	interface Handler
+	{
+		Object invoke(String method, Object[] args);
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T proxy(Class<T> type, Handler handler)
+	{
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+			(proxy, method, args) -> handler.invoke(method.getName(), args));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.List;
+
+
+/**
+ * This class is used to create a compact json object with when clan members
+ * were in the clan channel, and on which world, over a period of time
+ */
+public class ClanActivityBatch {
+
+    /**
+     * The name of the clan
+     */
+    private String clanName;
+
+    /**
+     * When the batch starts, in seconds since the epoch
+     */
+    private long from;
+
+    /**
+     * When the batch ends, in seconds since the epoch
+     */
+    private long to;
+
+    /**
+     * Names of the members with sessions in this batch
+     */
+    private List<String> members;
+
+    /**
+     * Each session as [index into members, world, start, end], with start and end
+     * in seconds since from. A session still going when the batch was made ends at to.
+     */
+    private List<int[]> sessions;
+
+    public ClanActivityBatch(String clanName, long from, long to, List<String> members, List<int[]> sessions) {
+        this.clanName = clanName;
+        this.from = from;
+        this.to = to;
+        this.members = members;
+        this.sessions = sessions;
+    }
+
+    public String getClanName() {
+        return clanName;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    public List<int[]> getSessions() {
+        return sessions;
+    }
+}
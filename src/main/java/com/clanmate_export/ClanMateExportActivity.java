@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Turns the presence sampler's records into sessions, each a member's time on
+ * one world, and sends them to the export urls in batches. Records are drained
+ * every so often in the background, so the client thread only ever writes them.
+ */
+@Slf4j
+@Singleton
+public class ClanMateExportActivity implements ClanPresenceSampler.Sink
+{
+	private static final long DRAIN_INTERVAL_SECONDS = 30;
+
+	/**
+	 * The most batches kept for a url which isn't accepting them, the oldest being dropped first
+	 */
+	private static final int MAX_WAITING_BATCHES = 24;
+
+	private final ClanPresenceSampler sampler;
+	private final ClanMateExportConfig config;
+	private final ClanMateExportUploader uploader;
+	private final ScheduledExecutorService executor;
+
+	private ScheduledFuture<?> draining;
+
+	/**
+	 * The world each member's session is on, or offline if they don't have one, by id
+	 */
+	private int[] openWorlds = new int[256];
+	/**
+	 * When each member's session started, by id
+	 */
+	private long[] openSince = new long[256];
+	private int memberCount;
+
+	/**
+	 * Sessions which have ended since the last batch
+	 */
+	private final List<Session> ended = new ArrayList<>();
+	private long batchStartedAt = System.currentTimeMillis();
+
+	/**
+	 * Batches yet to be accepted, by url
+	 */
+	private final Map<String, Waiting> waiting = new HashMap<>();
+
+	@Inject
+	ClanMateExportActivity(ClanPresenceSampler sampler, ClanMateExportConfig config, ClanMateExportUploader uploader,
+		ScheduledExecutorService executor)
+	{
+		this.sampler = sampler;
+		this.config = config;
+		this.uploader = uploader;
+		this.executor = executor;
+	}
+
+	public synchronized void start()
+	{
+		this.batchStartedAt = System.currentTimeMillis();
+		this.draining = this.executor.scheduleWithFixedDelay(this::run, DRAIN_INTERVAL_SECONDS, DRAIN_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stop()
+	{
+		if (this.draining != null)
+		{
+			this.draining.cancel(false);
+			this.draining = null;
+		}
+	}
+
+	private void run()
+	{
+		try
+		{
+			long now = System.currentTimeMillis();
+			drain();
+			if (now - this.batchStartedAt >= TimeUnit.MINUTES.toMillis(this.config.getActivityUploadInterval()))
+			{
+				upload(batches(now));
+			}
+		}
+		catch (RuntimeException e)
+		{
+			//Keeps the drain scheduled
+			log.warn("Unable to batch clan activity", e);
+		}
+	}
+
+	/**
+	 * Takes everything the sampler has recorded, ending and starting sessions
+	 */
+	synchronized void drain()
+	{
+		this.sampler.drain(this);
+		long dropped = this.sampler.takeDropped();
+		if (dropped > 0)
+		{
+			log.warn("Dropped {} clan activity records, the ring buffer was full", dropped);
+		}
+	}
+
+	@Override
+	public void accept(long time, int memberId, int world)
+	{
+		if (memberId >= this.openWorlds.length)
+		{
+			int length = Math.max(memberId + 1, this.openWorlds.length * 2);
+			this.openWorlds = Arrays.copyOf(this.openWorlds, length);
+			this.openSince = Arrays.copyOf(this.openSince, length);
+		}
+		this.memberCount = Math.max(this.memberCount, memberId + 1);
+
+		if (this.openWorlds[memberId] != ClanPresenceSampler.OFFLINE)
+		{
+			this.ended.add(new Session(memberId, this.openWorlds[memberId], this.openSince[memberId], time));
+		}
+		this.openWorlds[memberId] = world;
+		this.openSince[memberId] = time;
+	}
+
+	/**
+	 * Batches up every session since the last batch for each clan, sessions still going
+	 * being cut off at now and carried on into the next batch
+	 */
+	synchronized List<ClanActivityBatch> batches(long now)
+	{
+		long from = this.batchStartedAt;
+		Map<String, BatchBuilder> builders = new LinkedHashMap<>();
+		for (Session session : this.ended)
+		{
+			add(builders, from, session.memberId, session.world, session.start, session.end);
+		}
+		for (int id = 0; id < this.memberCount; id++)
+		{
+			if (this.openWorlds[id] != ClanPresenceSampler.OFFLINE)
+			{
+				add(builders, from, id, this.openWorlds[id], this.openSince[id], now);
+			}
+		}
+		this.ended.clear();
+		this.batchStartedAt = now;
+
+		List<ClanActivityBatch> batches = new ArrayList<>(builders.size());
+		for (Map.Entry<String, BatchBuilder> builder : builders.entrySet())
+		{
+			batches.add(new ClanActivityBatch(builder.getKey(), TimeUnit.MILLISECONDS.toSeconds(from),
+				TimeUnit.MILLISECONDS.toSeconds(now), builder.getValue().members, builder.getValue().sessions));
+		}
+		return batches;
+	}
+
+	private void add(Map<String, BatchBuilder> builders, long from, int memberId, int world, long start, long end)
+	{
+		start = Math.max(start, from);
+		if (end <= start)
+		{
+			return;
+		}
+
+		BatchBuilder builder = builders.computeIfAbsent(this.sampler.clanName(memberId), clanName -> new BatchBuilder());
+		Integer index = builder.indices.get(memberId);
+		if (index == null)
+		{
+			index = builder.members.size();
+			builder.indices.put(memberId, index);
+			builder.members.add(this.sampler.name(memberId));
+		}
+		builder.sessions.add(new int[]{index, world,
+			(int) TimeUnit.MILLISECONDS.toSeconds(start - from), (int) TimeUnit.MILLISECONDS.toSeconds(end - from)});
+	}
+
+	private void upload(List<ClanActivityBatch> batches)
+	{
+		for (ClanMateExportDestination destination : ClanMateExportDestination.fromConfig(this.config))
+		{
+			Waiting waiting;
+			synchronized (this)
+			{
+				waiting = this.waiting.computeIfAbsent(destination.getUrl(), url -> new Waiting());
+				waiting.batches.addAll(batches);
+				while (waiting.batches.size() > MAX_WAITING_BATCHES)
+				{
+					waiting.batches.removeFirst();
+				}
+			}
+			send(destination, waiting);
+		}
+	}
+
+	/**
+	 * Sends a url's batches one at a time, oldest first, stopping at the first one it doesn't accept
+	 */
+	private void send(ClanMateExportDestination destination, Waiting waiting)
+	{
+		ClanActivityBatch batch;
+		synchronized (this)
+		{
+			if (waiting.sending || waiting.batches.isEmpty())
+			{
+				return;
+			}
+			waiting.sending = true;
+			batch = waiting.batches.peekFirst();
+		}
+
+		this.uploader.uploadActivity(destination, batch).whenComplete((accepted, e) ->
+		{
+			boolean next;
+			synchronized (this)
+			{
+				waiting.sending = false;
+				next = e == null && accepted;
+				if (next)
+				{
+					waiting.batches.remove(batch);
+				}
+			}
+
+			if (next)
+			{
+				send(destination, waiting);
+			}
+			else
+			{
+				log.debug("Clan activity not accepted by {}, keeping {} batches", destination.getUrl(), waiting.batches.size());
+			}
+		});
+	}
+
+	private static final class Session
+	{
+		private final int memberId;
+		private final int world;
+		private final long start;
+		private final long end;
+
+		private Session(int memberId, int world, long start, long end)
+		{
+			this.memberId = memberId;
+			this.world = world;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private static final class BatchBuilder
+	{
+		private final Map<Integer, Integer> indices = new HashMap<>();
+		private final List<String> members = new ArrayList<>();
+		private final List<int[]> sessions = new ArrayList<>();
+	}
+
+	private static final class Waiting
+	{
+		private final Deque<ClanActivityBatch> batches = new ArrayDeque<>();
+		private boolean sending;
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.callback.ClientThread;
+
+/**
+ * Exports the roster to the url in the background when something suggests it
+ * changed. Changes are debounced, so a burst of them is sent once after things
+ * have been quiet for a while, and exports are kept a minimum interval apart.
+ * The shared scheduled executor only keeps time, the roster is built and queued
+ * on the plugin's export executor.
+ */
+@Slf4j
+@Singleton
+public class ClanMateExportAutoExporter
+{
+	/**
+	 * A burst that never goes quiet is still exported after this many quiet periods
+	 */
+	private static final int MAX_QUIET_PERIODS = 5;
+
+	private final ClientThread clientThread;
+	private final ClanMateExportConfig config;
+	private final ClanSettingsRosterSource clanSettingsRosterSource;
+	private final ClanMateExportRosterBuilder rosterBuilder;
+	private final ClanMateExportUploader uploader;
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * The plugin's export executor, or null while the plugin is stopped
+	 */
+	private volatile Executor exportExecutor;
+
+	private ScheduledFuture<?> pending;
+	private long burstStartedAt;
+	private long lastExportAt;
+
+	@Inject
+	ClanMateExportAutoExporter(ClientThread clientThread, ClanMateExportConfig config,
+		ClanSettingsRosterSource clanSettingsRosterSource, ClanMateExportRosterBuilder rosterBuilder,
+		ClanMateExportUploader uploader, ScheduledExecutorService executor)
+	{
+		this.clientThread = clientThread;
+		this.config = config;
+		this.clanSettingsRosterSource = clanSettingsRosterSource;
+		this.rosterBuilder = rosterBuilder;
+		this.uploader = uploader;
+		this.executor = executor;
+	}
+
+	/**
+	 * Notes that the roster may have changed, pushing the export back until things are quiet
+	 */
+	public synchronized void changed()
+	{
+		long now = System.currentTimeMillis();
+		if (this.pending == null)
+		{
+			this.burstStartedAt = now;
+		}
+		else
+		{
+			this.pending.cancel(false);
+		}
+
+		long exportAt = exportAt(now, this.burstStartedAt, this.lastExportAt,
+			TimeUnit.SECONDS.toMillis(this.config.getAutoExportQuietPeriod()),
+			TimeUnit.MINUTES.toMillis(this.config.getAutoExportMinInterval()));
+		this.pending = this.executor.schedule(this::export, exportAt - now, TimeUnit.MILLISECONDS);
+	}
+
+	public void start(Executor exportExecutor)
+	{
+		this.exportExecutor = exportExecutor;
+	}
+
+	public synchronized void stop()
+	{
+		this.exportExecutor = null;
+		if (this.pending != null)
+		{
+			this.pending.cancel(false);
+			this.pending = null;
+		}
+	}
+
+	/**
+	 * @return when to export after a change at now, in the same units as the arguments
+	 */
+	static long exportAt(long now, long burstStartedAt, long lastExportAt, long quietPeriod, long minInterval)
+	{
+		long exportAt = Math.min(now + quietPeriod, burstStartedAt + quietPeriod * MAX_QUIET_PERIODS);
+		return Math.max(exportAt, lastExportAt + minInterval);
+	}
+
+	private void export()
+	{
+		synchronized (this)
+		{
+			this.pending = null;
+			this.lastExportAt = System.currentTimeMillis();
+		}
+
+		List<ClanMateExportDestination> destinations = ClanMateExportDestination.fromConfig(this.config);
+		if (!this.config.getAutoExport() || destinations.isEmpty())
+		{
+			return;
+		}
+
+		this.clientThread.invoke(() ->
+		{
+			ClanRosterCapture capture = this.clanSettingsRosterSource.captureWithoutPage();
+			Executor exportExecutor = this.exportExecutor;
+			if (capture != null && capture.size() > 0 && exportExecutor != null)
+			{
+				exportExecutor.execute(() -> upload(capture, destinations, exportExecutor));
+			}
+		});
+	}
+
+	private void upload(ClanRosterCapture capture, List<ClanMateExportDestination> destinations, Executor exportExecutor)
+	{
+		this.rosterBuilder.build(capture, exportExecutor).thenAccept(members ->
+		{
+			for (ClanMateExportDestination destination : destinations)
+			{
+				try
+				{
+					this.uploader.export(capture.getClanName(), destination, members, false);
+				}
+				catch (IOException e)
+				{
+					log.warn("Unable to queue automatic export to {}", destination.getUrl(), e);
+				}
+			}
+		});
+	}
+}
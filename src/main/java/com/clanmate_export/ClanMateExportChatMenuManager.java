@@ -26,9 +26,11 @@
 package com.clanmate_export;
 
 import com.google.common.util.concurrent.Runnables;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.game.chatbox.ChatboxPanelManager;
 
 
+import java.util.List;
 import javax.inject.Inject;
 import net.runelite.client.game.chatbox.ChatboxTextMenuInput;
 
@@ -42,14 +44,17 @@ public class ClanMateExportChatMenuManager
 
 	private final ChatboxPanelManager chatboxPanelManager;
 
+	private final ClientThread clientThread;
+
 
 	@Inject
 	private ClanMateExportConfig config;
 
 	@Inject
-	public ClanMateExportChatMenuManager(ClanMateExportPlugin plugin, ChatboxPanelManager chatboxPanelManager, ClanMateExportConfig config)
+	public ClanMateExportChatMenuManager(ClanMateExportPlugin plugin, ChatboxPanelManager chatboxPanelManager, ClanMateExportConfig config, ClientThread clientThread)
 	{
 
+		this.clientThread = clientThread;
 
 		this.chatboxPanelManager = chatboxPanelManager;
 		this.plugin = plugin;
@@ -59,17 +64,91 @@ public class ClanMateExportChatMenuManager
 	public enum WhatToShow
 	{
 		OPEN_MEMBERS_SCREEN,
-		CHECK_COLUMNS_JOINED,
-		CHECK_COLUMNS_RANKED,
 		SUCCESS,
 		SHOW_EXPORT_OPTIONS,
-		WEB_REQUEST_FAILED
+		WEB_REQUEST_FAILED,
+		WEB_REQUEST_RETRYING,
+		UNCHANGED,
+		EXPORT_QUEUED
 	}
 
 	/**
-	 * Creates chat menu options to help the user
+	 * Creates chat menu options to help the user. Safe to call from any
+	 * thread, the menu is opened on the client thread.
 	 */
 	public void update(WhatToShow whatToShow)
+	{
+		this.clientThread.invoke(() -> show(whatToShow));
+	}
+
+	/**
+	 * Shows a message with an okay option. Safe to call from any thread.
+	 */
+	public void showMessage(String message)
+	{
+		this.clientThread.invoke(() -> this.chatboxPanelManager.openTextMenuInput(message)
+			.option("Okay", Runnables.doNothing())
+			.build());
+	}
+
+	/**
+	 * Asks for part of a name, then shows the clan members found. Must be called on the client thread.
+	 */
+	public void showFindMember()
+	{
+		this.chatboxPanelManager.openTextInput("Find a clanmate by any part of their name, or a name they had before")
+			.onDone(this.plugin::findMembers)
+			.build();
+	}
+
+	/**
+	 * Shows the clan members found for a search. Safe to call from any thread.
+	 */
+	public void showFound(String query, List<ClanMemberMap> found)
+	{
+		if (found == null || found.isEmpty())
+		{
+			showMessage("No clanmates found for '" + query + "'.");
+			return;
+		}
+
+		StringBuilder message = new StringBuilder("Clanmates found for '").append(query).append("':");
+		for (ClanMemberMap member : found)
+		{
+			message.append("<br>").append(member.getRSN());
+			if (member.getPreviousRsn() != null)
+			{
+				message.append(" (was ").append(member.getPreviousRsn()).append(')');
+			}
+			message.append(" - ").append(member.getRank()).append(", joined ").append(member.getJoinedDate());
+		}
+		showMessage(message.toString());
+	}
+
+	/**
+	 * Asks for the columns an export is still waiting on. The export finishes by
+	 * itself once they have all been shown. Safe to call from any thread.
+	 */
+	public void showMissingColumns(List<String> columnNames)
+	{
+		StringBuilder names = new StringBuilder();
+		for (int i = 0; i < columnNames.size(); i++)
+		{
+			if (i > 0)
+			{
+				names.append(i == columnNames.size() - 1 ? " and " : ", ");
+			}
+			names.append('\'').append(columnNames.get(i)).append('\'');
+		}
+
+		String message = "Select " + names + " in either column, one at a time is fine. <br> The export will finish once "
+			+ (columnNames.size() == 1 ? "it has" : "they have") + " been shown.";
+		this.clientThread.invoke(() -> this.chatboxPanelManager.openTextMenuInput(message)
+			.option("Cancel.", this.plugin::cancelPendingExport)
+			.build());
+	}
+
+	private void show(WhatToShow whatToShow)
 	{
 
 		switch (whatToShow)
@@ -80,17 +159,6 @@ public class ClanMateExportChatMenuManager
 					.option("Okay", Runnables.doNothing())
 					.build();
 				return;
-			case CHECK_COLUMNS_JOINED:
-
-				ChatboxTextMenuInput checkColumnsJoined = this.chatboxPanelManager.openTextMenuInput("Make Sure 'Joined' is selected as the last column.");
-				addChoices(checkColumnsJoined);
-				checkColumnsJoined.build();
-				return;
-			case CHECK_COLUMNS_RANKED:
-				ChatboxTextMenuInput checkColumnsRanked = this.chatboxPanelManager.openTextMenuInput("Make Sure 'Ranked' is selected as the <br> middle column.");
-				addChoices(checkColumnsRanked);
-				checkColumnsRanked.build();
-				return;
 			case SUCCESS:
 				this.chatboxPanelManager.openTextMenuInput("Clanmates have been exported. Can close the screen")
 					.option("Okay", Runnables.doNothing()).build();
@@ -100,6 +168,18 @@ public class ClanMateExportChatMenuManager
 				this.chatboxPanelManager.openTextMenuInput("Web request failed.")
 					.option("Okay", Runnables.doNothing()).build();
 				return;
+			case WEB_REQUEST_RETRYING:
+				this.chatboxPanelManager.openTextMenuInput("Web request failed. It will be retried in the background.")
+					.option("Okay", Runnables.doNothing()).build();
+				return;
+			case UNCHANGED:
+				this.chatboxPanelManager.openTextMenuInput("Clanmates haven't changed since the last export. Nothing was sent.")
+					.option("Okay", Runnables.doNothing()).build();
+				return;
+			case EXPORT_QUEUED:
+				this.chatboxPanelManager.openTextMenuInput("An export is still running. The latest clanmates will be exported once it's done.")
+					.option("Okay", Runnables.doNothing()).build();
+				return;
 			case SHOW_EXPORT_OPTIONS:
 				ChatboxTextMenuInput exportOptions = this.chatboxPanelManager.openTextMenuInput("Select an export option.");
 				addChoices(exportOptions);
@@ -107,21 +187,60 @@ public class ClanMateExportChatMenuManager
 		}
 	}
 
+	/**
+	 * Asks what to copy from the clan's history. Must be called on the client thread.
+	 */
+	public void showHistoryOptions()
+	{
+		String days = ClanMateExportPlugin.HISTORY_DAYS + " days";
+		this.chatboxPanelManager.openTextMenuInput("Copy clan history to your clipboard.")
+			.option("1. Who joined in the last " + days + ".", this.plugin::exportJoined)
+			.option("2. Who left in the last " + days + ".", this.plugin::exportLeft)
+			.option("3. Every change in the last " + days + ".", this.plugin::exportRecentChanges)
+			.option("4. A clanmate's history.", this::showMemberHistory)
+			.option("5. Who stayed " + days + " after joining.", this.plugin::exportRetention)
+			.option("6. The roster on a date.", this::showRosterAsOf)
+			.option("7. Cancel.", Runnables.doNothing())
+			.build();
+	}
+
+	/**
+	 * Asks for a clanmate's name, then copies their history. Must be called on the client thread.
+	 */
+	private void showMemberHistory()
+	{
+		this.chatboxPanelManager.openTextInput("Copy the joins, leaves and rank changes of a clanmate named")
+			.onDone(this.plugin::exportMemberHistory)
+			.build();
+	}
+
+	/**
+	 * Asks for a date, then copies the roster as it was then. Must be called on the client thread.
+	 */
+	private void showRosterAsOf()
+	{
+		this.chatboxPanelManager.openTextInput("Copy the roster as it was on a date, such as 19-Jun-2021")
+			.onDone(this.plugin::exportRosterAsOf)
+			.build();
+	}
+
 	/**
 	 * Adds the export options to the chat menu
 	 * @param chatboxTextMenuInput
 	 */
 	private void addChoices(ChatboxTextMenuInput chatboxTextMenuInput)
 	{
-		chatboxTextMenuInput.option("1. Export to your clipboard.", this.plugin::ClanToClipBoard);
+		int choice = 1;
+		chatboxTextMenuInput.option(choice++ + ". Export to your clipboard.", this.plugin::ClanToClipBoard);
 		if (this.config.getSendWebRequest())
 		{
-			chatboxTextMenuInput.option("2. Export to the recorded URL.", this.plugin::SendClanMembersToUrl);
-			chatboxTextMenuInput.option("3. Cancel.", Runnables.doNothing());
+			chatboxTextMenuInput.option(choice++ + ". Export to the recorded URL.", this.plugin::SendClanMembersToUrl);
 		}
-		else
+		chatboxTextMenuInput.option(choice++ + ". Find a clanmate.", this::showFindMember);
+		if (this.config.getSaveHistory())
 		{
-			chatboxTextMenuInput.option("2. Cancel.", Runnables.doNothing());
+			chatboxTextMenuInput.option(choice++ + ". Export clan history.", this::showHistoryOptions);
 		}
+		chatboxTextMenuInput.option(choice + ". Cancel.", Runnables.doNothing());
 	}
 }
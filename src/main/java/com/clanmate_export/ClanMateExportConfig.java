@@ -28,6 +28,8 @@ package com.clanmate_export;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.Range;
+import net.runelite.client.config.Units;
 import net.runelite.client.config.ConfigSection;
 
 import javax.management.DescriptorKey;
@@ -95,4 +97,172 @@ public interface ClanMateExportConfig extends Config
 		return "";
 	}
 
+	@ConfigItem(
+			position = 6,
+			keyName = "exportMode",
+			name = "URL export mode",
+			description = "Send the whole roster, or only joins, leaves and rank changes since the last successful export"
+	)
+	default ClanMateExportMode getExportMode() {
+		return ClanMateExportMode.FULL;
+	}
+
+	@ConfigItem(
+			position = 7,
+			keyName = "compressWebRequest",
+			name = "Compress URL exports",
+			description = "Gzips exports sent to the URL. Your server needs to accept 'Content-Encoding: gzip'"
+	)
+	default boolean getCompressWebRequest() {
+		return false;
+	}
+
+	@ConfigItem(
+			position = 8,
+			keyName = "showMetricsPanel",
+			name = "Show metrics panel",
+			description = "Adds a side panel with timings, payload sizes and statuses for exports"
+	)
+	default boolean getShowMetricsPanel() {
+		return false;
+	}
+
+	@ConfigItem(
+			position = 9,
+			keyName = "autoExport",
+			name = "Export to URL automatically",
+			description = "Sends the roster to the URL in the background when clan members join or leave the clan channel. Joined dates come from the last export when the members page isn't open"
+	)
+	default boolean getAutoExport() {
+		return false;
+	}
+
+	@Units(Units.SECONDS)
+	@Range(min = 1)
+	@ConfigItem(
+			position = 10,
+			keyName = "autoExportQuietPeriod",
+			name = "Automatic export delay",
+			description = "How long to wait after the last change before exporting, so a burst of changes is sent once"
+	)
+	default int getAutoExportQuietPeriod() {
+		return 60;
+	}
+
+	@Units(Units.MINUTES)
+	@Range(min = 1)
+	@ConfigItem(
+			position = 11,
+			keyName = "autoExportMinInterval",
+			name = "Automatic export interval",
+			description = "The least time between automatic exports"
+	)
+	default int getAutoExportMinInterval() {
+		return 15;
+	}
+
+	@ConfigItem(
+			position = 12,
+			keyName = "otherDestinations",
+			name = "Other URLs to send exports to",
+			description = "One URL per line, sent at the same time as the URL above. Options follow the URL separated by |, for example: https://example.com/roster | format=csv | timeout=10 | gzip | Authorization: Bearer abc"
+	)
+	default String getOtherDestinations() {
+		return "";
+	}
+
+	@ConfigItem(
+			position = 13,
+			keyName = "saveHistory",
+			name = "Keep a roster history",
+			description = "Saves every exported roster, and the changes between them, to .runelite/clanmate-export, so the roster at any date and who joined, left or was promoted when can be looked up later"
+	)
+	default boolean getSaveHistory() {
+		return false;
+	}
+
+	@ConfigItem(
+			position = 14,
+			keyName = "otherColumns",
+			name = "Other columns",
+			description = "Other members page columns to export after the joined date, separated by commas, named as in the drop downs. Show each once on the members page and it is remembered"
+	)
+	default String getOtherColumns() {
+		return "";
+	}
+
+	@ConfigItem(
+			position = 15,
+			keyName = "hiscoreLookup",
+			name = "Add hiscores",
+			description = "Looks up each member's total level and xp and adds them to the export. Lookups are kept for the time below, so exports close together don't look anyone up again"
+	)
+	default boolean getHiscoreLookup() {
+		return false;
+	}
+
+	@ConfigItem(
+			position = 16,
+			keyName = "hiscoreUrl",
+			name = "Hiscore URL",
+			description = "Where hiscores are looked up, with the player name added as ?player="
+	)
+	default String getHiscoreUrl() {
+		return "https://secure.runescape.com/m=hiscore_oldschool/index_lite.ws";
+	}
+
+	@Range(min = 1)
+	@ConfigItem(
+			position = 17,
+			keyName = "hiscoreCacheHours",
+			name = "Hiscore cache hours",
+			description = "How many hours a member's hiscores are kept before being looked up again"
+	)
+	default int getHiscoreCacheHours() {
+		return 12;
+	}
+
+	@Range(min = 0)
+	@ConfigItem(
+			position = 18,
+			keyName = "uploadPageSize",
+			name = "Members per upload page",
+			description = "Sends full exports to the URL above in pages of this many members, committed once the server has every page, so an interrupted export only sends the pages it is missing. 0 sends everything in one request. Other URLs take a pages= option"
+	)
+	default int getUploadPageSize() {
+		return 0;
+	}
+
+	@ConfigItem(
+			position = 19,
+			keyName = "exportTemplate",
+			name = "CSV template",
+			description = "How CSV exports to the clipboard are laid out: csv, tsv, markdown or discord, or the fields in order followed by options, for example: rsn,rank,joined,* | delimiter=; | header. CSV sent to a URL is always plain csv"
+	)
+	default String getExportTemplate() {
+		return "csv";
+	}
+
+	@ConfigItem(
+			position = 20,
+			keyName = "activityTracking",
+			name = "Track clan activity",
+			description = "Records when clan members are in the clan channel, and on which world, and sends it to the export URLs in batches"
+	)
+	default boolean getActivityTracking() {
+		return false;
+	}
+
+	@Units(Units.MINUTES)
+	@Range(min = 1)
+	@ConfigItem(
+			position = 21,
+			keyName = "activityUploadInterval",
+			name = "Activity upload interval",
+			description = "How often a batch of clan activity is sent"
+	)
+	default int getActivityUploadInterval() {
+		return 15;
+	}
+
 }
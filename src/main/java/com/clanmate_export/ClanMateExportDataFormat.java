@@ -38,7 +38,13 @@ public enum ClanMateExportDataFormat {
     /**
      * Represent clan extract data in CSV format
      */
-    CSV("CSV");
+    CSV("CSV"),
+
+    /**
+     * Represent clan extract data in a compact binary format, see ClanRosterBinaryEncoder.
+     * Base64 encoded when copied to the clipboard
+     */
+    BINARY("Binary");
 
     private final String name;
 
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * This class is used to create a json object with only the changes to a clan's roster
+ * since the last successful export
+ */
+public class ClanMateExportDeltaModel {
+
+    /**
+     * The name of the clan
+     */
+    private String clanName;
+
+    /**
+     * Hash of the roster these changes apply to
+     */
+    private String baseHash;
+
+    /**
+     * Hash of the roster once these changes are applied
+     */
+    private String hash;
+
+    /**
+     * Members who were not in the last export
+     */
+    private List<ClanMemberMap> joined = new ArrayList<>();
+
+    /**
+     * Names of members who have left
+     */
+    private List<String> left = new ArrayList<>();
+
+    /**
+     * Members whose rank, joined date, or any other exported column, has changed. Hiscores
+     * change as members train, so a change to them alone doesn't count.
+     */
+    private List<ClanMemberMap> rankChanges = new ArrayList<>();
+
+    private ClanMateExportDeltaModel(String clanName, String baseHash, String hash) {
+        this.clanName = clanName;
+        this.baseHash = baseHash;
+        this.hash = hash;
+    }
+
+    /**
+     * Works out the changes between two rosters, keyed by rsn
+     *
+     * @param clanName the name of the clan
+     * @param previous the roster from the last successful export
+     * @param current  the roster being exported now
+     * @return the changes that turn previous into current
+     */
+    public static ClanMateExportDeltaModel between(String clanName, List<ClanMemberMap> previous, List<ClanMemberMap> current) {
+        ClanMateExportDeltaModel delta = new ClanMateExportDeltaModel(clanName, ClanRosterHash.of(previous), ClanRosterHash.of(current));
+
+        Map<String, ClanMemberMap> previousByRsn = new HashMap<>(previous.size() * 2);
+        for (ClanMemberMap member : previous) {
+            previousByRsn.put(member.getRSN(), member);
+        }
+
+        for (ClanMemberMap member : current) {
+            ClanMemberMap before = previousByRsn.remove(member.getRSN());
+            if (before == null) {
+                delta.joined.add(member);
+            } else if (!Objects.equals(before.getRank(), member.getRank())
+                || !Objects.equals(before.getJoinedDate(), member.getJoinedDate())
+                || !sameColumns(before.getColumns(), member.getColumns())) {
+                delta.rankChanges.add(member);
+            }
+        }
+
+        delta.left.addAll(previousByRsn.keySet());
+        return delta;
+    }
+
+    /**
+     * @return true if the columns are the same, leaving out hiscores
+     */
+    private static boolean sameColumns(Map<String, String> before, Map<String, String> after) {
+        for (Map.Entry<String, String> column : after.entrySet()) {
+            if (!ClanMateExportHiscores.isHiscoreColumn(column.getKey())
+                && !Objects.equals(column.getValue(), before.get(column.getKey()))) {
+                return false;
+            }
+        }
+        for (String columnName : before.keySet()) {
+            if (!ClanMateExportHiscores.isHiscoreColumn(columnName) && !after.containsKey(columnName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return joined.isEmpty() && left.isEmpty() && rankChanges.isEmpty();
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public List<ClanMemberMap> getJoined() {
+        return joined;
+    }
+
+    public List<String> getLeft() {
+        return left;
+    }
+
+    public List<ClanMemberMap> getRankChanges() {
+        return rankChanges;
+    }
+}
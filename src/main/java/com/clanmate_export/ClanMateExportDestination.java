@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+
+/**
+ * A url exports are sent to, with its own format, headers and timeout.
+ * Besides the main url, others are configured a line each as the url
+ * followed by options separated by |, such as
+ * {@code https://example.com/roster | format=csv | timeout=10 | gzip | pages=500 | Authorization: Bearer abc}
+ */
+@Slf4j
+public class ClanMateExportDestination
+{
+	static final long DEFAULT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+	private final String url;
+	private final ClanMateExportDataFormat format;
+	private final boolean compress;
+	private final long timeoutMs;
+	private final Map<String, String> headers;
+	private final int pageSize;
+
+	ClanMateExportDestination(String url, ClanMateExportDataFormat format, boolean compress, long timeoutMs, Map<String, String> headers)
+	{
+		this(url, format, compress, timeoutMs, headers, 0);
+	}
+
+	ClanMateExportDestination(String url, ClanMateExportDataFormat format, boolean compress, long timeoutMs, Map<String, String> headers, int pageSize)
+	{
+		this.url = url;
+		this.format = format;
+		this.compress = compress;
+		this.timeoutMs = timeoutMs;
+		this.headers = headers;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @return the main url with the format and compression from the config.
+	 *         Csv is sent as json, as it always has been.
+	 */
+	public static ClanMateExportDestination of(String url, ClanMateExportConfig config)
+	{
+		ClanMateExportDataFormat format = config.getDataExportFormat() == ClanMateExportDataFormat.BINARY
+			? ClanMateExportDataFormat.BINARY
+			: ClanMateExportDataFormat.JSON;
+		return new ClanMateExportDestination(url, format, config.getCompressWebRequest(), DEFAULT_TIMEOUT_MS, Collections.emptyMap(),
+			Math.max(0, config.getUploadPageSize()));
+	}
+
+	/**
+	 * @return the main url followed by any others, skipping lines which can't be read
+	 */
+	public static List<ClanMateExportDestination> fromConfig(ClanMateExportConfig config)
+	{
+		List<ClanMateExportDestination> destinations = new ArrayList<>();
+		String url = config.getDataUrl();
+		if (url != null && !url.trim().isEmpty())
+		{
+			destinations.add(of(url.trim(), config));
+		}
+
+		String others = config.getOtherDestinations();
+		if (others != null)
+		{
+			for (String line : others.split("\\r?\\n"))
+			{
+				ClanMateExportDestination destination = parse(line);
+				if (destination != null)
+				{
+					destinations.add(destination);
+				}
+			}
+		}
+		return destinations;
+	}
+
+	/**
+	 * @return the destination on a line of config, or null if the line is blank or can't be read
+	 */
+	static ClanMateExportDestination parse(String line)
+	{
+		String[] fields = line.split("\\|");
+		String url = fields[0].trim();
+		if (url.isEmpty())
+		{
+			return null;
+		}
+		if (HttpUrl.parse(url) == null)
+		{
+			log.warn("Ignoring export destination with an invalid url: {}", url);
+			return null;
+		}
+
+		ClanMateExportDataFormat format = ClanMateExportDataFormat.JSON;
+		boolean compress = false;
+		long timeoutMs = DEFAULT_TIMEOUT_MS;
+		int pageSize = 0;
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (int i = 1; i < fields.length; i++)
+		{
+			String field = fields[i].trim();
+			int colon = field.indexOf(':');
+			try
+			{
+				if (field.isEmpty())
+				{
+					continue;
+				}
+				else if (field.equalsIgnoreCase("gzip"))
+				{
+					compress = true;
+				}
+				else if (field.toLowerCase(Locale.ROOT).startsWith("format="))
+				{
+					format = ClanMateExportDataFormat.valueOf(field.substring(7).trim().toUpperCase(Locale.ROOT));
+				}
+				else if (field.toLowerCase(Locale.ROOT).startsWith("timeout="))
+				{
+					timeoutMs = TimeUnit.SECONDS.toMillis(Long.parseLong(field.substring(8).trim()));
+				}
+				else if (field.toLowerCase(Locale.ROOT).startsWith("pages="))
+				{
+					pageSize = Integer.parseInt(field.substring(6).trim());
+					if (pageSize < 0)
+					{
+						throw new IllegalArgumentException();
+					}
+				}
+				else if (colon > 0)
+				{
+					headers.put(field.substring(0, colon).trim(), field.substring(colon + 1).trim());
+				}
+				else
+				{
+					log.warn("Ignoring unknown option '{}' for export destination {}", field, url);
+				}
+			}
+			catch (IllegalArgumentException e)
+			{
+				log.warn("Ignoring invalid option '{}' for export destination {}", field, url);
+			}
+		}
+		return new ClanMateExportDestination(url, format, compress, timeoutMs, headers, pageSize);
+	}
+
+	public String getUrl()
+	{
+		return url;
+	}
+
+	public ClanMateExportDataFormat getFormat()
+	{
+		return format;
+	}
+
+	public boolean isCompress()
+	{
+		return compress;
+	}
+
+	public long getTimeoutMs()
+	{
+		return timeoutMs;
+	}
+
+	public Map<String, String> getHeaders()
+	{
+		return headers;
+	}
+
+	/**
+	 * @return how many members to send in each page of a full export, or 0 to send it in one request
+	 */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	/**
+	 * @return a short name for the destination to show the user
+	 */
+	public String getName()
+	{
+		HttpUrl httpUrl = HttpUrl.parse(url);
+		return httpUrl == null ? url : httpUrl.host();
+	}
+}
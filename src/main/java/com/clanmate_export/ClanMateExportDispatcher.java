@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lets only one export per key be in flight at a time. Anything dispatched
+ * for a key while it is busy is folded into a single follow-up, run once the
+ * export in flight is done, so however many times export is clicked there is
+ * never more than the one running and the one after it with the latest roster.
+ *
+ * @param <T> what each export is run with
+ */
+@Slf4j
+final class ClanMateExportDispatcher<T>
+{
+	private final BiFunction<String, T, CompletableFuture<?>> run;
+	private final BinaryOperator<T> merge;
+
+	private final Set<String> inFlight = new HashSet<>();
+	private final Map<String, T> followUps = new HashMap<>();
+
+	/**
+	 * @param run   starts an export, completing once it is done
+	 * @param merge folds a newer follow-up into one already waiting
+	 */
+	ClanMateExportDispatcher(BiFunction<String, T, CompletableFuture<?>> run, BinaryOperator<T> merge)
+	{
+		this.run = run;
+		this.merge = merge;
+	}
+
+	/**
+	 * A dispatcher where the latest follow-up replaces any already waiting
+	 */
+	ClanMateExportDispatcher(BiFunction<String, T, CompletableFuture<?>> run)
+	{
+		this(run, (waiting, latest) -> latest);
+	}
+
+	/**
+	 * Runs an export now, or once the one in flight for the key is done
+	 *
+	 * @return true if it started now, false if it is waiting on the export in flight
+	 */
+	boolean dispatch(String key, T input)
+	{
+		synchronized (this)
+		{
+			if (!this.inFlight.add(key))
+			{
+				this.followUps.merge(key, input, this.merge);
+				return false;
+			}
+		}
+
+		start(key, input);
+		return true;
+	}
+
+	/**
+	 * @return true if another export for the key will run once the one in flight is done
+	 */
+	synchronized boolean isPending(String key)
+	{
+		return this.followUps.containsKey(key);
+	}
+
+	private void start(String key, T input)
+	{
+		CompletableFuture<?> done;
+		try
+		{
+			done = this.run.apply(key, input);
+		}
+		catch (RuntimeException e)
+		{
+			log.warn("Export {} failed to start", key, e);
+			done = CompletableFuture.completedFuture(null);
+		}
+		done.whenComplete((result, e) ->
+		{
+			if (e != null)
+			{
+				log.warn("Export {} failed", key, e);
+			}
+			finished(key);
+		});
+	}
+
+	private void finished(String key)
+	{
+		T next;
+		synchronized (this)
+		{
+			next = this.followUps.remove(key);
+			if (next == null)
+			{
+				this.inFlight.remove(key);
+				return;
+			}
+		}
+
+		start(key, next);
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.util.Text;
+import net.runelite.http.api.RuneLiteAPI;
+
+/**
+ * Hiscore lookups by player, kept for a while so repeat exports don't look
+ * anyone up again. The least recently used players are dropped once there
+ * are too many, and the cache is saved to disk between sessions.
+ */
+@Slf4j
+@Singleton
+public class ClanMateExportHiscoreCache
+{
+	static final int MAX_ENTRIES = 10_000;
+
+	private static final Gson GSON = RuneLiteAPI.GSON;
+	private static final Type ENTRIES_TYPE = new TypeToken<LinkedHashMap<String, Entry>>()
+	{
+	}.getType();
+
+	private final File file;
+
+	/**
+	 * Least recently used first, which is also the order they are saved in
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+		{
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private boolean loaded;
+	private boolean dirty;
+
+	@Inject
+	ClanMateExportHiscoreCache()
+	{
+		this(new File(ClanRosterSnapshotStore.EXPORT_DIR, "hiscores.json"));
+	}
+
+	ClanMateExportHiscoreCache(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * A player's overall hiscore
+	 */
+	static class Entry
+	{
+		/**
+		 * -1 if the player isn't ranked overall
+		 */
+		int totalLevel;
+		long totalXp;
+		long fetchedAt;
+
+		Entry(int totalLevel, long totalXp, long fetchedAt)
+		{
+			this.totalLevel = totalLevel;
+			this.totalXp = totalXp;
+			this.fetchedAt = fetchedAt;
+		}
+
+		boolean isRanked()
+		{
+			return totalLevel >= 0;
+		}
+	}
+
+	/**
+	 * @param maxAgeMs how old an entry can be and still be used
+	 * @return the player's hiscore, or null if it isn't cached or is too old
+	 */
+	synchronized Entry get(String rsn, long now, long maxAgeMs)
+	{
+		load();
+		Entry entry = this.entries.get(key(rsn));
+		return entry == null || now - entry.fetchedAt > maxAgeMs ? null : entry;
+	}
+
+	synchronized void put(String rsn, Entry entry)
+	{
+		load();
+		this.entries.put(key(rsn), entry);
+		this.dirty = true;
+	}
+
+	synchronized int size()
+	{
+		load();
+		return this.entries.size();
+	}
+
+	/**
+	 * Writes the cache to disk if it has changed since it was read or last saved
+	 */
+	synchronized void save()
+	{
+		if (!this.dirty)
+		{
+			return;
+		}
+
+		File tmp = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+		try
+		{
+			Files.createDirectories(this.file.getParentFile().toPath());
+			try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8))
+			{
+				GSON.toJson(this.entries, ENTRIES_TYPE, writer);
+			}
+			Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.dirty = false;
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to write hiscore cache {}", this.file, e);
+		}
+	}
+
+	private void load()
+	{
+		if (this.loaded)
+		{
+			return;
+		}
+
+		this.loaded = true;
+		if (!this.file.exists())
+		{
+			return;
+		}
+
+		try (Reader reader = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8))
+		{
+			Map<String, Entry> saved = GSON.fromJson(reader, ENTRIES_TYPE);
+			if (saved != null)
+			{
+				this.entries.putAll(saved);
+			}
+		}
+		catch (IOException | JsonParseException e)
+		{
+			log.warn("Unable to read hiscore cache {}", this.file, e);
+		}
+	}
+
+	private static String key(String rsn)
+	{
+		return Text.toJagexName(rsn).toLowerCase(Locale.ENGLISH);
+	}
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Adds each member's total level and xp to an export, as two more columns.
+ * Players are looked up a few at a time and no faster than a set rate, and
+ * kept in the {@link ClanMateExportHiscoreCache} so an export soon after
+ * another doesn't look anyone up again. Players who aren't ranked are cached
+ * too. Nothing waits on the lookups: each is scheduled for its turn under the
+ * rate and the export carries on once they are all answered. Lookups still
+ * running when the export gives up on them carry on, and are ready for the
+ * next export.
+ */
+@Slf4j
+@Singleton
+public class ClanMateExportHiscores
+{
+	static final String TOTAL_LEVEL_COLUMN = "Total level";
+	static final String TOTAL_XP_COLUMN = "Total XP";
+
+	static final int MAX_LOOKUPS_IN_FLIGHT = 4;
+	static final double LOOKUPS_PER_SECOND = 10;
+
+	/**
+	 * How long to wait for the last lookups once they have all been started, in milliseconds
+	 */
+	private static final long WAIT_MS = 30_000;
+
+	private static final int HTTP_NOT_FOUND = 404;
+
+	private final OkHttpClient client;
+	private final ClanMateExportConfig config;
+	private final ClanMateExportHiscoreCache cache;
+	private final ScheduledExecutorService executor;
+	private final long lookupIntervalNanos;
+
+	/**
+	 * When the next lookup may start, from {@link System#nanoTime()}, so exports
+	 * looking players up at once still keep to the rate between them
+	 */
+	private long nextLookupAt = Long.MIN_VALUE;
+
+	@Inject
+	ClanMateExportHiscores(OkHttpClient webClient, ClanMateExportConfig config, ClanMateExportHiscoreCache cache,
+		ScheduledExecutorService executor)
+	{
+		this(webClient, config, cache, executor, LOOKUPS_PER_SECOND);
+	}
+
+	ClanMateExportHiscores(OkHttpClient webClient, ClanMateExportConfig config, ClanMateExportHiscoreCache cache,
+		ScheduledExecutorService executor, double lookupsPerSecond)
+	{
+		//Shares the connection pool and threads, but with its own limit on lookups in flight
+		Dispatcher dispatcher = new Dispatcher(webClient.dispatcher().executorService());
+		dispatcher.setMaxRequests(MAX_LOOKUPS_IN_FLIGHT);
+		dispatcher.setMaxRequestsPerHost(MAX_LOOKUPS_IN_FLIGHT);
+		this.client = webClient.newBuilder().dispatcher(dispatcher).build();
+		this.config = config;
+		this.cache = cache;
+		this.executor = executor;
+		this.lookupIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / lookupsPerSecond);
+	}
+
+	/**
+	 * Adds total level and xp to the members, looking up any who aren't cached.
+	 * Doesn't block: lookups are scheduled for their turn under the rate, and the
+	 * roster is built once they have all been answered or the wait is up.
+	 *
+	 * @param executor where to build the roster once the lookups are done
+	 * @return completes with a copy of the roster with the two columns added, empty
+	 *         for members who aren't ranked or couldn't be looked up in time
+	 */
+	public CompletableFuture<ClanRoster> enrich(ClanRoster members, Executor executor)
+	{
+		long now = System.currentTimeMillis();
+		long maxAgeMs = TimeUnit.HOURS.toMillis(this.config.getHiscoreCacheHours());
+		AtomicReferenceArray<ClanMateExportHiscoreCache.Entry> hiscores = new AtomicReferenceArray<>(members.size());
+		List<Integer> missing = new ArrayList<>();
+		for (int i = 0; i < members.size(); i++)
+		{
+			ClanMateExportHiscoreCache.Entry entry = this.cache.get(members.getRSN(i), now, maxAgeMs);
+			if (entry == null)
+			{
+				missing.add(i);
+			}
+			hiscores.set(i, entry);
+		}
+
+		CompletableFuture<Void> lookedUp = new CompletableFuture<>();
+		HttpUrl baseUrl = HttpUrl.parse(this.config.getHiscoreUrl());
+		if (missing.isEmpty())
+		{
+			lookedUp.complete(null);
+		}
+		else if (baseUrl == null)
+		{
+			log.warn("Not looking up hiscores, the hiscore URL '{}' is invalid", this.config.getHiscoreUrl());
+			lookedUp.complete(null);
+		}
+		else
+		{
+			log.debug("Looking up hiscores for {} of {} clan members", missing.size(), members.size());
+			AtomicInteger remaining = new AtomicInteger(missing.size());
+			long lastDelay = 0;
+			for (int i : missing)
+			{
+				String rsn = members.getRSN(i);
+				lastDelay = nextLookupDelay();
+				this.executor.schedule(() -> lookup(baseUrl, rsn, entry ->
+				{
+					hiscores.set(i, entry);
+					if (remaining.decrementAndGet() == 0)
+					{
+						lookedUp.complete(null);
+					}
+				}), lastDelay, TimeUnit.NANOSECONDS);
+			}
+
+			ScheduledFuture<?> timeout = this.executor.schedule(() ->
+			{
+				if (lookedUp.complete(null))
+				{
+					log.debug("Exporting without {} hiscores still being looked up", remaining.get());
+				}
+			}, lastDelay + TimeUnit.MILLISECONDS.toNanos(WAIT_MS), TimeUnit.NANOSECONDS);
+			lookedUp.whenComplete((result, e) -> timeout.cancel(false));
+		}
+
+		return lookedUp.thenApplyAsync(result ->
+		{
+			this.cache.save();
+			return withHiscores(members, hiscores);
+		}, executor);
+	}
+
+	/**
+	 * Takes the next turn under the rate
+	 *
+	 * @return how long until the turn, in nanoseconds
+	 */
+	private synchronized long nextLookupDelay()
+	{
+		long now = System.nanoTime();
+		long at = Math.max(now, this.nextLookupAt);
+		this.nextLookupAt = at + this.lookupIntervalNanos;
+		return at - now;
+	}
+
+	/**
+	 * Looks a player up, caching what is found
+	 *
+	 * @param done called with the player's hiscore, or null if it couldn't be looked up
+	 */
+	private void lookup(HttpUrl baseUrl, String rsn, Consumer<ClanMateExportHiscoreCache.Entry> done)
+	{
+		Request request = new Request.Builder()
+			.url(baseUrl.newBuilder().addQueryParameter("player", rsn).build())
+			.get()
+			.build();
+
+		this.client.newCall(request).enqueue(new Callback()
+		{
+			@Override
+			public void onFailure(Call call, IOException e)
+			{
+				log.debug("Unable to look up hiscores for {}", rsn, e);
+				done.accept(null);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response)
+			{
+				ClanMateExportHiscoreCache.Entry entry = null;
+				try (Response r = response)
+				{
+					if (r.code() == HTTP_NOT_FOUND)
+					{
+						entry = new ClanMateExportHiscoreCache.Entry(-1, -1, System.currentTimeMillis());
+					}
+					else if (r.isSuccessful())
+					{
+						entry = parse(new BufferedReader(r.body().charStream()).readLine(), System.currentTimeMillis());
+					}
+					else
+					{
+						log.debug("Hiscore lookup for {} failed with {}", rsn, r.code());
+					}
+				}
+				catch (IOException e)
+				{
+					log.debug("Unable to read hiscores for {}", rsn, e);
+				}
+
+				if (entry != null)
+				{
+					cache.put(rsn, entry);
+				}
+				done.accept(entry);
+			}
+		});
+	}
+
+	/**
+	 * Reads the overall line of the hiscores, rank,level,xp
+	 *
+	 * @return the entry, or null if the line can't be read
+	 */
+	static ClanMateExportHiscoreCache.Entry parse(String overall, long fetchedAt)
+	{
+		if (overall == null)
+		{
+			return null;
+		}
+
+		String[] fields = overall.trim().split(",");
+		if (fields.length < 3)
+		{
+			return null;
+		}
+
+		try
+		{
+			int level = Integer.parseInt(fields[1]);
+			long xp = Long.parseLong(fields[2]);
+			return level < 0 || xp < 0
+				? new ClanMateExportHiscoreCache.Entry(-1, -1, fetchedAt)
+				: new ClanMateExportHiscoreCache.Entry(level, xp, fetchedAt);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return true for the columns added here, which change as members train rather than with the roster
+	 */
+	static boolean isHiscoreColumn(String columnName)
+	{
+		return TOTAL_LEVEL_COLUMN.equals(columnName) || TOTAL_XP_COLUMN.equals(columnName);
+	}
+
+	private static ClanRoster withHiscores(ClanRoster members, AtomicReferenceArray<ClanMateExportHiscoreCache.Entry> hiscores)
+	{
+		String[] otherColumns = members.getColumnNames();
+		String[] columnNames = Arrays.copyOf(otherColumns, otherColumns.length + 2);
+		columnNames[otherColumns.length] = TOTAL_LEVEL_COLUMN;
+		columnNames[otherColumns.length + 1] = TOTAL_XP_COLUMN;
+
+		ClanRoster.Builder builder = new ClanRoster.Builder(members.size()).columns(columnNames);
+		String[] values = new String[columnNames.length];
+		for (int i = 0; i < members.size(); i++)
+		{
+			for (int column = 0; column < otherColumns.length; column++)
+			{
+				values[column] = members.getColumn(i, column);
+			}
+
+			ClanMateExportHiscoreCache.Entry entry = hiscores.get(i);
+			boolean ranked = entry != null && entry.isRanked();
+			values[otherColumns.length] = ranked ? Integer.toString(entry.totalLevel) : "";
+			values[otherColumns.length + 1] = ranked ? Long.toString(entry.totalXp) : "";
+			builder.add(members.getRSN(i), members.getRank(i), members.getJoinedDate(i), values);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-process metrics for the export pipeline. Recording only bumps
+ * preallocated atomic counters, so it is free to leave on; the numbers are
+ * only formatted when someone asks for them.
+ */
+@Slf4j
+@Singleton
+public class ClanMateExportMetrics
+{
+	public enum Stage
+	{
+		SCRAPE("Scrape"),
+		BUILD("Build members"),
+		HISCORES("Hiscores"),
+		SERIALIZE("Serialize"),
+		CLIPBOARD("Clipboard"),
+		UPLOAD("Upload");
+
+		private final String name;
+
+		Stage(String name)
+		{
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Status classes counted for uploads, by status / 100. Slot 0 counts network failures.
+	 */
+	private static final String[] STATUS_CLASSES = {"failed", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+	private final Histogram[] stageNanos = new Histogram[Stage.values().length];
+	private final Histogram payloadBytes = new Histogram();
+	private final Histogram memberCounts = new Histogram();
+	private final AtomicLongArray statuses = new AtomicLongArray(STATUS_CLASSES.length);
+
+	public ClanMateExportMetrics()
+	{
+		for (int i = 0; i < stageNanos.length; i++)
+		{
+			stageNanos[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Records how long a stage took
+	 *
+	 * @param startNanos when the stage started, from {@link System#nanoTime()}
+	 */
+	public void recordStage(Stage stage, long startNanos)
+	{
+		stageNanos[stage.ordinal()].record(System.nanoTime() - startNanos);
+	}
+
+	public void recordPayloadBytes(long bytes)
+	{
+		payloadBytes.record(bytes);
+	}
+
+	public void recordMemberCount(int count)
+	{
+		memberCounts.record(count);
+	}
+
+	/**
+	 * Records the status of an upload
+	 *
+	 * @param code the http status, or -1 if the request failed without one
+	 */
+	public void recordStatus(int code)
+	{
+		int statusClass = code / 100;
+		statuses.incrementAndGet(statusClass > 0 && statusClass < STATUS_CLASSES.length ? statusClass : 0);
+	}
+
+	/**
+	 * @return a readable summary of everything recorded so far
+	 */
+	public String dump()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (Stage stage : Stage.values())
+		{
+			Histogram histogram = stageNanos[stage.ordinal()];
+			sb.append(stage.name).append(": ").append(histogram.count()).append(" runs");
+			if (histogram.count() > 0)
+			{
+				sb.append(", mean ").append(millis(histogram.mean()))
+					.append(", p50 ").append(millis(histogram.percentile(0.5)))
+					.append(", p99 ").append(millis(histogram.percentile(0.99)))
+					.append(", max ").append(millis(histogram.max()));
+			}
+			sb.append('\n');
+		}
+
+		sb.append("Members: mean ").append(memberCounts.mean()).append(", max ").append(memberCounts.max()).append('\n');
+		sb.append("Payload bytes: mean ").append(payloadBytes.mean())
+			.append(", p99 ").append(payloadBytes.percentile(0.99))
+			.append(", total ").append(payloadBytes.sum()).append('\n');
+
+		sb.append("Statuses:");
+		for (int i = 0; i < STATUS_CLASSES.length; i++)
+		{
+			sb.append(' ').append(STATUS_CLASSES[i]).append('=').append(statuses.get(i));
+		}
+		return sb.toString();
+	}
+
+	public void log()
+	{
+		log.info("Clanmate export metrics\n{}", dump());
+	}
+
+	private static String millis(long nanos)
+	{
+		return String.format("%.2fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	/**
+	 * A histogram with a bucket per power of two, good to within a factor of two
+	 */
+	static final class Histogram
+	{
+		private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long value)
+		{
+			value = Math.max(value, 0);
+			buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+			sum.addAndGet(value);
+			long currentMax;
+			while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value))
+			{
+				//Another thread raised the max, try again
+			}
+		}
+
+		long count()
+		{
+			long count = 0;
+			for (int i = 0; i < buckets.length(); i++)
+			{
+				count += buckets.get(i);
+			}
+			return count;
+		}
+
+		long sum()
+		{
+			return sum.get();
+		}
+
+		long max()
+		{
+			return max.get();
+		}
+
+		long mean()
+		{
+			long count = count();
+			return count == 0 ? 0 : sum.get() / count;
+		}
+
+		/**
+		 * @return the upper bound of the bucket holding the given percentile
+		 */
+		long percentile(double percentile)
+		{
+			long count = count();
+			long rank = (long) Math.ceil(percentile * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length(); i++)
+			{
+				seen += buckets.get(i);
+				if (seen >= rank && seen > 0)
+				{
+					long upperBound = i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1;
+					return Math.min(upperBound, max.get());
+				}
+			}
+			return max.get();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import javax.swing.JTextArea;
+import javax.swing.border.EmptyBorder;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.ui.ColorScheme;
+import net.runelite.client.ui.PluginPanel;
+
+/**
+ * Side panel showing the export pipeline metrics. In developer mode it can
+ * also record the members page as a fixture for the scrape tests and benchmarks.
+ */
+@Slf4j
+public class ClanMateExportMetricsPanel extends PluginPanel
+{
+	private static final File FIXTURE_DIR = new File(ClanRosterSnapshotStore.EXPORT_DIR, "fixtures");
+
+	private final ClanMateExportMetrics metrics;
+	private final Client client;
+	private final ClientThread clientThread;
+	private final ScheduledExecutorService executor;
+	private final JTextArea text = new JTextArea();
+
+	@Inject
+	ClanMateExportMetricsPanel(ClanMateExportMetrics metrics, Client client, ClientThread clientThread,
+		ScheduledExecutorService executor, @Named("developerMode") boolean developerMode)
+	{
+		this.metrics = metrics;
+		this.client = client;
+		this.clientThread = clientThread;
+		this.executor = executor;
+
+		setLayout(new BorderLayout());
+		setBorder(new EmptyBorder(10, 10, 10, 10));
+		setBackground(ColorScheme.DARK_GRAY_COLOR);
+
+		text.setEditable(false);
+		text.setLineWrap(true);
+		text.setWrapStyleWord(true);
+		text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+		text.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+
+		JButton refresh = new JButton("Refresh");
+		refresh.addActionListener(e -> refresh());
+		JButton writeToLog = new JButton("Write to log");
+		writeToLog.addActionListener(e -> metrics.log());
+
+		JPanel buttons = new JPanel(new GridLayout(1, 0, 5, 0));
+		buttons.setBorder(new EmptyBorder(0, 0, 10, 0));
+		buttons.add(refresh);
+		buttons.add(writeToLog);
+		if (developerMode)
+		{
+			JButton recordPage = new JButton("Record page");
+			recordPage.setToolTipText("Records the open clan members page to a fixture file");
+			recordPage.addActionListener(e -> recordMembersPage());
+			buttons.add(recordPage);
+		}
+
+		add(buttons, BorderLayout.NORTH);
+		add(text, BorderLayout.CENTER);
+	}
+
+	@Override
+	public void onActivate()
+	{
+		refresh();
+	}
+
+	private void refresh()
+	{
+		text.setText(metrics.dump());
+	}
+
+	private void recordMembersPage()
+	{
+		clientThread.invoke(() ->
+		{
+			ClanMembersPageFixture fixture = ClanMembersPageFixture.record(client);
+			if (fixture == null)
+			{
+				log.info("Open the clan members page to record it");
+				return;
+			}
+			executor.execute(() -> save(fixture));
+		});
+	}
+
+	private static void save(ClanMembersPageFixture fixture)
+	{
+		File file = new File(FIXTURE_DIR, "members-page-" + System.currentTimeMillis() + ".txt");
+		try
+		{
+			Files.createDirectories(FIXTURE_DIR.toPath());
+			try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))
+			{
+				fixture.write(writer);
+			}
+			log.info("Recorded the members page of {} to {}", fixture.getClanName(), file);
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to record the members page", e);
+		}
+	}
+}
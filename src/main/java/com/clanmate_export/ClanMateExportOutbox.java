@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.http.api.RuneLiteAPI;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Exports waiting to be accepted by a server, kept on disk so they survive a
+ * failed request or a restart. There is at most one entry per clan and url,
+ * a newer export replacing whatever was still waiting. Large exports can
+ * be kept as pages, each in its own file and sent on its own, with the pages
+ * the server has acknowledged appended to a file of their own.
+ */
+@Slf4j
+@Singleton
+public class ClanMateExportOutbox
+{
+	private static final String ENTRY_SUFFIX = ".json";
+	private static final String BODY_SUFFIX = ".body";
+	private static final String ACKNOWLEDGED_SUFFIX = ".acks";
+	private static final Gson GSON = RuneLiteAPI.GSON;
+
+	private final File outboxDir;
+
+	@Inject
+	ClanMateExportOutbox()
+	{
+		this(new File(ClanRosterSnapshotStore.EXPORT_DIR, "outbox"));
+	}
+
+	ClanMateExportOutbox(File outboxDir)
+	{
+		this.outboxDir = outboxDir;
+	}
+
+	/**
+	 * A pending export. The request body, or each page of it, is kept in its own file next to it.
+	 */
+	static class Entry
+	{
+		String key;
+		String id;
+		String clanName;
+		String url;
+		/**
+		 * Where the export goes, null for entries from before destinations could be set up
+		 */
+		ClanMateExportDestination destination;
+		boolean delta;
+		String contentType;
+		Map<String, String> headers = new LinkedHashMap<>();
+
+		/**
+		 * The roster being exported, recorded as the last export once the server accepts it
+		 */
+		List<ClanMemberMap> roster;
+
+		/**
+		 * How many pages the export is sent in, 0 if it is sent in one request
+		 */
+		int pages;
+
+		/**
+		 * The pages the server has acknowledged, which aren't sent again. Kept
+		 * next to the entry rather than in it, so it isn't rewritten for each page.
+		 */
+		transient Set<Integer> acknowledged = new HashSet<>();
+
+		int attempts;
+		long createdAt;
+	}
+
+	/**
+	 * Writes an export to the outbox, replacing any export still waiting for the same clan and url
+	 *
+	 * @param entry what is being exported
+	 * @param body  the request body, written to disk once here
+	 * @return the entry, with its id set
+	 */
+	synchronized Entry put(Entry entry, RequestBody body) throws IOException
+	{
+		entry.pages = 0;
+		return write(entry, Collections.singletonList(body));
+	}
+
+	/**
+	 * Writes an export sent in pages to the outbox, replacing any export still waiting for the same clan and url
+	 *
+	 * @param entry what is being exported
+	 * @param pages the request body of each page, written to disk once here
+	 * @return the entry, with its id set
+	 */
+	synchronized Entry putPages(Entry entry, List<RequestBody> pages) throws IOException
+	{
+		entry.pages = pages.size();
+		return write(entry, pages);
+	}
+
+	private Entry write(Entry entry, List<RequestBody> bodies) throws IOException
+	{
+		Files.createDirectories(this.outboxDir.toPath());
+		entry.id = UUID.randomUUID().toString();
+		entry.createdAt = System.currentTimeMillis();
+		entry.acknowledged.clear();
+
+		List<File> files = bodyFiles(entry);
+		for (int i = 0; i < files.size(); i++)
+		{
+			try (BufferedSink sink = Okio.buffer(Okio.sink(files.get(i))))
+			{
+				bodies.get(i).writeTo(sink);
+			}
+		}
+
+		Entry previous = get(entry.key);
+		writeEntry(entry);
+		if (previous != null)
+		{
+			deleteBody(previous);
+		}
+		return entry;
+	}
+
+	/**
+	 * @return whether an export is waiting for this key, without reading it
+	 */
+	synchronized boolean contains(String key)
+	{
+		return new File(this.outboxDir, key + ENTRY_SUFFIX).exists();
+	}
+
+	/**
+	 * @return the export waiting for this key, or null if there isn't one
+	 */
+	synchronized Entry get(String key)
+	{
+		File file = new File(this.outboxDir, key + ENTRY_SUFFIX);
+		if (!file.exists())
+		{
+			return null;
+		}
+
+		Entry entry;
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			entry = GSON.fromJson(reader, Entry.class);
+		}
+		catch (IOException | JsonParseException e)
+		{
+			log.warn("Unable to read outbox entry {}", file, e);
+			return null;
+		}
+
+		if (entry != null && entry.pages > 0)
+		{
+			readAcknowledged(entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Records a page the server has acknowledged, by appending it to the entry's acknowledged pages
+	 */
+	synchronized void acknowledge(Entry entry, int page) throws IOException
+	{
+		Files.write(acknowledgedFile(entry).toPath(), (page + "\n").getBytes(StandardCharsets.UTF_8),
+			StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Forgets the pages acknowledged for an entry, so they are all sent again
+	 */
+	synchronized void clearAcknowledged(Entry entry)
+	{
+		delete(acknowledgedFile(entry));
+	}
+
+	private void readAcknowledged(Entry entry)
+	{
+		File file = acknowledgedFile(entry);
+		if (!file.exists())
+		{
+			return;
+		}
+
+		try
+		{
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+			{
+				try
+				{
+					entry.acknowledged.add(Integer.parseInt(line.trim()));
+				}
+				catch (NumberFormatException e)
+				{
+					//Half written when the client closed, the page is sent again
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to read acknowledged pages {}", file, e);
+		}
+	}
+
+	/**
+	 * Saves changes to an entry, unless a newer export has replaced it
+	 *
+	 * @return false if the entry has been replaced
+	 */
+	synchronized boolean update(Entry entry) throws IOException
+	{
+		if (!isCurrent(entry))
+		{
+			return false;
+		}
+		writeEntry(entry);
+		return true;
+	}
+
+	/**
+	 * Removes an entry once it has been sent. A newer export for the same key is left alone.
+	 *
+	 * @return false if a newer export had replaced the entry
+	 */
+	synchronized boolean remove(Entry entry)
+	{
+		boolean current = isCurrent(entry);
+		if (current)
+		{
+			delete(new File(this.outboxDir, entry.key + ENTRY_SUFFIX));
+		}
+		deleteBody(entry);
+		return current;
+	}
+
+	/**
+	 * @return the keys of every export still waiting
+	 */
+	synchronized List<String> keys()
+	{
+		List<String> keys = new ArrayList<>();
+		File[] files = this.outboxDir.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				keys.add(file.getName().substring(0, file.getName().length() - ENTRY_SUFFIX.length()));
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Deletes half written files, and bodies and acknowledged pages no entry refers to, left behind by a crash
+	 */
+	synchronized void cleanup()
+	{
+		Set<String> referenced = new HashSet<>();
+		for (String key : keys())
+		{
+			Entry entry = get(key);
+			if (entry != null)
+			{
+				for (File body : bodyFiles(entry))
+				{
+					referenced.add(body.getName());
+				}
+				referenced.add(acknowledgedFile(entry).getName());
+			}
+		}
+
+		File[] files = this.outboxDir.listFiles((dir, name) -> name.endsWith(".tmp")
+			|| ((name.endsWith(BODY_SUFFIX) || name.endsWith(ACKNOWLEDGED_SUFFIX)) && !referenced.contains(name)));
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				delete(file);
+			}
+		}
+	}
+
+	File bodyFile(Entry entry)
+	{
+		return new File(this.outboxDir, entry.key + "-" + entry.id + BODY_SUFFIX);
+	}
+
+	/**
+	 * @param page counting from 0
+	 */
+	File pageFile(Entry entry, int page)
+	{
+		return new File(this.outboxDir, entry.key + "-" + entry.id + "-" + page + BODY_SUFFIX);
+	}
+
+	private File acknowledgedFile(Entry entry)
+	{
+		return new File(this.outboxDir, entry.key + "-" + entry.id + ACKNOWLEDGED_SUFFIX);
+	}
+
+	/**
+	 * @return the body of an entry, or each of its pages
+	 */
+	List<File> bodyFiles(Entry entry)
+	{
+		if (entry.pages == 0)
+		{
+			return Collections.singletonList(bodyFile(entry));
+		}
+
+		List<File> files = new ArrayList<>(entry.pages);
+		for (int page = 0; page < entry.pages; page++)
+		{
+			files.add(pageFile(entry, page));
+		}
+		return files;
+	}
+
+	private boolean isCurrent(Entry entry)
+	{
+		Entry current = get(entry.key);
+		return current != null && current.id.equals(entry.id);
+	}
+
+	private void writeEntry(Entry entry) throws IOException
+	{
+		File file = new File(this.outboxDir, entry.key + ENTRY_SUFFIX);
+		File tmp = new File(this.outboxDir, entry.key + ENTRY_SUFFIX + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8))
+		{
+			GSON.toJson(entry, writer);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void deleteBody(Entry entry)
+	{
+		for (File file : bodyFiles(entry))
+		{
+			delete(file);
+		}
+		delete(acknowledgedFile(entry));
+	}
+
+	private static void delete(File file)
+	{
+		if (file.exists() && !file.delete())
+		{
+			//Can happen on windows while the body is still being uploaded, cleanup gets it later
+			log.debug("Unable to delete {}", file);
+		}
+	}
+}
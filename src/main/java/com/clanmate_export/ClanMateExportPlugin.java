@@ -25,33 +25,48 @@
 
 package com.clanmate_export;
 
-import com.google.gson.Gson;
 import com.google.inject.Provides;
 
 import javax.inject.Inject;
 
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.clan.ClanChannel;
+import net.runelite.api.clan.ClanSettings;
+import net.runelite.api.events.ClanChannelChanged;
+import net.runelite.api.events.ClanMemberJoined;
+import net.runelite.api.events.ClanMemberLeft;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.GameTick;
 import net.runelite.api.events.WidgetLoaded;
-import net.runelite.api.widgets.Widget;
-import net.runelite.api.widgets.WidgetInfo;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
-import net.runelite.client.util.Text;
-import net.runelite.http.api.RuneLiteAPI;
-import okhttp3.*;
+import net.runelite.client.ui.ClientToolbar;
+import net.runelite.client.ui.NavigationButton;
 
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-
-import static net.runelite.http.api.RuneLiteAPI.JSON;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Slf4j
 @PluginDescriptor(
@@ -66,23 +81,131 @@ public class ClanMateExportPlugin extends Plugin
 	@Inject
 	private ClanMateExportChatMenuManager clanMateExportChatMenuManager;
 	@Inject
-	private OkHttpClient webClient;
-	private static final Gson GSON = RuneLiteAPI.GSON;
+	private ClanSettingsRosterSource clanSettingsRosterSource;
+	@Inject
+	private WidgetRosterSource widgetRosterSource;
+	@Inject
+	private ClanMemberColumnCache columnCache;
+	@Inject
+	private ClanMateExportUploader uploader;
+	@Inject
+	private ClanMateExportMetrics metrics;
+	@Inject
+	private ClanMateExportMetricsPanel metricsPanel;
+	@Inject
+	private ClientToolbar clientToolbar;
+	@Inject
+	private ClanMateExportAutoExporter autoExporter;
+	@Inject
+	private ClanRosterHistory history;
+	@Inject
+	private ClanRosterTimeline timeline;
+	@Inject
+	private ClanMemberIndex memberIndex;
+	@Inject
+	private ClanMateExportRosterBuilder rosterBuilder;
+	@Inject
+	private ClanPresenceSampler presenceSampler;
+	@Inject
+	private ClanMateExportActivity activity;
+
+	private static final String CONFIG_GROUP = "clanmate_export";
 
 	private static final int CLAN_SETTINGS_INFO_PAGE_WIDGET = 690;
 
-	private static final int CLAN_SETTINGS_MEMBERS_PAGE_WIDGET_ID = 693;
-	private static final int CLAN_SETTINGS_MEMBERS_LIST_RSN_COLUMN = WidgetInfo.PACK(CLAN_SETTINGS_MEMBERS_PAGE_WIDGET_ID, 10);
-	private static final int CLAN_SETTINGS_MEMBERS_LIST_FIRST_COLUMN = WidgetInfo.PACK(CLAN_SETTINGS_MEMBERS_PAGE_WIDGET_ID, 11);
-	private static final int CLAN_SETTINGS_MEMBERS_LIST_SECOND_COLUMN = WidgetInfo.PACK(CLAN_SETTINGS_MEMBERS_PAGE_WIDGET_ID, 13);
-	private static final int CLAN_SETTINGS_MEMBERS_LIST_FIRST_DROP_DOWN = WidgetInfo.PACK(CLAN_SETTINGS_MEMBERS_PAGE_WIDGET_ID, 7);
-	private static final int CLAN_SETTINGS_MEMBERS_LIST_SECOND_DROP_DOWN = WidgetInfo.PACK(CLAN_SETTINGS_MEMBERS_PAGE_WIDGET_ID, 8);
+	private static final String CLIPBOARD_EXPORT = "clipboard";
+	private static final String URL_EXPORT = "url";
 
+	/**
+	 * The most clan members shown for a search, as many as fit in the chat box
+	 */
+	private static final int MAX_FOUND = 5;
+
+	/**
+	 * How far back clan history exports look, and how long members have to stay after joining to count as retained
+	 */
+	static final int HISTORY_DAYS = 30;
 
 	/**
-	 * The clan members, scraped from your clan setup widget
+	 * The clan members last exported, built on the export executor
 	 */
-	private List<ClanMemberMap> clanMembers = null;
+	private volatile List<ClanMemberMap> clanMembers = null;
+
+	/**
+	 * Builds, serializes and sends exports so the client thread only has to copy texts
+	 */
+	private ExecutorService exportExecutor;
+
+	/**
+	 * Keeps to one export per clan and kind at a time, clicks made meanwhile
+	 * being folded into one more export of the latest roster
+	 */
+	private ClanMateExportDispatcher<Supplier<CompletableFuture<Void>>> exports;
+
+	/**
+	 * Where the roster is read from, in order of preference
+	 */
+	private List<ClanRosterSource> rosterSources;
+
+	private NavigationButton metricsButton;
+
+	/**
+	 * An export waiting on members page columns which haven't been shown yet, only touched on the client thread
+	 */
+	private Runnable pendingExport;
+
+	/**
+	 * What was last put on the clipboard, only touched on the export executor
+	 */
+	private ClanRosterTransferable clipboardContents;
+
+	/**
+	 * How csv is laid out on the clipboard, parsed whenever the config changes
+	 */
+	private volatile ClanRosterTemplate exportTemplate = ClanRosterTemplate.CSV;
+
+	/**
+	 * Whether to sample the clan channel each tick, kept here so ticks don't have to ask the config
+	 */
+	private volatile boolean activityTracking;
+
+	@Override
+	protected void startUp()
+	{
+		this.rosterSources = Arrays.asList(this.clanSettingsRosterSource, this.widgetRosterSource);
+		this.updateExportTemplate();
+		ExecutorService executor = Executors.newSingleThreadExecutor(r ->
+		{
+			Thread thread = new Thread(r, "clanmate-export");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.exportExecutor = executor;
+		this.exports = new ClanMateExportDispatcher<>((key, job) -> CompletableFuture.supplyAsync(job, executor).thenCompose(done -> done));
+		this.exportExecutor.execute(this.history::recover);
+		this.uploader.start();
+		this.autoExporter.start(this.exportExecutor);
+		this.activityTracking = this.config.getActivityTracking();
+		this.activity.start();
+		this.updateMetricsPanel();
+	}
+
+	@Override
+	protected void shutDown()
+	{
+		this.clientToolbar.removeNavigation(this.metricsButton);
+		this.autoExporter.stop();
+		this.activity.stop();
+		this.metrics.log();
+		this.uploader.stop();
+		this.exportExecutor.execute(this.history::close);
+		this.exportExecutor.execute(this.timeline::close);
+		this.exportExecutor.shutdown();
+		this.exportExecutor = null;
+		this.exports = null;
+		this.pendingExport = null;
+		this.columnCache.clear();
+	}
 
 	@Provides
 	ClanMateExportConfig provideConfig(ConfigManager configManager)
@@ -90,6 +213,95 @@ public class ClanMateExportPlugin extends Plugin
 		return configManager.getConfig(ClanMateExportConfig.class);
 	}
 
+	@Subscribe
+	public void onConfigChanged(ConfigChanged event)
+	{
+		if (event.getGroup().equals(CONFIG_GROUP) && event.getKey().equals("showMetricsPanel"))
+		{
+			this.updateMetricsPanel();
+		}
+		else if (event.getGroup().equals(CONFIG_GROUP) && event.getKey().equals("exportTemplate"))
+		{
+			this.updateExportTemplate();
+		}
+		else if (event.getGroup().equals(CONFIG_GROUP) && event.getKey().equals("activityTracking"))
+		{
+			this.activityTracking = this.config.getActivityTracking();
+		}
+	}
+
+	private void updateExportTemplate()
+	{
+		try
+		{
+			this.exportTemplate = ClanRosterTemplate.parse(this.config.getExportTemplate());
+		}
+		catch (IllegalArgumentException e)
+		{
+			log.warn("Invalid CSV template, exporting plain csv instead: {}", e.getMessage());
+			this.exportTemplate = ClanRosterTemplate.CSV;
+		}
+	}
+
+	private void updateMetricsPanel()
+	{
+		if (this.metricsButton == null)
+		{
+			BufferedImage icon = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = icon.createGraphics();
+			graphics.setColor(Color.ORANGE);
+			graphics.fillRect(2, 9, 3, 6);
+			graphics.fillRect(7, 5, 3, 10);
+			graphics.fillRect(12, 1, 3, 14);
+			graphics.dispose();
+
+			this.metricsButton = NavigationButton.builder()
+				.tooltip("Clanmate Export metrics")
+				.icon(icon)
+				.priority(10)
+				.panel(this.metricsPanel)
+				.build();
+		}
+
+		if (this.config.getShowMetricsPanel())
+		{
+			this.clientToolbar.addNavigation(this.metricsButton);
+		}
+		else
+		{
+			this.clientToolbar.removeNavigation(this.metricsButton);
+		}
+	}
+
+	@Subscribe
+	public void onClanChannelChanged(ClanChannelChanged event)
+	{
+		this.rosterMayHaveChanged(event.getClanChannel());
+	}
+
+	@Subscribe
+	public void onClanMemberJoined(ClanMemberJoined event)
+	{
+		this.rosterMayHaveChanged(event.getClanChannel());
+	}
+
+	@Subscribe
+	public void onClanMemberLeft(ClanMemberLeft event)
+	{
+		this.rosterMayHaveChanged(event.getClanChannel());
+	}
+
+	/**
+	 * Queues an automatic export for changes in our own clan's channel, guest channels don't count
+	 */
+	private void rosterMayHaveChanged(ClanChannel clanChannel)
+	{
+		if (this.config.getAutoExport() && clanChannel != null && clanChannel == this.client.getClanChannel())
+		{
+			this.autoExporter.changed();
+		}
+	}
+
 	@Subscribe
 	public void onWidgetLoaded(WidgetLoaded widget)
 	{
@@ -100,11 +312,13 @@ public class ClanMateExportPlugin extends Plugin
 			clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.OPEN_MEMBERS_SCREEN);
 		}
 
-		if (widget.getGroupId() == CLAN_SETTINGS_MEMBERS_PAGE_WIDGET_ID)
+		if (widget.getGroupId() == ClanMembersWidget.GROUP_ID)
 		{
-			if (this.client.getWidget(693, 9) == null)
+			this.columnCache.reloaded();
+			if (this.client.getWidget(ClanMembersWidget.LIST_CONTAINER) == null)
 			{
 				this.clanMembers = null;
+				this.pendingExport = null;
 			}
 			else
 			{
@@ -114,209 +328,375 @@ public class ClanMateExportPlugin extends Plugin
 	}
 
 	/**
-	 * Subroutine - Update our memory of clan members and their ranks for
-	 * clan setup
+	 * Samples who is in the clan channel, then reads each column as it is picked
+	 * in the members page drop downs, finishing an export that was waiting on it
 	 */
-	public void scrapeMembers()
+	@Subscribe
+	public void onGameTick(GameTick event)
 	{
-		if (this.clanMembers == null)
+		if (this.activityTracking)
 		{
-			this.clanMembers = new ArrayList<>();
+			this.presenceSampler.sample(this.client.getClanChannel(), System.currentTimeMillis());
+		}
+		else
+		{
+			this.presenceSampler.leaveAll(System.currentTimeMillis());
 		}
-		this.clanMembers.clear();
 
-		//Checks to set up scraping
-		Widget clanMemberNamesWidget = this.client.getWidget(CLAN_SETTINGS_MEMBERS_LIST_RSN_COLUMN);
-		Widget rankWidget = this.client.getWidget(CLAN_SETTINGS_MEMBERS_LIST_FIRST_COLUMN);
-		Widget joinedWidget = this.client.getWidget(CLAN_SETTINGS_MEMBERS_LIST_SECOND_COLUMN);
+		if (this.client.getWidget(ClanMembersWidget.LIST_CONTAINER) == null)
+		{
+			return;
+		}
 
-		//Checks to make sure drop downs are in correct location
-		Widget[] leftColumnName = Objects.requireNonNull(this.client.getWidget(CLAN_SETTINGS_MEMBERS_LIST_FIRST_DROP_DOWN)).getChildren();
-		if (leftColumnName != null)
+		if (this.columnCache.update(this.client) && this.pendingExport != null)
 		{
-			if (!leftColumnName[4].getText().equals("Rank"))
-			{
-				clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.CHECK_COLUMNS_RANKED);
-				return;
-			}
+			Runnable export = this.pendingExport;
+			this.pendingExport = null;
+			export.run();
+		}
+	}
+
+	@Subscribe
+	public void onGameStateChanged(GameStateChanged event)
+	{
+		if (event.getGameState() == GameState.LOGIN_SCREEN || event.getGameState() == GameState.HOPPING)
+		{
+			this.columnCache.clear();
+			this.pendingExport = null;
+		}
+		if (event.getGameState() == GameState.LOGIN_SCREEN)
+		{
+			this.presenceSampler.leaveAll(System.currentTimeMillis());
 		}
+	}
 
-		Widget[] rightColumnName = Objects.requireNonNull(this.client.getWidget(CLAN_SETTINGS_MEMBERS_LIST_SECOND_DROP_DOWN)).getChildren();
+	/**
+	 * Drops an export waiting on members page columns. Must be called on the client thread.
+	 */
+	public void cancelPendingExport()
+	{
+		this.pendingExport = null;
+	}
 
-		if (rightColumnName != null)
+	/**
+	 * Subroutine - Copy the clan members' texts out of the client, trying each
+	 * roster source in turn, the members page widgets last. Must be called on the client thread.
+	 *
+	 * @return the raw roster, or null if none of the sources could read it
+	 */
+	public ClanRosterCapture scrapeMembers()
+	{
+		for (ClanRosterSource rosterSource : this.rosterSources)
 		{
-			if (!rightColumnName[4].getText().equals("Joined"))
+			ClanRosterCapture capture = rosterSource.capture();
+			if (capture != null)
 			{
-				clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.CHECK_COLUMNS_JOINED);
-				return;
+				return capture;
 			}
+		}
+		return null;
+	}
 
+	/**
+	 * Scrapes the clan members on the client thread, then builds and exports them on the export executor,
+	 * once any export of the same kind for the clan is done
+	 *
+	 * @param kind     which kind of export this is, {@link #CLIPBOARD_EXPORT} or {@link #URL_EXPORT}
+	 * @param exporter builds and exports a roster, given the executor to build it on
+	 */
+	private void export(String kind, BiFunction<ClanRosterCapture, Executor, CompletableFuture<Void>> exporter)
+	{
+		ClanMateExportDispatcher<Supplier<CompletableFuture<Void>>> exports = this.exports;
+		ExecutorService executor = this.exportExecutor;
+		if (exports == null || executor == null)
+		{
+			//Shut down since the export was asked for
+			return;
 		}
 
-		if (clanMemberNamesWidget == null || rankWidget == null || joinedWidget == null)
+		long start = System.nanoTime();
+		ClanRosterCapture capture = this.scrapeMembers();
+		this.metrics.recordStage(ClanMateExportMetrics.Stage.SCRAPE, start);
+		if (capture == null && this.client.getWidget(ClanMembersWidget.LIST_CONTAINER) != null
+			&& !this.widgetRosterSource.missingColumns().isEmpty())
 		{
+			//Finished by onGameTick once the columns have been shown
+			this.pendingExport = () -> this.export(kind, exporter);
 			return;
 		}
-		Widget[] clanMemberNamesWidgetValues = clanMemberNamesWidget.getChildren();
-		Widget[] rankWidgetValues = rankWidget.getChildren();
-		Widget[] joinedWidgetValues = joinedWidget.getChildren();
 
-		if (clanMemberNamesWidgetValues == null || rankWidgetValues == null || joinedWidgetValues == null)
+		this.pendingExport = null;
+		if (capture == null || capture.size() == 0)
 		{
 			return;
 		}
-		//Scrape all clan members
 
-		int lastSuccessfulRsnIndex = 0;
-		int otherColumnsPositions = 0;
-		for (int i = 0; i < clanMemberNamesWidgetValues.length; i++)
+		if (!exports.dispatch(exportKey(kind, capture), () -> exporter.apply(capture, executor)))
 		{
-			int valueOfRsnToGet;
-			if (i == 0)
-			{
-				valueOfRsnToGet = 1;
-			}
-			else
-			{
-				valueOfRsnToGet = lastSuccessfulRsnIndex + 3;
-			}
-			boolean inBounds = (valueOfRsnToGet >= 0) && (valueOfRsnToGet < clanMemberNamesWidgetValues.length);
-			if (inBounds)
-			{
-				int clanMemberCount = Objects.requireNonNull(this.client.getClanSettings()).getMembers().size();
-				int otherColumnsIndex = otherColumnsPositions + clanMemberCount;
-				String rsn = Text.removeTags(clanMemberNamesWidgetValues[valueOfRsnToGet].getText());
-				String rank = Text.removeTags(rankWidgetValues[otherColumnsIndex].getText());
-				String joinedDate = Text.removeTags(joinedWidgetValues[otherColumnsIndex].getText());
-				ClanMemberMap clanMember = new ClanMemberMap(rsn, rank, joinedDate);
-				this.clanMembers.add(clanMember);
-				lastSuccessfulRsnIndex = valueOfRsnToGet;
-				otherColumnsPositions++;
-			}
+			clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.EXPORT_QUEUED);
 		}
+	}
 
+	private static String exportKey(String kind, ClanRosterCapture capture)
+	{
+		return kind + '|' + capture.getClanName();
 	}
 
-	public void ClanToClipBoard()
+	/**
+	 * Finds clan members by any part of their name, or of a name they had before, and shows
+	 * them. Searches the roster last exported, or reads the roster first if there isn't one.
+	 * Must be called on the client thread.
+	 */
+	public void findMembers(String query)
 	{
+		ClanSettings clanSettings = this.client.getClanSettings();
+		List<ClanMemberMap> found = clanSettings == null ? null : this.memberIndex.find(clanSettings.getName(), query, MAX_FOUND);
+		if (found != null)
+		{
+			clanMateExportChatMenuManager.showFound(query, found);
+			return;
+		}
 
-		this.scrapeMembers();
+		ClanRosterCapture capture = this.scrapeMembers();
+		if (capture == null || capture.size() == 0)
+		{
+			clanMateExportChatMenuManager.showMessage("Clanmates can't be read yet. Open the members page and try again.");
+			return;
+		}
 
-		if (this.config.exportToClipBoard())
+		ExecutorService executor = this.exportExecutor;
+		if (executor == null)
 		{
-			String clipBoardString = "";
+			//Shut down since the search was asked for
+			return;
+		}
 
-			switch (this.config.getDataExportFormat())
+		executor.execute(() ->
+		{
+			this.memberIndex.link(capture.getClanName(), capture.toMembers(), () -> this.rosterBuilder.lastExported(capture.getClanName()));
+			clanMateExportChatMenuManager.showFound(query, this.memberIndex.find(capture.getClanName(), query, MAX_FOUND));
+		});
+	}
+
+	/**
+	 * Copies who joined in the last {@link #HISTORY_DAYS} days. Must be called on the client thread.
+	 */
+	public void exportJoined()
+	{
+		this.exportHistory((clanName, now) -> this.timeline.joinedBetween(clanName, now - historyMillis(), now),
+			changes -> changes.size() + " clanmates joined in the last " + HISTORY_DAYS + " days.");
+	}
+
+	/**
+	 * Copies who left in the last {@link #HISTORY_DAYS} days. Must be called on the client thread.
+	 */
+	public void exportLeft()
+	{
+		this.exportHistory((clanName, now) -> this.timeline.leftBetween(clanName, now - historyMillis(), now),
+			changes -> changes.size() + " clanmates left in the last " + HISTORY_DAYS + " days.");
+	}
+
+	/**
+	 * Copies every join, leave and rank change in the last {@link #HISTORY_DAYS} days. Must be called on the client thread.
+	 */
+	public void exportRecentChanges()
+	{
+		this.exportHistory((clanName, now) -> this.timeline.changesBetween(clanName, now - historyMillis(), now),
+			changes -> changes.size() + " changes in the last " + HISTORY_DAYS + " days.");
+	}
+
+	/**
+	 * Copies a clanmate's joins, leaves and rank changes. Must be called on the client thread.
+	 */
+	public void exportMemberHistory(String rsn)
+	{
+		this.exportHistory((clanName, now) -> this.timeline.history(clanName, rsn.trim()),
+			changes -> changes.size() + " changes for " + rsn.trim() + ".");
+	}
+
+	/**
+	 * Copies, for each member who joined at least {@link #HISTORY_DAYS} days ago, whether they
+	 * stayed that long, leaving or joining. Must be called on the client thread.
+	 */
+	public void exportRetention()
+	{
+		this.exportHistory((clanName, now) -> this.timeline.retention(clanName, 0, now, HISTORY_DAYS),
+			retention -> Math.round(ClanRosterTimeline.retentionRate(retention) * 100) + "% of the " + retention.size()
+				+ " clanmates who joined stayed at least " + HISTORY_DAYS + " days.");
+	}
+
+	private static long historyMillis()
+	{
+		return TimeUnit.DAYS.toMillis(HISTORY_DAYS);
+	}
+
+	/**
+	 * Copies the roster as it was at the end of a day, such as 19-Jun-2021, from the
+	 * roster history. Must be called on the client thread.
+	 */
+	public void exportRosterAsOf(String date)
+	{
+		LocalDate day;
+		try
+		{
+			day = LocalDate.parse(date.trim(), ClanRoster.JOINED_DATE_FORMAT);
+		}
+		catch (DateTimeParseException e)
+		{
+			clanMateExportChatMenuManager.showMessage("'" + date.trim() + "' isn't a date like 19-Jun-2021.");
+			return;
+		}
+
+		long endOfDay = day.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+		this.readHistory(clanName ->
+		{
+			ClanRoster roster;
+			try
+			{
+				roster = this.history.asOf(clanName, endOfDay);
+			}
+			catch (IOException e)
 			{
-				case JSON:
-					clipBoardString = toJson(this.clanMembers);
-					break;
-				case CSV:
-					clipBoardString = toCSV(this.clanMembers);
-					break;
+				log.warn("Unable to read roster history", e);
+				clanMateExportChatMenuManager.showMessage("Clan history couldn't be read.");
+				return;
+			}
 
+			if (roster == null)
+			{
+				clanMateExportChatMenuManager.showMessage("No roster was kept for your clan by " + date.trim() + ".");
+				return;
 			}
 
-			this.clanMembersToClipBoard(clipBoardString);
-			clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.SUCCESS);
-		}
+			ClanRosterTransferable contents = new ClanRosterTransferable(clanName, roster, this.config.getDataExportFormat(),
+				this.exportTemplate, this.config.getExportUserNamesOnly(), this.metrics);
+			Toolkit.getDefaultToolkit().getSystemClipboard().setContents(contents, contents);
+			this.clipboardContents = contents;
+			clanMateExportChatMenuManager.showMessage("The " + roster.size() + " clanmates on " + date.trim() + " have been copied to your clipboard.");
+		});
 	}
 
 	/**
-	 * Creates a csv string from clan members
+	 * Asks the clan's roster timeline for changes on the export executor, then copies them
+	 * to the clipboard in the export format. Must be called on the client thread.
 	 *
-	 * @param clanMemberMaps Clan members info
-	 * @return csv with clan members info
+	 * @param describe what to tell the user about the changes found
 	 */
-	private String toCSV(List<ClanMemberMap> clanMemberMaps)
+	private void exportHistory(HistoryQuery query, Function<List<ClanMemberChange>, String> describe)
 	{
-		String result = "";
-
-		StringBuilder sb = new StringBuilder();
-
-		for (ClanMemberMap clanMember : clanMemberMaps)
+		this.readHistory(clanName ->
 		{
-			sb.append(clanMember.getRSN()).append(",");
-			if (!this.config.getExportUserNamesOnly())
+			List<ClanMemberChange> changes;
+			StringBuilder text = new StringBuilder();
+			try
 			{
-				sb.append(clanMember.getRank()).append(",");
-				sb.append(clanMember.getJoinedDate());
+				changes = query.run(clanName, System.currentTimeMillis());
+				ClanRosterWriter.writeChanges(this.config.getDataExportFormat(), changes, text);
 			}
+			catch (IOException e)
+			{
+				log.warn("Unable to read clan history", e);
+				clanMateExportChatMenuManager.showMessage("Clan history couldn't be read.");
+				return;
+			}
+
+			if (changes.isEmpty())
+			{
+				clanMateExportChatMenuManager.showMessage("Nothing found in the clan history.");
+				return;
+			}
+
+			Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text.toString()), null);
+			//The roster copied last isn't on the clipboard anymore, so it is copied again next time
+			this.clipboardContents = null;
+			clanMateExportChatMenuManager.showMessage(describe.apply(changes) + " Copied to your clipboard.");
+		});
+	}
 
-			sb.append("\n");
+	/**
+	 * Reads our own clan's history on the export executor. Must be called on the client thread.
+	 */
+	private void readHistory(Consumer<String> read)
+	{
+		ClanSettings clanSettings = this.client.getClanSettings();
+		ExecutorService executor = this.exportExecutor;
+		if (clanSettings == null || executor == null)
+		{
+			clanMateExportChatMenuManager.showMessage("Clan history can't be read yet. Try again once your clan has loaded.");
+			return;
 		}
 
-		result = sb.deleteCharAt(sb.length() - 1).toString();
+		String clanName = clanSettings.getName();
+		executor.execute(() -> read.accept(clanName));
+	}
 
-		return result;
+	/**
+	 * A question for the roster timeline
+	 */
+	private interface HistoryQuery
+	{
+		List<ClanMemberChange> run(String clanName, long now) throws IOException;
 	}
 
-	private String toJson(List<ClanMemberMap> clanMemberMaps)
+	public void ClanToClipBoard()
 	{
-		return GSON.toJson(clanMemberMaps);
+		if (this.config.exportToClipBoard())
+		{
+			this.export(CLIPBOARD_EXPORT, this::clanMembersToClipBoard);
+		}
 	}
 
 	/**
-	 * Exports clanmembers to clip board
+	 * Exports clanmembers to clip board. Nothing is written until it is pasted,
+	 * and an export the same as what is already on the clipboard is left as it is.
 	 */
-	private void clanMembersToClipBoard(String clipboardString)
+	private CompletableFuture<Void> clanMembersToClipBoard(ClanRosterCapture capture, Executor executor)
+	{
+		return this.rosterBuilder.build(capture, executor).thenAccept(members -> this.toClipBoard(capture, members));
+	}
+
+	private void toClipBoard(ClanRosterCapture capture, ClanRoster members)
 	{
-		if(this.clanMembers.size() != 0)
+		this.clanMembers = members;
+
+		long start = System.nanoTime();
+		ClanRosterTransferable contents = new ClanRosterTransferable(capture.getClanName(), members,
+			this.config.getDataExportFormat(), this.exportTemplate, this.config.getExportUserNamesOnly(), this.metrics);
+		if (!contents.sameAs(this.clipboardContents))
 		{
-			StringSelection stringSelection = new StringSelection(clipboardString);
 			Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-			clipboard.setContents(stringSelection, null);
+			clipboard.setContents(contents, contents);
+			this.clipboardContents = contents;
+		}
+		this.metrics.recordStage(ClanMateExportMetrics.Stage.CLIPBOARD, start);
+		ClanMateExportDispatcher<?> exports = this.exports;
+		if (exports == null || !exports.isPending(exportKey(CLIPBOARD_EXPORT, capture)))
+		{
+			//Left to the follow-up when one is waiting
+			clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.SUCCESS);
 		}
 	}
 
 	/**
 	 * Exports clanmembers to remote url
-	 *
-	 * @return
 	 */
 	public void SendClanMembersToUrl()
 	{
-		this.scrapeMembers();
-		if(this.clanMembers.size() != 0)
+		this.export(URL_EXPORT, this::clanMembersToUrl);
+	}
+
+	private CompletableFuture<Void> clanMembersToUrl(ClanRosterCapture capture, Executor executor)
+	{
+		return this.rosterBuilder.build(capture, executor).thenAccept(members ->
 		{
-			try
-			{
-				String clanName = Objects.requireNonNull(this.client.getClanSettings()).getName();
-				ClanMateExportWebRequestModel webRequestModel = new ClanMateExportWebRequestModel(clanName, this.clanMembers);
-
-				final Request request = new Request.Builder()
-					.post(RequestBody.create(JSON, GSON.toJson(webRequestModel)))
-					.url(config.getDataUrl())
-					.build();
-
-				webClient.newCall(request).enqueue(new Callback()
-				{
-					@Override
-					public void onFailure(Call call, IOException e)
-					{
-						clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_FAILED);
-					}
-
-					@Override
-					public void onResponse(Call call, Response response) throws IOException
-					{
-						if (response.isSuccessful())
-						{
-							clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.SUCCESS);
-						}
-						else
-						{
-							clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_FAILED);
-						}
-
-					}
-				});
-			}
-			catch (Exception e)
+			this.clanMembers = members;
+			List<ClanMateExportDestination> destinations = ClanMateExportDestination.fromConfig(this.config);
+			if (destinations.isEmpty())
 			{
 				clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_FAILED);
-
+				return;
 			}
-		}
+			this.uploader.exportAll(capture.getClanName(), destinations, members);
+		});
 	}
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds the members to export from a capture, the same way for every kind of
+ * export. Joined dates and other columns the capture is missing are taken from
+ * the last export, hiscores are added if they are wanted, name changes are
+ * linked, and the roster is added to the history if it is kept.
+ */
+@Slf4j
+@Singleton
+public class ClanMateExportRosterBuilder
+{
+	private final ClanMateExportConfig config;
+	private final ClanMateExportMetrics metrics;
+	private final ClanRosterSnapshotStore snapshotStore;
+	private final ClanMateExportHiscores hiscores;
+	private final ClanMemberIndex memberIndex;
+	private final ClanRosterHistory history;
+	private final ClanRosterTimeline timeline;
+
+	@Inject
+	ClanMateExportRosterBuilder(ClanMateExportConfig config, ClanMateExportMetrics metrics,
+		ClanRosterSnapshotStore snapshotStore, ClanMateExportHiscores hiscores, ClanMemberIndex memberIndex,
+		ClanRosterHistory history, ClanRosterTimeline timeline)
+	{
+		this.config = config;
+		this.metrics = metrics;
+		this.snapshotStore = snapshotStore;
+		this.hiscores = hiscores;
+		this.memberIndex = memberIndex;
+		this.history = history;
+		this.timeline = timeline;
+	}
+
+	/**
+	 * Builds the clan members. Doesn't touch the client, but reads and writes
+	 * files, so must be called on the export executor. Doesn't wait on hiscore
+	 * lookups, the members are finished on the executor once they are in.
+	 *
+	 * @param executor the export executor
+	 */
+	public CompletableFuture<ClanRoster> build(ClanRosterCapture capture, Executor executor)
+	{
+		String clanName = capture.getClanName();
+		//Only read from disk when the capture needs filling in
+		List<ClanMemberMap> lastExported = capture.isMissingColumns() ? lastExported(clanName) : null;
+
+		long start = System.nanoTime();
+		ClanRoster members = capture.withJoinedDates(lastExported).toMembers();
+		this.metrics.recordStage(ClanMateExportMetrics.Stage.BUILD, start);
+		this.metrics.recordMemberCount(members.size());
+		if (!this.config.getHiscoreLookup())
+		{
+			return CompletableFuture.completedFuture(finish(clanName, members, lastExported));
+		}
+
+		long hiscoresStart = System.nanoTime();
+		return this.hiscores.enrich(members, executor).thenApply(enriched ->
+		{
+			this.metrics.recordStage(ClanMateExportMetrics.Stage.HISCORES, hiscoresStart);
+			return finish(clanName, enriched, lastExported);
+		});
+	}
+
+	/**
+	 * Links name changes and adds the members to the history
+	 *
+	 * @param lastExported the last export if it has been read already, or null
+	 */
+	private ClanRoster finish(String clanName, ClanRoster members, List<ClanMemberMap> lastExported)
+	{
+		members = this.memberIndex.link(clanName, members, () -> lastExported != null ? lastExported : lastExported(clanName));
+
+		if (this.config.getSaveHistory())
+		{
+			try
+			{
+				this.history.append(clanName, members);
+				this.timeline.append(clanName, members);
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to save roster history", e);
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * @return the roster last accepted by the first destination which has accepted one, or null if none have
+	 */
+	public List<ClanMemberMap> lastExported(String clanName)
+	{
+		return this.snapshotStore.loadFirst(clanName, ClanMateExportDestination.fromConfig(this.config));
+	}
+}
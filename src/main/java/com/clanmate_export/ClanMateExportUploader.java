@@ -0,0 +1,916 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Sends exports to one or more destinations through the outbox. Destinations
+ * are sent to at once over the shared connection pool, each with its own
+ * timeout and limit on requests in flight. Each export is written to disk
+ * before it is sent and only removed once the server accepts it. Failed
+ * exports are retried with exponential backoff and jitter, honouring
+ * Retry-After. Rosters the server already has are not sent again, and each
+ * request carries the roster's content hash in If-None-Match so the server can
+ * answer 304 without reading the body. Full exports to destinations with a page
+ * size are sent as pages, all under the export's id, then committed so the
+ * server can apply the whole roster at once. Pages the server acknowledges
+ * aren't sent again, so an interrupted export only costs the pages it was
+ * missing.
+ */
+@Slf4j
+@Singleton
+public class ClanMateExportUploader
+{
+	static final String ROSTER_HASH_HEADER = "X-Roster-Hash";
+	static final String EXPORT_MODE_HEADER = "X-Export-Mode";
+	static final String EXPORT_ID_HEADER = "X-Export-Id";
+	static final String EXPORT_PAGE_HEADER = "X-Export-Page";
+	static final String EXPORT_PAGES_HEADER = "X-Export-Pages";
+
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final int HTTP_CONFLICT = 409;
+	private static final int HTTP_PRECONDITION_FAILED = 412;
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	private static final int HTTP_SERVER_ERROR = 500;
+
+	/**
+	 * How many requests each destination can have in flight, so a slow one can't use up every connection
+	 */
+	private static final int DEFAULT_MAX_REQUESTS_PER_DESTINATION = 4;
+
+	/**
+	 * How long to wait for every destination before reporting, after the longest timeout
+	 */
+	private static final long REPORT_GRACE_MS = TimeUnit.SECONDS.toMillis(5);
+
+	private static final long DEFAULT_BASE_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
+	private static final long MAX_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(10);
+
+	/**
+	 * After this many attempts an export is left in the outbox until the next startup
+	 */
+	static final int MAX_ATTEMPTS = 10;
+
+	private final OkHttpClient webClient;
+	private final ClanMateExportConfig config;
+	private final ClanMateExportOutbox outbox;
+	private final ClanRosterSnapshotStore snapshotStore;
+	private final ClanMateExportChatMenuManager clanMateExportChatMenuManager;
+	private final ScheduledExecutorService executor;
+	private final ClanMateExportMetrics metrics;
+
+	/**
+	 * Retries waiting to run, by outbox key
+	 */
+	private final Map<String, ScheduledFuture<?>> retries = new ConcurrentHashMap<>();
+
+	/**
+	 * Results waiting on exports, by outbox key
+	 */
+	private final Map<String, CompletableFuture<Boolean>> results = new ConcurrentHashMap<>();
+
+	/**
+	 * Clients sharing the connection pool, each with its own dispatcher, by destination url
+	 */
+	private final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+	/**
+	 * Keeps to one request in flight per outbox key, with whether to tell the user how it went
+	 */
+	private final ClanMateExportDispatcher<Boolean> sends = new ClanMateExportDispatcher<>(this::sendNow, Boolean::logicalOr);
+
+	private long baseRetryDelayMs = DEFAULT_BASE_RETRY_DELAY_MS;
+	private int maxRequestsPerDestination = DEFAULT_MAX_REQUESTS_PER_DESTINATION;
+
+	@Inject
+	ClanMateExportUploader(OkHttpClient webClient, ClanMateExportConfig config, ClanMateExportOutbox outbox,
+		ClanRosterSnapshotStore snapshotStore, ClanMateExportChatMenuManager clanMateExportChatMenuManager,
+		ScheduledExecutorService executor, ClanMateExportMetrics metrics)
+	{
+		this.webClient = webClient;
+		this.config = config;
+		this.outbox = outbox;
+		this.snapshotStore = snapshotStore;
+		this.clanMateExportChatMenuManager = clanMateExportChatMenuManager;
+		this.executor = executor;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sends anything left in the outbox from the last session
+	 */
+	public void start()
+	{
+		this.executor.execute(() ->
+		{
+			this.outbox.cleanup();
+			for (String key : this.outbox.keys())
+			{
+				send(key, false);
+			}
+		});
+	}
+
+	public void stop()
+	{
+		for (ScheduledFuture<?> retry : this.retries.values())
+		{
+			retry.cancel(false);
+		}
+		this.retries.clear();
+	}
+
+	/**
+	 * Shortens the backoff between retries, for testing against a local server
+	 */
+	void setBaseRetryDelay(long baseRetryDelayMs)
+	{
+		this.baseRetryDelayMs = baseRetryDelayMs;
+	}
+
+	/**
+	 * Raises how many requests each destination can have in flight, for load testing
+	 */
+	void setMaxRequestsPerDestination(int maxRequestsPerDestination)
+	{
+		this.maxRequestsPerDestination = maxRequestsPerDestination;
+		this.clients.clear();
+	}
+
+	/**
+	 * Exports a roster to every destination at once, then tells the user how
+	 * each went. Destinations still retrying when the longest timeout is up are
+	 * reported as such and carry on in the background.
+	 */
+	public void exportAll(String clanName, List<ClanMateExportDestination> destinations, List<ClanMemberMap> roster)
+	{
+		if (destinations.size() == 1)
+		{
+			try
+			{
+				export(clanName, destinations.get(0), roster, true);
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to queue export to {}", destinations.get(0).getUrl(), e);
+				this.clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_FAILED);
+			}
+			return;
+		}
+
+		List<CompletableFuture<Boolean>> exports = new ArrayList<>(destinations.size());
+		long wait = 0;
+		for (ClanMateExportDestination destination : destinations)
+		{
+			CompletableFuture<Boolean> result;
+			try
+			{
+				result = export(clanName, destination, roster, false);
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to queue export to {}", destination.getUrl(), e);
+				result = CompletableFuture.completedFuture(false);
+			}
+			exports.add(result);
+			wait = Math.max(wait, destination.getTimeoutMs());
+		}
+
+		ScheduledFuture<?> timeout = this.executor.schedule(() -> report(destinations, exports), wait + REPORT_GRACE_MS, TimeUnit.MILLISECONDS);
+		CompletableFuture.allOf(exports.toArray(new CompletableFuture[0])).whenComplete((done, e) ->
+		{
+			if (timeout.cancel(false))
+			{
+				report(destinations, exports);
+			}
+		});
+	}
+
+	private void report(List<ClanMateExportDestination> destinations, List<CompletableFuture<Boolean>> exports)
+	{
+		StringBuilder message = new StringBuilder("Clanmates export:");
+		for (int i = 0; i < destinations.size(); i++)
+		{
+			CompletableFuture<Boolean> export = exports.get(i);
+			message.append("<br>").append(destinations.get(i).getName()).append(": ")
+				.append(!export.isDone() ? "retrying in the background" : export.getNow(false) ? "up to date" : "failed");
+		}
+		this.clanMateExportChatMenuManager.showMessage(message.toString());
+	}
+	/**
+	 * Exports a roster to a url. Sends only the changes since the last accepted
+	 * export when the export mode asks for it.
+	 *
+	 * @return completes with true once the server accepts the roster, which may
+	 *         be after retries or a newer export for the same clan and url, or
+	 *         straight away if it is unchanged since the last accepted export,
+	 *         or false if it is given up on
+	 */
+	public CompletableFuture<Boolean> export(String clanName, String url, List<ClanMemberMap> roster) throws IOException
+	{
+		return export(clanName, url, roster, true);
+	}
+
+	/**
+	 * @param notify whether to tell the user how it went
+	 * @see #export(String, String, List)
+	 */
+	public CompletableFuture<Boolean> export(String clanName, String url, List<ClanMemberMap> roster, boolean notify) throws IOException
+	{
+		return export(clanName, ClanMateExportDestination.of(url, this.config), roster, notify);
+	}
+
+	/**
+	 * @param notify whether to tell the user how it went
+	 * @see #export(String, String, List)
+	 */
+	public CompletableFuture<Boolean> export(String clanName, ClanMateExportDestination destination, List<ClanMemberMap> roster, boolean notify) throws IOException
+	{
+		String url = destination.getUrl();
+		//Anything still in the outbox has to be replaced, even by the roster the server last accepted
+		if (!this.outbox.contains(ClanRosterSnapshotStore.key(clanName, url))
+			&& ClanRosterHash.contentOf(roster).equals(this.snapshotStore.loadContentHash(clanName, url)))
+		{
+			log.debug("Roster for {} unchanged since the last export to {}", clanName, url);
+			if (notify)
+			{
+				this.clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.UNCHANGED);
+			}
+			return CompletableFuture.completedFuture(true);
+		}
+
+		List<ClanMemberMap> lastExported = null;
+		if (this.config.getExportMode() == ClanMateExportMode.DELTA)
+		{
+			lastExported = this.snapshotStore.load(clanName, url);
+		}
+
+		ClanMateExportOutbox.Entry entry = queue(clanName, destination, roster, lastExported);
+		CompletableFuture<Boolean> result = this.results.computeIfAbsent(entry.key, key -> new CompletableFuture<>());
+		cancelRetry(entry.key);
+		if (!send(entry.key, notify) && notify)
+		{
+			this.clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.EXPORT_QUEUED);
+		}
+		return result;
+	}
+
+	/**
+	 * Sends a batch of clan activity as json, once, without going through the
+	 * outbox. Whoever made the batch holds on to it until it is accepted.
+	 *
+	 * @return completes with whether the server accepted it
+	 */
+	public CompletableFuture<Boolean> uploadActivity(ClanMateExportDestination destination, ClanActivityBatch batch)
+	{
+		Request.Builder requestBuilder = new Request.Builder()
+			.url(destination.getUrl())
+			.post(compress(destination, ClanRosterRequestBody.json(batch)));
+		for (Map.Entry<String, String> header : destination.getHeaders().entrySet())
+		{
+			requestBuilder.header(header.getKey(), header.getValue());
+		}
+		requestBuilder.header(EXPORT_MODE_HEADER, "activity");
+		if (destination.isCompress())
+		{
+			requestBuilder.header("Content-Encoding", "gzip");
+		}
+
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		call(destination, requestBuilder.build()).enqueue(new Callback()
+		{
+			@Override
+			public void onFailure(Call call, IOException e)
+			{
+				metrics.recordStatus(-1);
+				log.debug("Activity upload to {} failed", destination.getUrl(), e);
+				result.complete(false);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response)
+			{
+				response.close();
+				metrics.recordStatus(response.code());
+				result.complete(response.isSuccessful());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Writes the request for a roster to the outbox, replacing anything still waiting for the same clan and url
+	 */
+	private ClanMateExportOutbox.Entry queue(String clanName, ClanMateExportDestination destination, List<ClanMemberMap> roster, List<ClanMemberMap> lastExported) throws IOException
+	{
+		long start = System.nanoTime();
+		ClanMateExportOutbox.Entry entry = new ClanMateExportOutbox.Entry();
+		entry.key = ClanRosterSnapshotStore.key(clanName, destination.getUrl());
+		entry.clanName = clanName;
+		entry.url = destination.getUrl();
+		entry.destination = destination;
+		entry.delta = lastExported != null;
+		entry.roster = roster;
+
+		entry.headers.putAll(destination.getHeaders());
+		String hash = ClanRosterHash.of(roster);
+		entry.headers.put(ROSTER_HASH_HEADER, hash);
+		//The server only has this export if it has the same hiscores too
+		entry.headers.put("If-None-Match", '"' + ClanRosterHash.contentOf(roster) + '"');
+		entry.headers.put(EXPORT_MODE_HEADER, entry.delta ? "delta" : "full");
+		if (destination.isCompress())
+		{
+			entry.headers.put("Content-Encoding", "gzip");
+		}
+
+		int pageSize = destination.getPageSize();
+		if (entry.delta)
+		{
+			//Changes are always sent as json, and are small enough to send in one go
+			RequestBody body = compress(destination, ClanRosterRequestBody.json(ClanMateExportDeltaModel.between(clanName, lastExported, roster)));
+			entry.contentType = String.valueOf(body.contentType());
+			entry = this.outbox.put(entry, body);
+		}
+		else if (pageSize > 0 && roster.size() > pageSize)
+		{
+			List<RequestBody> pages = new ArrayList<>();
+			for (int from = 0; from < roster.size(); from += pageSize)
+			{
+				pages.add(compress(destination, body(clanName, destination, roster.subList(from, Math.min(roster.size(), from + pageSize)))));
+			}
+			entry.contentType = String.valueOf(pages.get(0).contentType());
+			entry = this.outbox.putPages(entry, pages);
+		}
+		else
+		{
+			RequestBody body = compress(destination, body(clanName, destination, roster));
+			entry.contentType = String.valueOf(body.contentType());
+			entry = this.outbox.put(entry, body);
+		}
+
+		this.metrics.recordStage(ClanMateExportMetrics.Stage.SERIALIZE, start);
+		long bytes = 0;
+		for (File file : this.outbox.bodyFiles(entry))
+		{
+			bytes += file.length();
+		}
+		this.metrics.recordPayloadBytes(bytes);
+		return entry;
+	}
+
+	/**
+	 * @return a body writing members in the destination's format
+	 */
+	private static RequestBody body(String clanName, ClanMateExportDestination destination, List<ClanMemberMap> members)
+	{
+		if (destination.getFormat() == ClanMateExportDataFormat.BINARY)
+		{
+			return ClanRosterRequestBody.binary(clanName, members);
+		}
+		else if (destination.getFormat() == ClanMateExportDataFormat.CSV)
+		{
+			return ClanRosterRequestBody.csv(members);
+		}
+		return ClanRosterRequestBody.json(new ClanMateExportWebRequestModel(clanName, members));
+	}
+
+	private static RequestBody compress(ClanMateExportDestination destination, RequestBody body)
+	{
+		return destination.isCompress() ? ClanRosterRequestBody.gzip(body) : body;
+	}
+
+	/**
+	 * Sends whatever is waiting in the outbox for a key, once any request already
+	 * in flight for it is done. Sends asked for meanwhile are made once, with
+	 * whatever is in the outbox by then.
+	 *
+	 * @param notify whether to tell the user how it went
+	 * @return true if it was sent now, false if it is waiting on the request in flight
+	 */
+	private boolean send(String key, boolean notify)
+	{
+		return this.sends.dispatch(key, notify);
+	}
+
+	/**
+	 * @return completes once the request has been answered and dealt with
+	 */
+	private CompletableFuture<Void> sendNow(String key, boolean notify)
+	{
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		ClanMateExportOutbox.Entry entry = this.outbox.get(key);
+		if (entry == null)
+		{
+			done.complete(null);
+			return done;
+		}
+
+		ClanMateExportDestination destination = destination(entry);
+		if (entry.pages > 0)
+		{
+			sendPages(entry, destination, notify, done);
+			return done;
+		}
+
+		Request request = request(entry, RequestBody.create(MediaType.parse(entry.contentType), this.outbox.bodyFile(entry))).build();
+		call(destination, request).enqueue(answer(entry, destination, notify, done));
+		return done;
+	}
+
+	/**
+	 * Sends every page the server hasn't acknowledged at once, as many at a time as the
+	 * destination allows, then commits the export once the server has all of them
+	 */
+	private void sendPages(ClanMateExportOutbox.Entry entry, ClanMateExportDestination destination, boolean notify, CompletableFuture<Void> done)
+	{
+		List<Integer> pages = new ArrayList<>();
+		synchronized (entry)
+		{
+			for (int page = 0; page < entry.pages; page++)
+			{
+				if (!entry.acknowledged.contains(page))
+				{
+					pages.add(page);
+				}
+			}
+		}
+
+		if (pages.isEmpty())
+		{
+			commit(entry, destination, notify, done);
+			return;
+		}
+
+		PageResults results = new PageResults(pages.size());
+		for (int page : pages)
+		{
+			Request request = request(entry, RequestBody.create(MediaType.parse(entry.contentType), this.outbox.pageFile(entry, page)))
+				.header(EXPORT_MODE_HEADER, "page")
+				.header(EXPORT_PAGE_HEADER, String.valueOf(page))
+				.build();
+
+			long start = System.nanoTime();
+			call(destination, request).enqueue(new Callback()
+			{
+				@Override
+				public void onFailure(Call call, IOException e)
+				{
+					metrics.recordStage(ClanMateExportMetrics.Stage.UPLOAD, start);
+					metrics.recordStatus(-1);
+					log.debug("Page {} of export to {} failed", page, entry.url, e);
+					results.retry(-1);
+					pageAnswered(entry, destination, results, notify, done);
+				}
+
+				@Override
+				public void onResponse(Call call, Response response)
+				{
+					int code = response.code();
+					String retryAfter = response.header("Retry-After");
+					response.close();
+					metrics.recordStage(ClanMateExportMetrics.Stage.UPLOAD, start);
+					metrics.recordStatus(code);
+
+					if (response.isSuccessful())
+					{
+						acknowledge(entry, page);
+					}
+					else if (code == HTTP_NOT_MODIFIED || code == HTTP_PRECONDITION_FAILED)
+					{
+						results.unchanged();
+					}
+					else if (code == HTTP_TOO_MANY_REQUESTS || code >= HTTP_SERVER_ERROR)
+					{
+						results.retry(parseRetryAfter(retryAfter));
+					}
+					else
+					{
+						results.reject(code);
+					}
+					pageAnswered(entry, destination, results, notify, done);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Records a page the server has, so it isn't sent again even after a restart
+	 */
+	private void acknowledge(ClanMateExportOutbox.Entry entry, int page)
+	{
+		synchronized (entry)
+		{
+			entry.acknowledged.add(page);
+		}
+		try
+		{
+			this.outbox.acknowledge(entry, page);
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to record acknowledged page", e);
+		}
+	}
+
+	/**
+	 * Carries on with a paged export once the server has answered every page sent
+	 */
+	private void pageAnswered(ClanMateExportOutbox.Entry entry, ClanMateExportDestination destination, PageResults results, boolean notify, CompletableFuture<Void> done)
+	{
+		if (!results.answered())
+		{
+			return;
+		}
+
+		if (results.rejectedCode != 0)
+		{
+			//The server won't take this export however often it is sent
+			log.warn("Export to {} rejected with {}", entry.url, results.rejectedCode);
+			if (this.outbox.remove(entry))
+			{
+				fail(entry.key, notify);
+			}
+		}
+		else if (results.unchanged)
+		{
+			accepted(entry, notify);
+		}
+		else if (results.retry)
+		{
+			retry(entry, results.retryAfterMs, notify);
+		}
+		else
+		{
+			commit(entry, destination, notify, done);
+			return;
+		}
+		done.complete(null);
+	}
+
+	/**
+	 * Asks the server to apply a paged export now that it has every page
+	 */
+	private void commit(ClanMateExportOutbox.Entry entry, ClanMateExportDestination destination, boolean notify, CompletableFuture<Void> done)
+	{
+		Request request = request(entry, RequestBody.create(MediaType.parse(entry.contentType), new byte[0]))
+			.header(EXPORT_MODE_HEADER, "commit")
+			.removeHeader("Content-Encoding")
+			.build();
+		call(destination, request).enqueue(answer(entry, destination, notify, done));
+	}
+
+	/**
+	 * @return a request to the entry's url with its headers, and its id and page count if it is paged
+	 */
+	private static Request.Builder request(ClanMateExportOutbox.Entry entry, RequestBody body)
+	{
+		Request.Builder requestBuilder = new Request.Builder()
+			.url(entry.url)
+			.post(body);
+		for (Map.Entry<String, String> header : entry.headers.entrySet())
+		{
+			requestBuilder.header(header.getKey(), header.getValue());
+		}
+		if (entry.pages > 0)
+		{
+			requestBuilder.header(EXPORT_ID_HEADER, entry.id);
+			requestBuilder.header(EXPORT_PAGES_HEADER, String.valueOf(entry.pages));
+		}
+		return requestBuilder;
+	}
+
+	private Call call(ClanMateExportDestination destination, Request request)
+	{
+		Call call = client(destination.getUrl()).newCall(request);
+		call.timeout().timeout(destination.getTimeoutMs(), TimeUnit.MILLISECONDS);
+		return call;
+	}
+
+	/**
+	 * @return a callback dealing with the server's answer to an export, or to a paged export's commit
+	 */
+	private Callback answer(ClanMateExportOutbox.Entry entry, ClanMateExportDestination destination, boolean notify, CompletableFuture<Void> done)
+	{
+		long start = System.nanoTime();
+		return new Callback()
+		{
+			@Override
+			public void onFailure(Call call, IOException e)
+			{
+				metrics.recordStage(ClanMateExportMetrics.Stage.UPLOAD, start);
+				metrics.recordStatus(-1);
+				log.debug("Export to {} failed", entry.url, e);
+				retry(entry, -1, notify);
+				done.complete(null);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response)
+			{
+				try
+				{
+					handle(entry, destination, response, start, notify);
+				}
+				finally
+				{
+					done.complete(null);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Deals with the server's answer to an export
+	 */
+	private void handle(ClanMateExportOutbox.Entry entry, ClanMateExportDestination destination, Response response, long start, boolean notify)
+	{
+		int code = response.code();
+		String retryAfter = response.header("Retry-After");
+		response.close();
+		this.metrics.recordStage(ClanMateExportMetrics.Stage.UPLOAD, start);
+		this.metrics.recordStatus(code);
+
+		if (entry.pages > 0 && code == HTTP_CONFLICT)
+		{
+			//The server is missing pages, having perhaps dropped the export, send them all again
+			//after a backoff, as a server which keeps dropping them would otherwise be sent them in a loop
+			synchronized (entry)
+			{
+				entry.acknowledged.clear();
+			}
+			this.outbox.clearAcknowledged(entry);
+			retry(entry, parseRetryAfter(retryAfter), notify);
+		}
+		else if (entry.delta && code == HTTP_CONFLICT)
+		{
+			//The server's copy has drifted, send it everything
+			try
+			{
+				queue(entry.clanName, destination, entry.roster, null);
+				send(entry.key, notify);
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to queue full export", e);
+				fail(entry.key, notify);
+			}
+		}
+		else if (response.isSuccessful() || code == HTTP_NOT_MODIFIED || code == HTTP_PRECONDITION_FAILED)
+		{
+			//304 and 412 mean the server already has a roster with this hash
+			accepted(entry, notify);
+		}
+		else if (code == HTTP_TOO_MANY_REQUESTS || code >= HTTP_SERVER_ERROR)
+		{
+			retry(entry, parseRetryAfter(retryAfter), notify);
+		}
+		else
+		{
+			//The server won't take this export however often it is sent
+			log.warn("Export to {} rejected with {}", entry.url, code);
+			if (this.outbox.remove(entry))
+			{
+				fail(entry.key, notify);
+			}
+		}
+	}
+
+	private void accepted(ClanMateExportOutbox.Entry entry, boolean notify)
+	{
+		this.snapshotStore.save(entry.clanName, entry.url, entry.roster);
+		if (this.outbox.remove(entry))
+		{
+			complete(entry.key, true);
+		}
+		if (notify(entry.key, notify))
+		{
+			this.clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.SUCCESS);
+		}
+	}
+
+	/**
+	 * Schedules another attempt at an export
+	 *
+	 * @param retryAfterMs how long the server asked us to wait, or -1
+	 */
+	private void retry(ClanMateExportOutbox.Entry entry, long retryAfterMs, boolean notify)
+	{
+		entry.attempts++;
+		try
+		{
+			if (!this.outbox.update(entry))
+			{
+				//A newer export has replaced this one and is sent on its own
+				return;
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to update outbox entry", e);
+		}
+
+		if (entry.attempts >= MAX_ATTEMPTS)
+		{
+			log.warn("Giving up on export to {} until next startup", entry.url);
+			fail(entry.key, notify);
+			return;
+		}
+
+		long delay = retryAfterMs >= 0 ? retryAfterMs : backoff(entry.attempts);
+		cancelRetry(entry.key);
+		this.retries.put(entry.key, this.executor.schedule(() ->
+		{
+			this.retries.remove(entry.key);
+			send(entry.key, false);
+		}, delay, TimeUnit.MILLISECONDS));
+
+		if (notify(entry.key, notify))
+		{
+			clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_RETRYING);
+		}
+	}
+
+	/**
+	 * @return where an entry goes, working it out from the config for entries which didn't record it
+	 */
+	private ClanMateExportDestination destination(ClanMateExportOutbox.Entry entry)
+	{
+		return entry.destination != null ? entry.destination : ClanMateExportDestination.of(entry.url, this.config);
+	}
+
+	/**
+	 * @return a client for a destination, sharing the connection pool and threads but
+	 *         with its own limit on requests in flight
+	 */
+	private OkHttpClient client(String url)
+	{
+		return this.clients.computeIfAbsent(url, u ->
+		{
+			Dispatcher dispatcher = new Dispatcher(this.webClient.dispatcher().executorService());
+			dispatcher.setMaxRequests(this.maxRequestsPerDestination);
+			dispatcher.setMaxRequestsPerHost(this.maxRequestsPerDestination);
+			return this.webClient.newBuilder().dispatcher(dispatcher).build();
+		});
+	}
+
+	private void cancelRetry(String key)
+	{
+		ScheduledFuture<?> retry = this.retries.remove(key);
+		if (retry != null)
+		{
+			retry.cancel(false);
+		}
+	}
+
+	private void complete(String key, boolean accepted)
+	{
+		CompletableFuture<Boolean> result = this.results.remove(key);
+		if (result != null)
+		{
+			result.complete(accepted);
+		}
+	}
+
+	private void fail(String key, boolean notify)
+	{
+		complete(key, false);
+		if (notify(key, notify))
+		{
+			clanMateExportChatMenuManager.update(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_FAILED);
+		}
+	}
+
+	/**
+	 * @return whether to tell the user how a request went, which is left to the
+	 *         follow-up when one is waiting, so only the last result pops up
+	 */
+	private boolean notify(String key, boolean notify)
+	{
+		return notify && !this.sends.isPending(key);
+	}
+
+	/**
+	 * How the pages sent in one go were answered, looked at once the last is
+	 */
+	private static final class PageResults
+	{
+		private int waiting;
+		private boolean unchanged;
+		private boolean retry;
+		private long retryAfterMs = -1;
+		private int rejectedCode;
+
+		PageResults(int waiting)
+		{
+			this.waiting = waiting;
+		}
+
+		synchronized boolean answered()
+		{
+			return --this.waiting == 0;
+		}
+
+		synchronized void unchanged()
+		{
+			this.unchanged = true;
+		}
+
+		synchronized void retry(long retryAfterMs)
+		{
+			this.retry = true;
+			this.retryAfterMs = Math.max(this.retryAfterMs, retryAfterMs);
+		}
+
+		synchronized void reject(int code)
+		{
+			this.rejectedCode = code;
+		}
+	}
+
+	/**
+	 * @return a random delay between half and all of the exponential backoff for this attempt
+	 */
+	private long backoff(int attempts)
+	{
+		long delay = Math.min(MAX_RETRY_DELAY_MS, this.baseRetryDelayMs << Math.min(attempts - 1, 20));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	/**
+	 * @return the delay a Retry-After header asks for in milliseconds, or -1 if there isn't one
+	 */
+	static long parseRetryAfter(String retryAfter)
+	{
+		if (retryAfter == null)
+		{
+			return -1;
+		}
+
+		try
+		{
+			return Math.min(MAX_RETRY_DELAY_MS, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+		}
+		catch (NumberFormatException e)
+		{
+			//Must be a date instead
+		}
+
+		try
+		{
+			long at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+			return Math.min(MAX_RETRY_DELAY_MS, Math.max(0, at - System.currentTimeMillis()));
+		}
+		catch (DateTimeParseException e)
+		{
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+/**
+ * A change to a clan's roster, as seen between two exports
+ */
+public class ClanMemberChange {
+
+    public enum Type {
+        JOINED,
+        LEFT,
+        RANK_CHANGED
+    }
+
+    /**
+     * The runescape player's name
+     */
+    private String rsn;
+
+    private Type change;
+
+    /**
+     * The player's rank after the change, empty for players leaving
+     */
+    private String rank;
+
+    /**
+     * Date the change was seen, such as 19-Jun-2021
+     */
+    private String date;
+
+    /**
+     * When the change was seen in epoch millis
+     */
+    private transient long timestamp;
+
+    public ClanMemberChange(String rsn, Type change, String rank, String date, long timestamp) {
+        this.rsn = rsn;
+        this.change = change;
+        this.rank = rank;
+        this.date = date;
+        this.timestamp = timestamp;
+    }
+
+    public String getRSN() {
+        return rsn;
+    }
+
+    public Type getChange() {
+        return change;
+    }
+
+    public String getRank() {
+        return rank;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.inject.Singleton;
+import net.runelite.api.Client;
+import net.runelite.api.clan.ClanSettings;
+import net.runelite.api.widgets.Widget;
+
+/**
+ * Remembers every column the members page has shown, so the two drop downs
+ * can be cycled through one column at a time rather than needing the right
+ * pair selected together. Columns are kept as their raw texts, along with the
+ * names they were read beside, and matched up by name off the client thread.
+ * Only touched on the client thread.
+ */
+@Singleton
+public class ClanMemberColumnCache
+{
+	private static final int[] DROP_DOWNS = {ClanMembersWidget.FIRST_DROP_DOWN, ClanMembersWidget.SECOND_DROP_DOWN};
+	private static final int[] COLUMNS = {ClanMembersWidget.FIRST_COLUMN, ClanMembersWidget.SECOND_COLUMN};
+	private static final int[] LAYOUT_SLOTS = {ClanMembersLayoutResolver.FIRST_COLUMN, ClanMembersLayoutResolver.SECOND_COLUMN};
+
+	private final Map<String, Column> columns = new HashMap<>();
+	private String clanName;
+
+	private final ClanMembersLayoutResolver layoutResolver = new ClanMembersLayoutResolver();
+
+	/**
+	 * The label and layout each drop down last showed, so an unchanged page isn't read again
+	 */
+	private final String[] lastLabels = new String[DROP_DOWNS.length];
+	private final ClanMembersLayoutResolver.ColumnLayout[] lastLayouts = new ClanMembersLayoutResolver.ColumnLayout[DROP_DOWNS.length];
+
+	/**
+	 * Reads whichever columns the members page is showing into the cache
+	 *
+	 * @return true if a column was read which wasn't cached before
+	 */
+	public boolean update(Client client)
+	{
+		ClanSettings clanSettings = client.getClanSettings();
+		Widget rsnColumn = client.getWidget(ClanMembersWidget.RSN_COLUMN);
+		if (clanSettings == null || rsnColumn == null || rsnColumn.getChildren() == null)
+		{
+			return false;
+		}
+
+		if (!Objects.equals(this.clanName, clanSettings.getName()))
+		{
+			clear();
+			this.clanName = clanSettings.getName();
+		}
+
+		Widget[] rsnValues = rsnColumn.getChildren();
+		ClanMembersLayoutResolver.ColumnLayout rsnLayout = this.layoutResolver.resolve(ClanMembersLayoutResolver.NAMES, rsnValues, -1);
+		if (rsnLayout == null)
+		{
+			return false;
+		}
+
+		String[] rsns = null;
+		boolean added = false;
+		for (int i = 0; i < DROP_DOWNS.length; i++)
+		{
+			String label = ClanMembersWidget.columnName(client, DROP_DOWNS[i]);
+			Widget column = client.getWidget(COLUMNS[i]);
+			if (label == null || column == null || column.getChildren() == null)
+			{
+				continue;
+			}
+
+			Widget[] values = column.getChildren();
+			ClanMembersLayoutResolver.ColumnLayout layout = this.layoutResolver.resolve(LAYOUT_SLOTS[i], values, rsnLayout.getRows());
+			if (layout == null
+				|| label.equals(this.lastLabels[i]) && layout == this.lastLayouts[i] && this.columns.containsKey(label))
+			{
+				continue;
+			}
+
+			//Both columns sit beside the same names, so read them once
+			int rows = layout.getRows();
+			if (rsns == null)
+			{
+				rsns = new String[rows];
+				for (int row = 0; row < rows; row++)
+				{
+					rsns[row] = ClanMembersWidget.cellText(rsnValues[rsnLayout.index(row)]);
+				}
+			}
+
+			String[] texts = new String[rows];
+			for (int row = 0; row < rows; row++)
+			{
+				texts[row] = ClanMembersWidget.cellText(values[layout.index(row)]);
+			}
+
+			added |= this.columns.put(label, new Column(label, rsns, texts)) == null;
+			this.lastLabels[i] = label;
+			this.lastLayouts[i] = layout;
+		}
+		return added;
+	}
+
+	/**
+	 * Reads the columns the members page is showing even if they look unchanged, for exporting
+	 */
+	public void refresh(Client client)
+	{
+		reloaded();
+		update(client);
+	}
+
+	/**
+	 * Makes the next {@link #update} read the page again, for when its widgets have been rebuilt
+	 */
+	public void reloaded()
+	{
+		this.lastLabels[0] = this.lastLabels[1] = null;
+	}
+
+	/**
+	 * @return the column with the given label, or null if it hasn't been shown
+	 */
+	public Column get(String name)
+	{
+		return this.columns.get(name);
+	}
+
+	/**
+	 * @return the given labels which haven't been shown yet, in the same order
+	 */
+	public List<String> missing(Collection<String> names)
+	{
+		List<String> missing = new ArrayList<>();
+		for (String name : names)
+		{
+			if (!this.columns.containsKey(name))
+			{
+				missing.add(name);
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * @return the labels of the other columns to export as set in the config, leaving out rank and joined
+	 */
+	static String[] otherColumns(ClanMateExportConfig config)
+	{
+		List<String> names = new ArrayList<>();
+		for (String name : config.getOtherColumns().split(","))
+		{
+			name = name.trim();
+			if (!name.isEmpty() && !name.equals(ClanMembersWidget.RANK_COLUMN_NAME) && !name.equals(ClanMembersWidget.JOINED_COLUMN_NAME) && !names.contains(name))
+			{
+				names.add(name);
+			}
+		}
+		return names.toArray(new String[0]);
+	}
+
+	/**
+	 * @return the cached columns with the given labels, null for any which haven't been shown
+	 */
+	Column[] get(String[] names)
+	{
+		Column[] found = new Column[names.length];
+		for (int i = 0; i < names.length; i++)
+		{
+			found[i] = get(names[i]);
+		}
+		return found;
+	}
+
+	public void clear()
+	{
+		this.columns.clear();
+		this.layoutResolver.clear();
+		this.clanName = null;
+		reloaded();
+	}
+
+	/**
+	 * One column of the members page as raw texts, tags and all
+	 */
+	static final class Column
+	{
+		private final String name;
+		private final String[] rsns;
+		private final String[] values;
+
+		/**
+		 * @param rsns   the names the values were read beside
+		 * @param values the cell texts, in the same order as rsns
+		 */
+		Column(String name, String[] rsns, String[] values)
+		{
+			this.name = name;
+			this.rsns = rsns;
+			this.values = values;
+		}
+
+		String getName()
+		{
+			return name;
+		}
+
+		String[] getRsns()
+		{
+			return rsns;
+		}
+
+		String[] getValues()
+		{
+			return values;
+		}
+	}
+}
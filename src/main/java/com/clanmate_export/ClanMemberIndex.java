@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import javax.inject.Singleton;
+import net.runelite.client.util.Text;
+
+/**
+ * Follows clan members across name changes, and finds them by name. The last
+ * roster of each clan is kept, and each new roster is linked to it by matching
+ * the names which have gone to those which have arrived: by joined date, which
+ * a name change keeps, then by rank and by the runs of three letters the names
+ * have in common. Only members who joined the same day, or who share a run of
+ * letters, are ever compared, so linking stays close to linear in the size of
+ * the roster. Each clan's latest roster is indexed by those runs of letters as
+ * well, so members are found by any part of their name without going through
+ * the list.
+ */
+@Singleton
+public class ClanMemberIndex
+{
+	/**
+	 * How alike the names of members who joined the same day must be to pick one
+	 * of them, as the share of their runs of letters in common
+	 */
+	static final double MIN_SAME_DAY_SIMILARITY = 0.2;
+
+	/**
+	 * How alike names must be to match members without a joined date, who must have the same rank as well
+	 */
+	static final double MIN_SIMILARITY = 0.5;
+
+	/**
+	 * Breaks ties between equally alike names in favour of the same rank
+	 */
+	private static final double SAME_RANK_BONUS = 0.1;
+
+	private final Map<String, ClanRoster> latest = new HashMap<>();
+	private final Map<String, Search> searches = new ConcurrentHashMap<>();
+
+	/**
+	 * Links a clan's roster to its last one, recording the name each member who has
+	 * changed theirs had before. Members keep the name they had before their last
+	 * change until they change it again.
+	 *
+	 * @param earlier the clan's roster from before this session, looked up only if
+	 *                there hasn't been one yet, may give null
+	 * @return the roster with previous names, which is kept for the next roster to be linked to
+	 */
+	public synchronized ClanRoster link(String clanName, ClanRoster current, Supplier<List<ClanMemberMap>> earlier)
+	{
+		ClanRoster previous = this.latest.get(clanName);
+		//Only the same if the hiscores are too, so fresh totals aren't swapped for the last ones
+		if (previous != null && previous.getContentHash().equals(current.getContentHash()))
+		{
+			return previous;
+		}
+
+		if (previous == null)
+		{
+			List<ClanMemberMap> earlierRoster = earlier.get();
+			previous = earlierRoster == null ? null : ClanRoster.copyOf(earlierRoster);
+		}
+
+		ClanRoster linked = previous == null ? current : current.withPreviousRsns(previousRsns(previous, current));
+		this.latest.put(clanName, linked);
+		this.searches.put(clanName, new Search(linked));
+		return linked;
+	}
+
+	/**
+	 * Finds members whose name, or the name they had before, holds the query.
+	 * Exact matches come first, then names starting with the query.
+	 *
+	 * @return up to limit members, or null if there is no roster for the clan yet
+	 */
+	public List<ClanMemberMap> find(String clanName, String query, int limit)
+	{
+		Search search = this.searches.get(clanName);
+		return search == null ? null : search.find(normalize(query), limit);
+	}
+
+	public synchronized void clear()
+	{
+		this.latest.clear();
+		this.searches.clear();
+	}
+
+	/**
+	 * @return the name each member of current had before, carried over from previous
+	 *         or matched to a member who has left, or null if no one has changed name
+	 */
+	static String[] previousRsns(ClanRoster previous, ClanRoster current)
+	{
+		String[] previousRsns = new String[current.size()];
+		boolean any = false;
+
+		Map<String, Integer> previousByName = new HashMap<>(previous.size() * 2);
+		for (int i = 0; i < previous.size(); i++)
+		{
+			previousByName.put(normalize(previous.getRSN(i)), i);
+		}
+
+		//Members who have joined or left, by the day they joined, unknown dates under null
+		Map<String, Group> groups = new HashMap<>();
+		for (int i = 0; i < current.size(); i++)
+		{
+			Integer before = previousByName.remove(normalize(current.getRSN(i)));
+			if (before == null)
+			{
+				groups.computeIfAbsent(joinedKey(current, i), key -> new Group()).arrived.add(i);
+			}
+			else if (previous.getPreviousRsn(before) != null)
+			{
+				previousRsns[i] = previous.getPreviousRsn(before);
+				any = true;
+			}
+		}
+		for (int before : previousByName.values())
+		{
+			groups.computeIfAbsent(joinedKey(previous, before), key -> new Group()).departed.add(before);
+		}
+
+		for (Map.Entry<String, Group> group : groups.entrySet())
+		{
+			any |= group.getValue().match(previous, current, group.getKey() != null, previousRsns);
+		}
+		return any ? previousRsns : null;
+	}
+
+	private static String joinedKey(ClanRoster roster, int index)
+	{
+		return roster.getJoinedEpochDay(index) < 0 ? null : roster.getJoinedDate(index);
+	}
+
+	/**
+	 * @return the name as the game compares names, in lower case with spaces for underscores and hyphens
+	 */
+	static String normalize(String rsn)
+	{
+		return Text.toJagexName(rsn).toLowerCase(Locale.ENGLISH).replace('_', ' ').replace('-', ' ');
+	}
+
+	/**
+	 * @return the runs of three letters in a name, padded so the first and last letters count as much as the rest
+	 */
+	private static Set<Long> trigrams(String name, boolean padded)
+	{
+		String text = padded ? ' ' + name + ' ' : name;
+		Set<Long> trigrams = new HashSet<>();
+		for (int i = 0; i + 3 <= text.length(); i++)
+		{
+			trigrams.add(trigram(text, i));
+		}
+		return trigrams;
+	}
+
+	private static long trigram(String text, int i)
+	{
+		return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+	}
+
+	/**
+	 * Members who joined the same day, or whose joined date isn't known, some of whom have left and some arrived
+	 */
+	private static final class Group
+	{
+		private final List<Integer> departed = new ArrayList<>();
+		private final List<Integer> arrived = new ArrayList<>();
+
+		/**
+		 * Matches members who have left to those who have arrived, the most alike first
+		 *
+		 * @param knownDate whether the members joined on a known day, rather than on an unknown one
+		 * @return true if anyone was matched
+		 */
+		boolean match(ClanRoster previous, ClanRoster current, boolean knownDate, String[] previousRsns)
+		{
+			if (departed.isEmpty() || arrived.isEmpty())
+			{
+				return false;
+			}
+
+			if (knownDate && departed.size() == 1 && arrived.size() == 1)
+			{
+				//The only one to leave and the only one to arrive on that day
+				previousRsns[arrived.get(0)] = previous.getRSN(departed.get(0));
+				return true;
+			}
+
+			List<Set<Long>> departedTrigrams = new ArrayList<>(departed.size());
+			Map<Long, List<Integer>> postings = new HashMap<>();
+			for (int d = 0; d < departed.size(); d++)
+			{
+				Set<Long> trigrams = trigrams(normalize(previous.getRSN(departed.get(d))), true);
+				departedTrigrams.add(trigrams);
+				for (Long trigram : trigrams)
+				{
+					postings.computeIfAbsent(trigram, t -> new ArrayList<>()).add(d);
+				}
+			}
+
+			List<double[]> pairs = new ArrayList<>();
+			for (int a = 0; a < arrived.size(); a++)
+			{
+				Set<Long> trigrams = trigrams(normalize(current.getRSN(arrived.get(a))), true);
+				Map<Integer, Integer> shared = new HashMap<>();
+				for (Long trigram : trigrams)
+				{
+					for (int d : postings.getOrDefault(trigram, Collections.emptyList()))
+					{
+						shared.merge(d, 1, Integer::sum);
+					}
+				}
+
+				for (Map.Entry<Integer, Integer> candidate : shared.entrySet())
+				{
+					int d = candidate.getKey();
+					double similarity = candidate.getValue() / (double) (trigrams.size() + departedTrigrams.get(d).size() - candidate.getValue());
+					boolean sameRank = previous.getRank(departed.get(d)).equals(current.getRank(arrived.get(a)));
+					if (knownDate ? similarity >= MIN_SAME_DAY_SIMILARITY : similarity >= MIN_SIMILARITY && sameRank)
+					{
+						pairs.add(new double[]{similarity + (sameRank ? SAME_RANK_BONUS : 0), d, a});
+					}
+				}
+			}
+
+			pairs.sort((x, y) -> Double.compare(y[0], x[0]));
+			boolean[] departedTaken = new boolean[departed.size()];
+			boolean[] arrivedTaken = new boolean[arrived.size()];
+			boolean any = false;
+			for (double[] pair : pairs)
+			{
+				int d = (int) pair[1];
+				int a = (int) pair[2];
+				if (!departedTaken[d] && !arrivedTaken[a])
+				{
+					departedTaken[d] = true;
+					arrivedTaken[a] = true;
+					previousRsns[arrived.get(a)] = previous.getRSN(departed.get(d));
+					any = true;
+				}
+			}
+			return any;
+		}
+	}
+
+	/**
+	 * A roster's names, and the names its members had before, indexed for finding members by part of a name
+	 */
+	private static final class Search
+	{
+		private final ClanRoster roster;
+		private final String[] names;
+		private final int[] members;
+
+		/**
+		 * Names by their runs of three letters, as indexes into names
+		 */
+		private final Map<Long, int[]> postings = new HashMap<>();
+
+		/**
+		 * Indexes into names, sorted by name, for names shorter than a run of letters
+		 */
+		private final Integer[] sorted;
+
+		Search(ClanRoster roster)
+		{
+			this.roster = roster;
+			List<String> names = new ArrayList<>(roster.size());
+			List<Integer> members = new ArrayList<>(roster.size());
+			for (int i = 0; i < roster.size(); i++)
+			{
+				names.add(normalize(roster.getRSN(i)));
+				members.add(i);
+				if (roster.getPreviousRsn(i) != null)
+				{
+					names.add(normalize(roster.getPreviousRsn(i)));
+					members.add(i);
+				}
+			}
+
+			this.names = names.toArray(new String[0]);
+			this.members = new int[this.names.length];
+			Map<Long, List<Integer>> postings = new HashMap<>();
+			for (int i = 0; i < this.names.length; i++)
+			{
+				this.members[i] = members.get(i);
+				for (Long trigram : trigrams(this.names[i], false))
+				{
+					postings.computeIfAbsent(trigram, t -> new ArrayList<>()).add(i);
+				}
+			}
+			for (Map.Entry<Long, List<Integer>> posting : postings.entrySet())
+			{
+				this.postings.put(posting.getKey(), posting.getValue().stream().mapToInt(Integer::intValue).toArray());
+			}
+
+			this.sorted = new Integer[this.names.length];
+			for (int i = 0; i < this.sorted.length; i++)
+			{
+				this.sorted[i] = i;
+			}
+			Arrays.sort(this.sorted, (x, y) -> this.names[x].compareTo(this.names[y]));
+		}
+
+		List<ClanMemberMap> find(String query, int limit)
+		{
+			if (query.isEmpty() || limit <= 0)
+			{
+				return Collections.emptyList();
+			}
+
+			Set<Integer> exact = new LinkedHashSet<>();
+			Set<Integer> prefixed = new LinkedHashSet<>();
+			Set<Integer> containing = new LinkedHashSet<>();
+			for (int name : candidates(query))
+			{
+				int member = this.members[name];
+				if (this.names[name].equals(query))
+				{
+					exact.add(member);
+				}
+				else if (this.names[name].startsWith(query))
+				{
+					prefixed.add(member);
+				}
+				else if (this.names[name].contains(query))
+				{
+					containing.add(member);
+				}
+			}
+
+			Set<Integer> found = new LinkedHashSet<>(exact);
+			found.addAll(prefixed);
+			found.addAll(containing);
+			List<ClanMemberMap> members = new ArrayList<>(Math.min(limit, found.size()));
+			for (int member : found)
+			{
+				if (members.size() == limit)
+				{
+					break;
+				}
+				members.add(this.roster.get(member));
+			}
+			return members;
+		}
+
+		/**
+		 * @return names which may hold the query: those sharing its rarest run of
+		 *         letters, or for short queries those starting with it
+		 */
+		private int[] candidates(String query)
+		{
+			if (query.length() < 3)
+			{
+				int from = lowerBound(query);
+				int to = from;
+				while (to < this.sorted.length && this.names[this.sorted[to]].startsWith(query))
+				{
+					to++;
+				}
+
+				int[] candidates = new int[to - from];
+				for (int i = from; i < to; i++)
+				{
+					candidates[i - from] = this.sorted[i];
+				}
+				return candidates;
+			}
+
+			int[] rarest = null;
+			for (int i = 0; i + 3 <= query.length(); i++)
+			{
+				int[] posting = this.postings.get(trigram(query, i));
+				if (posting == null)
+				{
+					return new int[0];
+				}
+				if (rarest == null || posting.length < rarest.length)
+				{
+					rarest = posting;
+				}
+			}
+			return rarest;
+		}
+
+		private int lowerBound(String query)
+		{
+			int low = 0;
+			int high = this.sorted.length;
+			while (low < high)
+			{
+				int mid = (low + high) >>> 1;
+				if (this.names[this.sorted[mid]].compareTo(query) < 0)
+				{
+					low = mid + 1;
+				}
+				else
+				{
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+}
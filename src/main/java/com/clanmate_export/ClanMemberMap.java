@@ -25,6 +25,9 @@
 
 package com.clanmate_export;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * A simple mapping of RSN -> Rank
  */
@@ -45,6 +48,16 @@ public class ClanMemberMap {
      */
     private String joinedDate;
 
+    /**
+     * Any other members page columns exported, by label, or null if there are none
+     */
+    private Map<String, String> columns;
+
+    /**
+     * The name the member had before their last name change, or null if they haven't been seen changing it
+     */
+    private String previousRsn;
+
     /**
      * Initialize a map from runescape player name to rank
      *
@@ -58,6 +71,26 @@ public class ClanMemberMap {
         this.joinedDate = joinedDate;
     }
 
+    /**
+     * Initialize a map with other members page columns as well
+     *
+     * @param columns - cell texts by column label, in the order they are exported
+     */
+    public ClanMemberMap(String rsn, String rank, String joinedDate, Map<String, String> columns) {
+        this(rsn, rank, joinedDate);
+        this.columns = columns.isEmpty() ? null : columns;
+    }
+
+    /**
+     * Initialize a map for a member who has changed their name
+     *
+     * @param previousRsn - the name the member had before their last name change, or null
+     */
+    public ClanMemberMap(String rsn, String rank, String joinedDate, Map<String, String> columns, String previousRsn) {
+        this(rsn, rank, joinedDate, columns);
+        this.previousRsn = previousRsn;
+    }
+
     /**
      * @return the runescape player's name
      */
@@ -76,5 +109,18 @@ public class ClanMemberMap {
      * @return the runescape player's joined date
      */
     public String getJoinedDate() { return  this.joinedDate;}
-}
 
+    /**
+     * @return the other members page columns by label, empty if none are exported
+     */
+    public Map<String, String> getColumns() {
+        return this.columns == null ? Collections.emptyMap() : this.columns;
+    }
+
+    /**
+     * @return the name the member had before their last name change, or null if they haven't been seen changing it
+     */
+    public String getPreviousRsn() {
+        return this.previousRsn;
+    }
+}
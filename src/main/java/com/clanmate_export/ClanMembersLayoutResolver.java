@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetType;
+
+/**
+ * Works out where the text cells sit among the children of each members page
+ * column, rather than assuming the layout. A column is inspected once, and its
+ * layout kept until a fingerprint of its children, their count and the types of
+ * the first few and the last, changes. A layout which can't be read, or doesn't
+ * line up with the names, is reported once and read as nothing.
+ */
+@Slf4j
+final class ClanMembersLayoutResolver
+{
+	static final int NAMES = 0;
+	static final int FIRST_COLUMN = 1;
+	static final int SECOND_COLUMN = 2;
+
+	/**
+	 * How many leading children go into a fingerprint
+	 */
+	private static final int FINGERPRINT_CHILDREN = 8;
+
+	private final long[] fingerprints = new long[3];
+	private final boolean[] resolved = new boolean[3];
+	private final ColumnLayout[] layouts = new ColumnLayout[3];
+
+	/**
+	 * @param slot     which of the page's columns the children are from
+	 * @param children the column's children
+	 * @param rows     how many rows the names column has, or -1 for the names column itself
+	 * @return where the column's text cells are, the same instance for as long as the
+	 *         fingerprint is unchanged, or null if the layout can't be read
+	 */
+	ColumnLayout resolve(int slot, Widget[] children, int rows)
+	{
+		//The names it has to line up with are part of what makes a layout valid
+		long fingerprint = fingerprint(children) * 31 + rows;
+		if (this.resolved[slot] && this.fingerprints[slot] == fingerprint)
+		{
+			return this.layouts[slot];
+		}
+
+		ColumnLayout layout = inspect(children);
+		if (layout == null)
+		{
+			log.warn("The members page layout has changed, can't find the text cells among {} children", children.length);
+		}
+		else if (rows >= 0 && layout.getRows() != rows)
+		{
+			log.warn("The members page layout has changed, a column has {} rows beside {} names", layout.getRows(), rows);
+			layout = null;
+		}
+
+		this.fingerprints[slot] = fingerprint;
+		this.resolved[slot] = true;
+		this.layouts[slot] = layout;
+		return layout;
+	}
+
+	void clear()
+	{
+		for (int slot = 0; slot < this.resolved.length; slot++)
+		{
+			this.resolved[slot] = false;
+			this.layouts[slot] = null;
+		}
+	}
+
+	static long fingerprint(Widget[] children)
+	{
+		long fingerprint = children.length;
+		for (int i = 0; i < Math.min(children.length, FINGERPRINT_CHILDREN); i++)
+		{
+			fingerprint = fingerprint * 31 + children[i].getType();
+		}
+		if (children.length > 0)
+		{
+			fingerprint = fingerprint * 31 + children[children.length - 1].getType();
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Finds the text children, which have to be evenly spaced with nothing else between
+	 *
+	 * @return the layout, or null if the text children aren't evenly spaced
+	 */
+	static ColumnLayout inspect(Widget[] children)
+	{
+		int first = -1;
+		int stride = 0;
+		int last = -1;
+		int texts = 0;
+		for (int i = 0; i < children.length; i++)
+		{
+			if (children[i].getType() != WidgetType.TEXT)
+			{
+				continue;
+			}
+
+			if (first < 0)
+			{
+				first = i;
+			}
+			else if (stride == 0)
+			{
+				stride = i - first;
+			}
+			else if ((i - first) % stride != 0)
+			{
+				return null;
+			}
+			last = i;
+			texts++;
+		}
+
+		if (texts == 0)
+		{
+			return new ColumnLayout(0, 1, 0);
+		}
+
+		stride = Math.max(stride, 1);
+		if ((last - first) / stride + 1 != texts)
+		{
+			return null;
+		}
+		return new ColumnLayout(first, stride, texts);
+	}
+
+	/**
+	 * Where one column's text cells are among its children
+	 */
+	static final class ColumnLayout
+	{
+		private final int offset;
+		private final int stride;
+		private final int rows;
+
+		ColumnLayout(int offset, int stride, int rows)
+		{
+			this.offset = offset;
+			this.stride = stride;
+			this.rows = rows;
+		}
+
+		int getRows()
+		{
+			return rows;
+		}
+
+		/**
+		 * @return the index of the row's text cell among the column's children
+		 */
+		int index(int row)
+		{
+			return offset + row * stride;
+		}
+	}
+}
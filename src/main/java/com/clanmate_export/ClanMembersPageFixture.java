@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.runelite.api.Client;
+import net.runelite.api.clan.ClanSettings;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetInfo;
+
+/**
+ * A recording of the members page widgets the scrape reads, so it can be
+ * replayed without logging in. It keeps each widget's type and text and its
+ * children's, by index, along with the clan name and member count from the
+ * clan settings.
+ * <p>
+ * Fixtures are written as tab separated lines so they can be read and diffed:
+ * <pre>
+ * clan    Stub Clan
+ * members 2
+ * widget  693:10  0  6  (id, type, child count, text)
+ * child   1  4  Zezima  (index, type, text)
+ * </pre>
+ * Tabs, new lines and backslashes in texts are escaped with a backslash.
+ */
+public final class ClanMembersPageFixture
+{
+	/**
+	 * The widgets on the members page which the scrape reads
+	 */
+	static final int[] RECORDED_WIDGETS = {
+		ClanMembersWidget.LIST_CONTAINER,
+		ClanMembersWidget.RSN_COLUMN,
+		ClanMembersWidget.FIRST_COLUMN,
+		ClanMembersWidget.SECOND_COLUMN,
+		ClanMembersWidget.FIRST_DROP_DOWN,
+		ClanMembersWidget.SECOND_DROP_DOWN,
+	};
+
+	private static final String HEADER = "# Clanmate Export members page fixture";
+
+	private final String clanName;
+	private final int memberCount;
+	private final Map<Integer, RecordedWidget> widgets;
+
+	ClanMembersPageFixture(String clanName, int memberCount, Map<Integer, RecordedWidget> widgets)
+	{
+		this.clanName = clanName;
+		this.memberCount = memberCount;
+		this.widgets = widgets;
+	}
+
+	/**
+	 * Records the members page as the client is showing it. Must be called on the client thread.
+	 *
+	 * @return the recording, or null if the members page isn't open
+	 */
+	public static ClanMembersPageFixture record(Client client)
+	{
+		ClanSettings clanSettings = client.getClanSettings();
+		if (clanSettings == null || client.getWidget(ClanMembersWidget.RSN_COLUMN) == null)
+		{
+			return null;
+		}
+
+		Map<Integer, RecordedWidget> widgets = new LinkedHashMap<>();
+		for (int id : RECORDED_WIDGETS)
+		{
+			Widget widget = client.getWidget(id);
+			if (widget != null)
+			{
+				widgets.put(id, record(widget));
+			}
+		}
+		List<?> members = clanSettings.getMembers();
+		return new ClanMembersPageFixture(clanSettings.getName(), members == null ? 0 : members.size(), widgets);
+	}
+
+	private static RecordedWidget record(Widget widget)
+	{
+		Widget[] children = widget.getChildren();
+		RecordedWidget[] recordedChildren = null;
+		if (children != null)
+		{
+			recordedChildren = new RecordedWidget[children.length];
+			for (int i = 0; i < children.length; i++)
+			{
+				if (children[i] != null)
+				{
+					recordedChildren[i] = new RecordedWidget(children[i].getType(), children[i].getText(), null);
+				}
+			}
+		}
+		return new RecordedWidget(widget.getType(), widget.getText(), recordedChildren);
+	}
+
+	public String getClanName()
+	{
+		return clanName;
+	}
+
+	public int getMemberCount()
+	{
+		return memberCount;
+	}
+
+	/**
+	 * @return the recorded widgets by packed id, in the order they were recorded
+	 */
+	public Map<Integer, RecordedWidget> getWidgets()
+	{
+		return widgets;
+	}
+
+	public void write(Writer out) throws IOException
+	{
+		out.write(HEADER);
+		out.write('\n');
+		out.write("clan\t" + escape(this.clanName) + '\n');
+		out.write("members\t" + this.memberCount + '\n');
+		for (Map.Entry<Integer, RecordedWidget> entry : this.widgets.entrySet())
+		{
+			int id = entry.getKey();
+			RecordedWidget widget = entry.getValue();
+			RecordedWidget[] children = widget.getChildren();
+			out.write("widget\t" + WidgetInfo.TO_GROUP(id) + ':' + WidgetInfo.TO_CHILD(id) + '\t' + widget.getType()
+				+ '\t' + (children == null ? -1 : children.length) + '\t' + escape(widget.getText()) + '\n');
+			if (children == null)
+			{
+				continue;
+			}
+
+			for (int i = 0; i < children.length; i++)
+			{
+				if (children[i] != null)
+				{
+					out.write("child\t" + i + '\t' + children[i].getType() + '\t' + escape(children[i].getText()) + '\n');
+				}
+			}
+		}
+	}
+
+	/**
+	 * @throws IOException if the fixture can't be read or isn't well formed
+	 */
+	public static ClanMembersPageFixture read(BufferedReader in) throws IOException
+	{
+		String clanName = null;
+		int memberCount = 0;
+		Map<Integer, RecordedWidget> widgets = new LinkedHashMap<>();
+		RecordedWidget widget = null;
+
+		String line;
+		int lineNumber = 0;
+		while ((line = in.readLine()) != null)
+		{
+			lineNumber++;
+			if (line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+
+			String[] fields = line.split("\t", -1);
+			try
+			{
+				switch (fields[0])
+				{
+					case "clan":
+						clanName = unescape(fields[1]);
+						break;
+					case "members":
+						memberCount = Integer.parseInt(fields[1]);
+						break;
+					case "widget":
+						String[] id = fields[1].split(":");
+						int childCount = Integer.parseInt(fields[3]);
+						widget = new RecordedWidget(Integer.parseInt(fields[2]), unescape(fields[4]),
+							childCount < 0 ? null : new RecordedWidget[childCount]);
+						widgets.put(WidgetInfo.PACK(Integer.parseInt(id[0]), Integer.parseInt(id[1])), widget);
+						break;
+					case "child":
+						if (widget == null || widget.getChildren() == null)
+						{
+							throw new IOException("Child without a widget on line " + lineNumber);
+						}
+						widget.getChildren()[Integer.parseInt(fields[1])] = new RecordedWidget(Integer.parseInt(fields[2]), unescape(fields[3]), null);
+						break;
+					default:
+						throw new IOException("Unknown record '" + fields[0] + "' on line " + lineNumber);
+				}
+			}
+			catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+			{
+				throw new IOException("Malformed fixture line " + lineNumber + ": " + line, e);
+			}
+		}
+
+		if (clanName == null)
+		{
+			throw new IOException("Fixture has no clan");
+		}
+		return new ClanMembersPageFixture(clanName, memberCount, widgets);
+	}
+
+	static String escape(String text)
+	{
+		if (text == null)
+		{
+			return "";
+		}
+
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			switch (c)
+			{
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				default:
+					sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	static String unescape(String text)
+	{
+		if (text.indexOf('\\') < 0)
+		{
+			return text;
+		}
+
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '\\' && i + 1 < text.length())
+			{
+				c = text.charAt(++i);
+				sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c);
+			}
+			else
+			{
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A recorded widget, or one of a widget's children
+	 */
+	public static final class RecordedWidget
+	{
+		private final int type;
+		private final String text;
+		private final RecordedWidget[] children;
+
+		RecordedWidget(int type, String text, RecordedWidget[] children)
+		{
+			this.type = type;
+			this.text = text;
+			this.children = children;
+		}
+
+		public int getType()
+		{
+			return type;
+		}
+
+		public String getText()
+		{
+			return text;
+		}
+
+		/**
+		 * @return the children by index, with null where there was no child, or null if there were no children
+		 */
+		public RecordedWidget[] getChildren()
+		{
+			return children;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import net.runelite.api.Client;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetInfo;
+
+/**
+ * Widget ids and small helpers for reading the clan settings members page
+ */
+final class ClanMembersWidget
+{
+	static final int GROUP_ID = 693;
+	static final int LIST_CONTAINER = WidgetInfo.PACK(GROUP_ID, 9);
+	static final int RSN_COLUMN = WidgetInfo.PACK(GROUP_ID, 10);
+	static final int FIRST_COLUMN = WidgetInfo.PACK(GROUP_ID, 11);
+	static final int SECOND_COLUMN = WidgetInfo.PACK(GROUP_ID, 13);
+	static final int FIRST_DROP_DOWN = WidgetInfo.PACK(GROUP_ID, 7);
+	static final int SECOND_DROP_DOWN = WidgetInfo.PACK(GROUP_ID, 8);
+
+	/**
+	 * Index of the child holding the selected column label in a drop down
+	 */
+	static final int DROP_DOWN_LABEL_INDEX = 4;
+
+	static final String RANK_COLUMN_NAME = "Rank";
+	static final String JOINED_COLUMN_NAME = "Joined";
+
+	private ClanMembersWidget()
+	{
+	}
+
+	/**
+	 * @return the label currently selected in the given drop down, or null if it isn't loaded
+	 */
+	static String columnName(Client client, int dropDownId)
+	{
+		Widget dropDown = client.getWidget(dropDownId);
+		if (dropDown == null)
+		{
+			return null;
+		}
+
+		Widget[] children = dropDown.getChildren();
+		if (children == null || children.length <= DROP_DOWN_LABEL_INDEX)
+		{
+			return null;
+		}
+		return children[DROP_DOWN_LABEL_INDEX].getText();
+	}
+
+	/**
+	 * @return the raw text of a cell, tags and all
+	 */
+	static String cellText(Widget cell)
+	{
+		String text = cell.getText();
+		return text == null ? "" : text;
+	}
+}
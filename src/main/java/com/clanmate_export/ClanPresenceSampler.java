@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Singleton;
+import net.runelite.api.clan.ClanChannel;
+import net.runelite.api.clan.ClanChannelMember;
+import net.runelite.client.util.Text;
+
+/**
+ * Records who is in the clan channel, and on which world, each game tick. Only
+ * changes are recorded: a member arriving, hopping or leaving. Records go into
+ * a ring buffer of preallocated primitive arrays, so sampling a tick is a map
+ * lookup and a comparison per member, with nothing allocated once everyone
+ * has been seen. The ring buffer is drained on another thread, which turns the
+ * records into sessions.
+ */
+@Singleton
+public class ClanPresenceSampler
+{
+	/**
+	 * How many records the ring buffer holds, a power of two
+	 */
+	static final int CAPACITY = 1 << 16;
+	private static final int MASK = CAPACITY - 1;
+
+	/**
+	 * The world recorded for a member who has left the channel
+	 */
+	public static final int OFFLINE = 0;
+
+	private final long[] recordTimes = new long[CAPACITY];
+	private final int[] recordMembers = new int[CAPACITY];
+	private final short[] recordWorlds = new short[CAPACITY];
+
+	/**
+	 * The next record to write, only written on the client thread
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * The next record to read, only written by whoever drains the records
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	//Everything below is only touched on the client thread, apart from names, which is guarded by itself
+
+	/**
+	 * Member ids by the name the channel gives, for each clan
+	 */
+	private final Map<String, Map<String, Integer>> idsByClan = new HashMap<>();
+	private final List<Member> names = new ArrayList<>();
+
+	private String clanName;
+	private Map<String, Integer> ids;
+
+	/**
+	 * The world each member was last recorded on, by id
+	 */
+	private int[] worlds = new int[256];
+	/**
+	 * The tick each member was last seen, by id
+	 */
+	private int[] seen = new int[256];
+	private int tick;
+
+	/**
+	 * The ids of the members in the channel at the last tick, and the ones being found this tick
+	 */
+	private int[] online = new int[256];
+	private int onlineCount;
+	private int[] nextOnline = new int[256];
+
+	/**
+	 * Records the changes in who is in a clan channel. Must be called on the client thread.
+	 *
+	 * @param channel the clan channel, or null if there isn't one
+	 * @param now     the time, in milliseconds
+	 */
+	public void sample(ClanChannel channel, long now)
+	{
+		if (channel == null)
+		{
+			//Nothing can be seen while logging in or hopping, so hold on to who was there
+			return;
+		}
+
+		if (!channel.getName().equals(this.clanName))
+		{
+			leaveAll(now);
+			this.clanName = channel.getName();
+			this.ids = this.idsByClan.computeIfAbsent(this.clanName, name -> new HashMap<>());
+		}
+
+		this.tick++;
+		List<ClanChannelMember> members = channel.getMembers();
+		int count = 0;
+		for (int i = 0; i < members.size(); i++)
+		{
+			ClanChannelMember member = members.get(i);
+			Integer id = this.ids.get(member.getName());
+			if (id == null)
+			{
+				id = add(member.getName());
+			}
+
+			int world = member.getWorld();
+			if (this.worlds[id] != world)
+			{
+				this.worlds[id] = world;
+				record(now, id, world);
+			}
+			this.seen[id] = this.tick;
+
+			if (count == this.nextOnline.length)
+			{
+				this.nextOnline = Arrays.copyOf(this.nextOnline, count * 2);
+			}
+			this.nextOnline[count++] = id;
+		}
+
+		for (int i = 0; i < this.onlineCount; i++)
+		{
+			int id = this.online[i];
+			if (this.seen[id] != this.tick)
+			{
+				this.worlds[id] = OFFLINE;
+				record(now, id, OFFLINE);
+			}
+		}
+
+		int[] swap = this.online;
+		this.online = this.nextOnline;
+		this.nextOnline = swap;
+		this.onlineCount = count;
+	}
+
+	/**
+	 * Records everyone in the channel leaving, for when we log out. Must be called on the client thread.
+	 */
+	public void leaveAll(long now)
+	{
+		for (int i = 0; i < this.onlineCount; i++)
+		{
+			int id = this.online[i];
+			this.worlds[id] = OFFLINE;
+			record(now, id, OFFLINE);
+		}
+		this.onlineCount = 0;
+	}
+
+	/**
+	 * Hands every record written so far to the sink, oldest first. Must only be called on one thread at a time.
+	 *
+	 * @return how many records were handed over
+	 */
+	public int drain(Sink sink)
+	{
+		long from = this.tail.get();
+		long to = this.head.get();
+		for (long i = from; i < to; i++)
+		{
+			int index = (int) (i & MASK);
+			sink.accept(this.recordTimes[index], this.recordMembers[index], this.recordWorlds[index]);
+		}
+		this.tail.lazySet(to);
+		return (int) (to - from);
+	}
+
+	/**
+	 * @return how many records have been dropped because the ring buffer was full, resetting the count
+	 */
+	public long takeDropped()
+	{
+		return this.dropped.getAndSet(0);
+	}
+
+	/**
+	 * @return the member's name as the game compares names
+	 */
+	public String name(int id)
+	{
+		synchronized (this.names)
+		{
+			return this.names.get(id).rsn;
+		}
+	}
+
+	/**
+	 * @return the clan whose channel the member was seen in
+	 */
+	public String clanName(int id)
+	{
+		synchronized (this.names)
+		{
+			return this.names.get(id).clanName;
+		}
+	}
+
+	private void record(long now, int id, int world)
+	{
+		long index = this.head.get();
+		if (index - this.tail.get() >= CAPACITY)
+		{
+			this.dropped.incrementAndGet();
+			return;
+		}
+
+		int slot = (int) (index & MASK);
+		this.recordTimes[slot] = now;
+		this.recordMembers[slot] = id;
+		this.recordWorlds[slot] = (short) world;
+		//Publishes the record to the thread draining them
+		this.head.lazySet(index + 1);
+	}
+
+	private int add(String channelName)
+	{
+		int id;
+		synchronized (this.names)
+		{
+			id = this.names.size();
+			this.names.add(new Member(Text.toJagexName(Text.removeTags(channelName)), this.clanName));
+		}
+		this.ids.put(channelName, id);
+
+		if (id == this.worlds.length)
+		{
+			this.worlds = Arrays.copyOf(this.worlds, id * 2);
+			this.seen = Arrays.copyOf(this.seen, id * 2);
+			this.online = Arrays.copyOf(this.online, id * 2);
+		}
+		return id;
+	}
+
+	/**
+	 * Takes records as they are drained
+	 */
+	public interface Sink
+	{
+		/**
+		 * @param world the world the member is now on, or {@link #OFFLINE}
+		 */
+		void accept(long time, int memberId, int world);
+	}
+
+	private static final class Member
+	{
+		private final String rsn;
+		private final String clanName;
+
+		private Member(String rsn, String clanName)
+		{
+			this.rsn = rsn;
+			this.clanName = clanName;
+		}
+	}
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A compact, read only clan roster. Names are packed into one char array,
+ * ranks are interned into a small dictionary and joined dates are kept as
+ * epoch days. Members are handed out as {@link ClanMemberMap} views, which
+ * read exactly as the texts the roster was built from. Any other members page
+ * columns are kept as they are, a column at a time.
+ */
+public final class ClanRoster extends AbstractList<ClanMemberMap>
+{
+	/**
+	 * The format the game shows joined dates in, such as 19-Jun-2021
+	 */
+	public static final DateTimeFormatter JOINED_DATE_FORMAT = DateTimeFormatter.ofPattern("d-MMM-yyyy", Locale.ENGLISH);
+
+	private static final String[] NO_COLUMNS = new String[0];
+
+	private final char[] names;
+	private final int[] nameOffsets;
+	private final String[] rankDictionary;
+	private final short[] rankIds;
+	/**
+	 * Epoch days, or for dates which couldn't be parsed -1 - their index in otherDates
+	 */
+	private final int[] joinedEpochDays;
+	private final String[] otherDates;
+	private final String[] columnNames;
+	/**
+	 * The other columns' cells, indexed by column then member
+	 */
+	private final String[][] columnValues;
+	private final String hash;
+	private final String contentHash;
+	/**
+	 * The names members had before their last name change, null for those who
+	 * haven't been seen changing name, or null if no one has
+	 */
+	private final String[] previousRsns;
+
+	private ClanRoster(char[] names, int[] nameOffsets, String[] rankDictionary, short[] rankIds, int[] joinedEpochDays, String[] otherDates,
+		String[] columnNames, String[][] columnValues, String hash, String contentHash, String[] previousRsns)
+	{
+		this.names = names;
+		this.nameOffsets = nameOffsets;
+		this.rankDictionary = rankDictionary;
+		this.rankIds = rankIds;
+		this.joinedEpochDays = joinedEpochDays;
+		this.otherDates = otherDates;
+		this.columnNames = columnNames;
+		this.columnValues = columnValues;
+		this.hash = hash;
+		this.contentHash = contentHash;
+		this.previousRsns = previousRsns;
+	}
+
+	/**
+	 * @return the roster as a compact roster, or the roster itself if it already is one
+	 */
+	public static ClanRoster copyOf(List<ClanMemberMap> clanMembers)
+	{
+		if (clanMembers instanceof ClanRoster)
+		{
+			return (ClanRoster) clanMembers;
+		}
+
+		String[] columnNames = clanMembers.isEmpty() ? new String[0]
+			: clanMembers.get(0).getColumns().keySet().toArray(new String[0]);
+		Builder builder = new Builder(clanMembers.size()).columns(columnNames);
+		String[] values = new String[columnNames.length];
+		String[] previousRsns = null;
+		for (int i = 0; i < clanMembers.size(); i++)
+		{
+			ClanMemberMap clanMember = clanMembers.get(i);
+			for (int column = 0; column < values.length; column++)
+			{
+				values[column] = clanMember.getColumns().get(columnNames[column]);
+			}
+			builder.add(clanMember.getRSN(), clanMember.getRank(), clanMember.getJoinedDate(), values);
+
+			if (clanMember.getPreviousRsn() != null)
+			{
+				if (previousRsns == null)
+				{
+					previousRsns = new String[clanMembers.size()];
+				}
+				previousRsns[i] = clanMember.getPreviousRsn();
+			}
+		}
+		ClanRoster roster = builder.build();
+		return previousRsns == null ? roster : roster.withPreviousRsns(previousRsns);
+	}
+
+	/**
+	 * @param previousRsns the name each member had before their last name change, null for
+	 *                     those who haven't been seen changing name, or null if no one has
+	 * @return the same roster, with the names members had before
+	 */
+	public ClanRoster withPreviousRsns(String[] previousRsns)
+	{
+		return new ClanRoster(names, nameOffsets, rankDictionary, rankIds, joinedEpochDays, otherDates, columnNames, columnValues, hash,
+			contentHash, previousRsns == null ? null : Arrays.copyOf(previousRsns, size()));
+	}
+
+	@Override
+	public ClanMemberMap get(int index)
+	{
+		if (columnNames.length == 0 && previousRsns == null)
+		{
+			return new ClanMemberMap(getRSN(index), getRank(index), getJoinedDate(index));
+		}
+
+		Map<String, String> columns = new LinkedHashMap<>(columnNames.length * 2);
+		for (int column = 0; column < columnNames.length; column++)
+		{
+			columns.put(columnNames[column], columnValues[column][index]);
+		}
+		return new ClanMemberMap(getRSN(index), getRank(index), getJoinedDate(index), columns, getPreviousRsn(index));
+	}
+
+	@Override
+	public int size()
+	{
+		return rankIds.length;
+	}
+
+	public String getRSN(int index)
+	{
+		return new String(names, nameOffsets[index], nameOffsets[index + 1] - nameOffsets[index]);
+	}
+
+	/**
+	 * @return the name the member had before their last name change, or null if they haven't been seen changing it
+	 */
+	public String getPreviousRsn(int index)
+	{
+		return previousRsns == null ? null : previousRsns[index];
+	}
+
+	public String getRank(int index)
+	{
+		return rankDictionary[rankIds[index]];
+	}
+
+	/**
+	 * @return the member's rank as an index into {@link #getRanks()}
+	 */
+	public int getRankId(int index)
+	{
+		return rankIds[index];
+	}
+
+	public String[] getRanks()
+	{
+		return rankDictionary.clone();
+	}
+
+	/**
+	 * @return the labels of the other members page columns kept, in order
+	 */
+	public String[] getColumnNames()
+	{
+		return columnNames.clone();
+	}
+
+	public String getColumn(int index, int column)
+	{
+		return columnValues[column][index];
+	}
+
+	/**
+	 * @return the {@link ClanRosterHash} of the roster, worked out as it was built
+	 */
+	public String getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * @return the {@link ClanRosterHash#contentOf content hash} of the roster, hiscores included
+	 */
+	public String getContentHash()
+	{
+		return contentHash;
+	}
+
+	public String getJoinedDate(int index)
+	{
+		int joined = joinedEpochDays[index];
+		if (joined < 0)
+		{
+			return otherDates[-joined - 1];
+		}
+		return LocalDate.ofEpochDay(joined).format(JOINED_DATE_FORMAT);
+	}
+
+	/**
+	 * @return days since 1970-01-01 the member joined, or -1 if the date is kept as text
+	 *         because it isn't in the game's format
+	 */
+	public int getJoinedEpochDay(int index)
+	{
+		return Math.max(joinedEpochDays[index], -1);
+	}
+
+	/**
+	 * @return days since 1970-01-01, or -1 if the date can't be read
+	 */
+	public static int parseJoinedDate(String joinedDate)
+	{
+		if (joinedDate == null || joinedDate.isEmpty())
+		{
+			return -1;
+		}
+
+		try
+		{
+			return (int) LocalDate.parse(joinedDate, JOINED_DATE_FORMAT).toEpochDay();
+		}
+		catch (DateTimeParseException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Builds a roster a member at a time, parsing each distinct date and rank only once
+	 */
+	public static final class Builder
+	{
+		private final StringBuilder names = new StringBuilder();
+		private int[] nameOffsets;
+		private short[] rankIds;
+		private int[] joinedEpochDays;
+		private int size;
+		private String[] columnNames = NO_COLUMNS;
+		private String[][] columnValues = new String[0][];
+		/**
+		 * The columns which go into the hash
+		 */
+		private int[] hashedColumns = new int[0];
+
+		private final Map<String, Short> rankIdsByName = new HashMap<>();
+		private final List<String> rankDictionary = new ArrayList<>();
+		private final Map<String, Integer> joinedByText = new HashMap<>();
+		private final List<String> otherDates = new ArrayList<>();
+		private final ClanRosterHash hash = new ClanRosterHash();
+		/**
+		 * Only added to when some columns aren't in the hash, the two being the same otherwise
+		 */
+		private final ClanRosterHash contentHash = new ClanRosterHash();
+
+		public Builder(int expectedSize)
+		{
+			expectedSize = Math.max(expectedSize, 1);
+			this.nameOffsets = new int[expectedSize + 1];
+			this.rankIds = new short[expectedSize];
+			this.joinedEpochDays = new int[expectedSize];
+		}
+
+		/**
+		 * Sets the labels of the other columns each member has, before any are added
+		 */
+		public Builder columns(String... columnNames)
+		{
+			this.columnNames = columnNames.clone();
+			this.columnValues = new String[columnNames.length][rankIds.length];
+			this.hashedColumns = new int[columnNames.length];
+			int hashed = 0;
+			for (int column = 0; column < columnNames.length; column++)
+			{
+				if (ClanRosterHash.isHashed(columnNames[column]))
+				{
+					this.hashedColumns[hashed++] = column;
+				}
+			}
+			this.hashedColumns = Arrays.copyOf(this.hashedColumns, hashed);
+			return this;
+		}
+
+		/**
+		 * @param columnValues a cell for each of the other {@link #columns}, copied
+		 */
+		public Builder add(String rsn, String rank, String joinedDate, String... columnValues)
+		{
+			if (size == rankIds.length)
+			{
+				rankIds = Arrays.copyOf(rankIds, size * 2);
+				joinedEpochDays = Arrays.copyOf(joinedEpochDays, size * 2);
+				nameOffsets = Arrays.copyOf(nameOffsets, size * 2 + 1);
+				for (int column = 0; column < this.columnValues.length; column++)
+				{
+					this.columnValues[column] = Arrays.copyOf(this.columnValues[column], size * 2);
+				}
+			}
+
+			for (int column = 0; column < this.columnValues.length; column++)
+			{
+				String value = column < columnValues.length ? columnValues[column] : null;
+				this.columnValues[column][size] = value == null ? "" : value;
+			}
+
+			hash.add(rsn, rank, joinedDate, hashedColumnValues());
+			if (hashedColumns.length < this.columnValues.length)
+			{
+				contentHash.add(rsn, rank, joinedDate, allColumnValues());
+			}
+			names.append(rsn == null ? "" : rsn);
+			nameOffsets[size + 1] = names.length();
+			rankIds[size] = rankId(rank == null ? "" : rank);
+			joinedEpochDays[size] = joined(joinedDate == null ? "" : joinedDate);
+			size++;
+			return this;
+		}
+
+		public ClanRoster build()
+		{
+			char[] packedNames = new char[names.length()];
+			names.getChars(0, packedNames.length, packedNames, 0);
+			return new ClanRoster(packedNames, Arrays.copyOf(nameOffsets, size + 1),
+				rankDictionary.toArray(new String[0]), Arrays.copyOf(rankIds, size),
+				Arrays.copyOf(joinedEpochDays, size), otherDates.toArray(new String[0]),
+				columnNames, columnValues(), hash.value(),
+				hashedColumns.length < columnValues.length ? contentHash.value() : hash.value(), null);
+		}
+
+		/**
+		 * @return every other column of the member being added, as they will be read back
+		 */
+		private String[] allColumnValues()
+		{
+			String[] values = new String[columnValues.length];
+			for (int column = 0; column < values.length; column++)
+			{
+				values[column] = columnValues[column][size];
+			}
+			return values;
+		}
+
+		/**
+		 * @return the hashed columns of the member being added, as they will be read back
+		 */
+		private String[] hashedColumnValues()
+		{
+			if (hashedColumns.length == 0)
+			{
+				return NO_COLUMNS;
+			}
+
+			String[] values = new String[hashedColumns.length];
+			for (int i = 0; i < values.length; i++)
+			{
+				values[i] = columnValues[hashedColumns[i]][size];
+			}
+			return values;
+		}
+
+		private String[][] columnValues()
+		{
+			String[][] values = new String[columnValues.length][];
+			for (int column = 0; column < values.length; column++)
+			{
+				values[column] = Arrays.copyOf(columnValues[column], size);
+			}
+			return values;
+		}
+
+		private short rankId(String rank)
+		{
+			Short id = rankIdsByName.get(rank);
+			if (id == null)
+			{
+				id = (short) rankDictionary.size();
+				rankDictionary.add(rank);
+				rankIdsByName.put(rank, id);
+			}
+			return id;
+		}
+
+		private int joined(String joinedDate)
+		{
+			Integer joined = joinedByText.get(joinedDate);
+			if (joined == null)
+			{
+				int epochDay = parseJoinedDate(joinedDate);
+				//Only keep the epoch day if it reads back as exactly the same text
+				if (epochDay >= 0 && LocalDate.ofEpochDay(epochDay).format(JOINED_DATE_FORMAT).equals(joinedDate))
+				{
+					joined = epochDay;
+				}
+				else
+				{
+					otherDates.add(joinedDate);
+					joined = -otherDates.size();
+				}
+				joinedByText.put(joinedDate, joined);
+			}
+			return joined;
+		}
+	}
+}
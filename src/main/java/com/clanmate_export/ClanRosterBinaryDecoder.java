@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Reads rosters written by {@link ClanRosterBinaryEncoder}
+ */
+public class ClanRosterBinaryDecoder
+{
+	private final InputStream in;
+
+	String clanName;
+	ClanRoster clanMemberMaps;
+
+	private ClanRosterBinaryDecoder(InputStream in)
+	{
+		this.in = in;
+	}
+
+	public static ClanRosterBinaryDecoder decode(byte[] bytes) throws IOException
+	{
+		return decode(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Reads a roster which has to run to the end of the stream
+	 */
+	public static ClanRosterBinaryDecoder decode(InputStream in) throws IOException
+	{
+		ClanRosterBinaryDecoder decoder = new ClanRosterBinaryDecoder(in);
+		decoder.read();
+		return decoder;
+	}
+
+	public String getClanName()
+	{
+		return clanName;
+	}
+
+	public ClanRoster getClanMembers()
+	{
+		return clanMemberMaps;
+	}
+
+	private void read() throws IOException
+	{
+		int version = readByte(in);
+		if (version != ClanRosterBinaryEncoder.VERSION && version != ClanRosterBinaryEncoder.FULL_VERSION)
+		{
+			throw new IOException("Unknown roster version " + version);
+		}
+		boolean full = version == ClanRosterBinaryEncoder.FULL_VERSION;
+
+		this.clanName = readString(in);
+
+		String[] ranks = new String[readVarInt(in)];
+		for (int i = 0; i < ranks.length; i++)
+		{
+			ranks[i] = readString(in);
+		}
+
+		String[] columnNames = new String[full ? readVarInt(in) : 0];
+		for (int i = 0; i < columnNames.length; i++)
+		{
+			columnNames[i] = readString(in);
+		}
+
+		int memberCount = readVarInt(in);
+		ClanRoster.Builder clanMembers = new ClanRoster.Builder(memberCount).columns(columnNames);
+		String[] columnValues = new String[columnNames.length];
+		String[] previousRsns = null;
+		for (int i = 0; i < memberCount; i++)
+		{
+			String rsn = readString(in);
+			String rank = ranks[readVarInt(in)];
+			int joined = readVarInt(in);
+			String joinedDate = joined != 0 ? LocalDate.ofEpochDay(joined - 1).format(ClanRoster.JOINED_DATE_FORMAT)
+				: full ? readString(in) : "";
+			if (full)
+			{
+				String previousRsn = readString(in);
+				if (!previousRsn.isEmpty())
+				{
+					if (previousRsns == null)
+					{
+						previousRsns = new String[memberCount];
+					}
+					previousRsns[i] = previousRsn;
+				}
+				for (int column = 0; column < columnValues.length; column++)
+				{
+					columnValues[column] = readString(in);
+				}
+			}
+			clanMembers.add(rsn, rank, joinedDate, columnValues);
+		}
+		ClanRoster roster = clanMembers.build();
+		this.clanMemberMaps = previousRsns == null ? roster : roster.withPreviousRsns(previousRsns);
+
+		if (in.read() != -1)
+		{
+			throw new IOException("Trailing bytes after roster");
+		}
+	}
+
+	static int readByte(InputStream in) throws IOException
+	{
+		int b = in.read();
+		if (b == -1)
+		{
+			throw new EOFException();
+		}
+		return b;
+	}
+
+	static int readVarInt(InputStream in) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			int b = readByte(in);
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Varint too long");
+	}
+
+	static String readString(InputStream in) throws IOException
+	{
+		byte[] bytes = new byte[readVarInt(in)];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = (byte) readByte(in);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static long readVarLong(InputStream in) throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7)
+		{
+			int b = readByte(in);
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Varint too long");
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a roster in a compact binary form. All numbers are unsigned LEB128
+ * varints and all strings a varint byte length followed by UTF-8.
+ * <pre>
+ * version      byte, currently 1
+ * clanName     string
+ * rankCount    varint
+ * ranks        rankCount strings, the rank dictionary
+ * memberCount  varint
+ * members      memberCount of
+ *   rsn          string
+ *   rank         varint index into the rank dictionary
+ *   joinedDate   varint, days since 1970-01-01 plus one, or 0 if unknown
+ * </pre>
+ * Version 2 keeps everything a roster holds, so it reads back with the same
+ * {@link ClanRosterHash}. It is only used for the roster history, exports
+ * are still version 1.
+ * <pre>
+ * version      byte, 2
+ * clanName     string
+ * rankCount    varint
+ * ranks        rankCount strings, the rank dictionary
+ * columnCount  varint
+ * columns      columnCount strings, the labels of the other columns
+ * memberCount  varint
+ * members      memberCount of
+ *   rsn          string
+ *   rank         varint index into the rank dictionary
+ *   joinedDate   varint, days since 1970-01-01 plus one, or 0 followed by the
+ *                date as a string when it isn't in the usual format
+ *   previousRsn  string, empty if the member hasn't been seen changing name
+ *   columns      columnCount strings
+ * </pre>
+ */
+public final class ClanRosterBinaryEncoder
+{
+	public static final int VERSION = 1;
+	public static final int FULL_VERSION = 2;
+
+	private ClanRosterBinaryEncoder()
+	{
+	}
+
+	public static void encode(String clanName, List<ClanMemberMap> clanMemberMaps, OutputStream out) throws IOException
+	{
+		Map<String, Integer> ranks = new LinkedHashMap<>();
+		for (ClanMemberMap clanMember : clanMemberMaps)
+		{
+			ranks.putIfAbsent(clanMember.getRank(), ranks.size());
+		}
+
+		out.write(VERSION);
+		writeString(out, clanName);
+		writeVarInt(out, ranks.size());
+		for (String rank : ranks.keySet())
+		{
+			writeString(out, rank);
+		}
+
+		writeVarInt(out, clanMemberMaps.size());
+		for (ClanMemberMap clanMember : clanMemberMaps)
+		{
+			writeString(out, clanMember.getRSN());
+			writeVarInt(out, ranks.get(clanMember.getRank()));
+			writeVarInt(out, ClanRoster.parseJoinedDate(clanMember.getJoinedDate()) + 1);
+		}
+	}
+
+	/**
+	 * Writes a roster as version 2, with its other columns, previous names and joined dates as they were read
+	 */
+	public static void encodeFull(String clanName, List<ClanMemberMap> clanMemberMaps, OutputStream out) throws IOException
+	{
+		ClanRoster roster = ClanRoster.copyOf(clanMemberMaps);
+
+		out.write(FULL_VERSION);
+		writeString(out, clanName);
+		String[] ranks = roster.getRanks();
+		writeVarInt(out, ranks.length);
+		for (String rank : ranks)
+		{
+			writeString(out, rank);
+		}
+		String[] columnNames = roster.getColumnNames();
+		writeVarInt(out, columnNames.length);
+		for (String columnName : columnNames)
+		{
+			writeString(out, columnName);
+		}
+
+		writeVarInt(out, roster.size());
+		for (int i = 0; i < roster.size(); i++)
+		{
+			writeString(out, roster.getRSN(i));
+			writeVarInt(out, roster.getRankId(i));
+			int joined = roster.getJoinedEpochDay(i);
+			writeVarInt(out, joined + 1);
+			if (joined < 0)
+			{
+				writeString(out, roster.getJoinedDate(i));
+			}
+			writeString(out, roster.getPreviousRsn(i));
+			for (int column = 0; column < columnNames.length; column++)
+			{
+				writeString(out, roster.getColumn(i, column));
+			}
+		}
+	}
+
+	static void writeString(OutputStream out, String value) throws IOException
+	{
+		byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static void writeVarInt(OutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7f) != 0)
+		{
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static void writeVarLong(OutputStream out, long value) throws IOException
+	{
+		while ((value & ~0x7fL) != 0)
+		{
+			out.write((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.runelite.client.util.Text;
+
+/**
+ * The raw texts of a roster, as read on the client thread. Turning them into
+ * clan members, which strips tags and matches columns up by name, is left
+ * for {@link #toMembers()} off the client thread.
+ */
+public final class ClanRosterCapture
+{
+	private final String clanName;
+	private final String[] rsns;
+	private final String[] ranks;
+
+	/**
+	 * Joined dates as read from the members page, or null if no column showed them
+	 */
+	private final ClanMemberColumnCache.Column joinedColumn;
+
+	/**
+	 * Any other columns to export, holding null for those which weren't shown
+	 */
+	private final String[] columnNames;
+	private final ClanMemberColumnCache.Column[] columns;
+
+	private ClanRosterCapture(String clanName, String[] rsns, String[] ranks, ClanMemberColumnCache.Column joinedColumn,
+		String[] columnNames, ClanMemberColumnCache.Column[] columns)
+	{
+		this.clanName = clanName;
+		this.rsns = rsns;
+		this.ranks = ranks;
+		this.joinedColumn = joinedColumn;
+		this.columnNames = columnNames;
+		this.columns = columns;
+	}
+
+	/**
+	 * A capture where joined dates and any other columns were read separately to
+	 * the names and ranks, and are matched up by name
+	 *
+	 * @param joinedColumn the joined dates on the members page, or null if no column showed them
+	 * @param columnNames the labels of the other columns, in the order they are exported
+	 * @param columns     the columns with those labels, or null for any which haven't been shown
+	 */
+	static ClanRosterCapture withColumns(String clanName, String[] rsns, String[] ranks, ClanMemberColumnCache.Column joinedColumn,
+		String[] columnNames, ClanMemberColumnCache.Column[] columns)
+	{
+		return new ClanRosterCapture(clanName, rsns, ranks, joinedColumn, columnNames, columns);
+	}
+
+	/**
+	 * @return true if the capture doesn't have joined dates or one of the other columns
+	 */
+	public boolean isMissingColumns()
+	{
+		boolean missing = this.joinedColumn == null;
+		for (ClanMemberColumnCache.Column column : this.columns)
+		{
+			missing |= column == null;
+		}
+		return missing;
+	}
+
+	/**
+	 * @return this capture, or if it is missing joined dates or any other column a
+	 *         copy taking them from an earlier roster by name
+	 */
+	public ClanRosterCapture withJoinedDates(List<ClanMemberMap> earlier)
+	{
+		if (earlier == null || !isMissingColumns())
+		{
+			return this;
+		}
+
+		ClanMemberColumnCache.Column joined = this.joinedColumn;
+		ClanMemberColumnCache.Column[] earlierColumns = this.columns.clone();
+
+		String[] earlierRsns = new String[earlier.size()];
+		String[] earlierDates = new String[earlier.size()];
+		String[][] earlierValues = new String[earlierColumns.length][earlier.size()];
+		for (int i = 0; i < earlierRsns.length; i++)
+		{
+			ClanMemberMap clanMember = earlier.get(i);
+			earlierRsns[i] = clanMember.getRSN();
+			earlierDates[i] = clanMember.getJoinedDate();
+			for (int column = 0; column < earlierColumns.length; column++)
+			{
+				earlierValues[column][i] = clanMember.getColumns().get(this.columnNames[column]);
+			}
+		}
+
+		if (joined == null)
+		{
+			joined = new ClanMemberColumnCache.Column(ClanMembersWidget.JOINED_COLUMN_NAME, earlierRsns, earlierDates);
+		}
+		for (int column = 0; column < earlierColumns.length; column++)
+		{
+			if (earlierColumns[column] == null)
+			{
+				earlierColumns[column] = new ClanMemberColumnCache.Column(this.columnNames[column], earlierRsns, earlierValues[column]);
+			}
+		}
+		return new ClanRosterCapture(this.clanName, this.rsns, this.ranks, joined, this.columnNames, earlierColumns);
+	}
+
+	public String getClanName()
+	{
+		return clanName;
+	}
+
+	public int size()
+	{
+		return rsns.length;
+	}
+
+	/**
+	 * Builds the clan members. Doesn't touch the client, so can be called from any thread.
+	 */
+	public ClanRoster toMembers()
+	{
+		String[] joinedDates = byRow(this.joinedColumn);
+		String[][] columnValues = new String[this.columns.length][];
+		for (int column = 0; column < this.columns.length; column++)
+		{
+			columnValues[column] = byRow(this.columns[column]);
+		}
+
+		ClanRoster.Builder clanMembers = new ClanRoster.Builder(this.rsns.length).columns(this.columnNames);
+		String[] values = new String[this.columns.length];
+		for (int i = 0; i < this.rsns.length; i++)
+		{
+			for (int column = 0; column < values.length; column++)
+			{
+				values[column] = columnValues[column][i];
+			}
+			clanMembers.add(stripName(this.rsns[i]), stripTags(this.ranks[i]), joinedDates[i], values);
+		}
+		return clanMembers.build();
+	}
+
+	/**
+	 * Lines a column's cells up with this capture's rows, matching them by name
+	 * unless they were read beside the very same names
+	 *
+	 * @return the stripped cell for each row, empty for rows the column doesn't have
+	 */
+	private String[] byRow(ClanMemberColumnCache.Column column)
+	{
+		String[] cells = new String[this.rsns.length];
+		if (column == null)
+		{
+			Arrays.fill(cells, "");
+			return cells;
+		}
+
+		String[] values = column.getValues();
+		if (column.getRsns() == this.rsns)
+		{
+			for (int i = 0; i < cells.length; i++)
+			{
+				cells[i] = stripTags(values[i]);
+			}
+			return cells;
+		}
+
+		Map<String, String> valuesByRsn = new HashMap<>(values.length * 2);
+		String[] columnRsns = column.getRsns();
+		for (int i = 0; i < values.length; i++)
+		{
+			valuesByRsn.put(Text.toJagexName(stripName(columnRsns[i])), values[i]);
+		}
+		for (int i = 0; i < cells.length; i++)
+		{
+			cells[i] = stripTags(valuesByRsn.get(Text.toJagexName(stripName(this.rsns[i]))));
+		}
+		return cells;
+	}
+
+	/**
+	 * Strips tags and non-breaking spaces from a name, leaving it as the player wrote it
+	 * otherwise. Names are only run through {@link Text#toJagexName} for matching.
+	 */
+	static String stripName(String rsn)
+	{
+		return stripTags(rsn).replace('\u00A0', ' ');
+	}
+
+	/**
+	 * Strips tags from a cell, skipping the work when there are none
+	 */
+	static String stripTags(String text)
+	{
+		if (text == null)
+		{
+			return "";
+		}
+		return text.indexOf('<') < 0 ? text : Text.removeTags(text);
+	}
+}
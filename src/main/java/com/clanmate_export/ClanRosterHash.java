@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An order independent hash of a clan roster. Each row is hashed with 64 bit
+ * FNV-1a over the UTF-8 bytes of rsn, rank and joined date separated by a zero
+ * byte, and the row hashes are summed, so rows can be added in any order as
+ * they are read. Any other members page columns follow the joined date the same
+ * way, so rosters without them hash as they always have. Hiscore columns are
+ * left out, as they change whenever a member trains and say nothing about
+ * whether the roster itself has changed. The {@link #contentOf content hash}
+ * keeps them, for telling whether an export would come out the same.
+ */
+public class ClanRosterHash
+{
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private long sum;
+
+	/**
+	 * @return the hash of the given roster
+	 */
+	public static String of(Collection<ClanMemberMap> clanMembers)
+	{
+		if (clanMembers instanceof ClanRoster)
+		{
+			//Already hashed as it was built
+			return ((ClanRoster) clanMembers).getHash();
+		}
+
+		ClanRosterHash hash = new ClanRosterHash();
+		for (ClanMemberMap clanMember : clanMembers)
+		{
+			hash.add(clanMember);
+		}
+		return hash.value();
+	}
+
+	/**
+	 * @return the hash of the given roster with every column, hiscores included, which is
+	 *         the same as its {@link #of hash} unless it has hiscore columns
+	 */
+	public static String contentOf(Collection<ClanMemberMap> clanMembers)
+	{
+		if (clanMembers instanceof ClanRoster)
+		{
+			return ((ClanRoster) clanMembers).getContentHash();
+		}
+
+		ClanRosterHash hash = new ClanRosterHash();
+		for (ClanMemberMap clanMember : clanMembers)
+		{
+			hash.add(clanMember.getRSN(), clanMember.getRank(), clanMember.getJoinedDate(),
+				clanMember.getColumns().values().toArray(new String[0]));
+		}
+		return hash.value();
+	}
+
+	/**
+	 * Adds a row to the hash
+	 */
+	public void add(ClanMemberMap clanMember)
+	{
+		List<String> columnValues = new ArrayList<>(clanMember.getColumns().size());
+		for (Map.Entry<String, String> column : clanMember.getColumns().entrySet())
+		{
+			if (isHashed(column.getKey()))
+			{
+				columnValues.add(column.getValue());
+			}
+		}
+		add(clanMember.getRSN(), clanMember.getRank(), clanMember.getJoinedDate(), columnValues.toArray(new String[0]));
+	}
+
+	/**
+	 * @return true if a column's values go into the hash
+	 */
+	static boolean isHashed(String columnName)
+	{
+		return !ClanMateExportHiscores.isHiscoreColumn(columnName);
+	}
+
+	/**
+	 * Adds a row to the hash from its fields
+	 *
+	 * @param columnValues the values of the other columns which are {@link #isHashed}
+	 */
+	public void add(String rsn, String rank, String joinedDate, String... columnValues)
+	{
+		long h = FNV_OFFSET_BASIS;
+		//A zero byte between fields only needs the multiply
+		h = update(h, rsn) * FNV_PRIME;
+		h = update(h, rank) * FNV_PRIME;
+		h = update(h, joinedDate);
+		for (String columnValue : columnValues)
+		{
+			h = update(h * FNV_PRIME, columnValue);
+		}
+		this.sum += h;
+	}
+
+	/**
+	 * @return the hash as 16 hex digits
+	 */
+	public String value()
+	{
+		return String.format("%016x", this.sum);
+	}
+
+	/**
+	 * Feeds the UTF-8 bytes of a string into the hash without encoding it to a byte array
+	 */
+	private static long update(long h, String value)
+	{
+		if (value == null)
+		{
+			return h;
+		}
+
+		for (int i = 0; i < value.length(); i++)
+		{
+			int c = value.codePointAt(i);
+			if (Character.isSupplementaryCodePoint(c))
+			{
+				i++;
+			}
+
+			if (c < 0x80)
+			{
+				h = (h ^ c) * FNV_PRIME;
+			}
+			else if (c < 0x800)
+			{
+				h = (h ^ (0xc0 | (c >> 6))) * FNV_PRIME;
+				h = (h ^ (0x80 | (c & 0x3f))) * FNV_PRIME;
+			}
+			else if (c < 0x10000)
+			{
+				h = (h ^ (0xe0 | (c >> 12))) * FNV_PRIME;
+				h = (h ^ (0x80 | ((c >> 6) & 0x3f))) * FNV_PRIME;
+				h = (h ^ (0x80 | (c & 0x3f))) * FNV_PRIME;
+			}
+			else
+			{
+				h = (h ^ (0xf0 | (c >> 18))) * FNV_PRIME;
+				h = (h ^ (0x80 | ((c >> 12) & 0x3f))) * FNV_PRIME;
+				h = (h ^ (0x80 | ((c >> 6) & 0x3f))) * FNV_PRIME;
+				h = (h ^ (0x80 | (c & 0x3f))) * FNV_PRIME;
+			}
+		}
+		return h;
+	}
+}
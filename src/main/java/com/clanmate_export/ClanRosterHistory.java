@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps every roster exported for a clan in an append only log, so the roster
+ * as it was at any time can be read back. Each clan has a log of records
+ * <pre>
+ * magic      int, "CMRH"
+ * length     int, payload bytes
+ * timestamp  long, epoch millis, never going backwards
+ * hash       long, the {@link ClanRosterHash}
+ * payload    the whole roster, written by {@link ClanRosterBinaryEncoder#encodeFull}
+ * crc        int, CRC32 of timestamp, hash and payload
+ * </pre>
+ * and a sparse index of the timestamp and offset of every
+ * {@link #INDEX_INTERVAL}th record, so a lookup is a binary search of the index
+ * and a seek, then reading at most that many record headers. A record cut off
+ * by a crash fails its checksum and is truncated, with everything after it,
+ * when the log is opened.
+ */
+@Slf4j
+@Singleton
+public class ClanRosterHistory
+{
+	static final int INDEX_INTERVAL = 16;
+
+	private static final int MAGIC = 0x434d5248;
+	private static final int HEADER_BYTES = 4 + 4 + 8 + 8;
+	private static final int CRC_BYTES = 4;
+	private static final int INDEX_ENTRY_BYTES = 8 + 8;
+
+	/**
+	 * Larger records can only be a corrupt length
+	 */
+	private static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+
+	private final File historyDir;
+	private final Map<String, HistoryFile> files = new HashMap<>();
+
+	@Inject
+	ClanRosterHistory()
+	{
+		this(new File(ClanRosterSnapshotStore.EXPORT_DIR, "history"));
+	}
+
+	ClanRosterHistory(File historyDir)
+	{
+		this.historyDir = historyDir;
+	}
+
+	/**
+	 * Opens every log, truncating any record a crash left half written
+	 */
+	public synchronized void recover()
+	{
+		File[] logFiles = this.historyDir.listFiles((dir, name) -> name.endsWith(".log"));
+		if (logFiles == null)
+		{
+			return;
+		}
+
+		for (File file : logFiles)
+		{
+			String name = file.getName();
+			try
+			{
+				open(name.substring(0, name.length() - ".log".length()));
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to open roster history {}", file, e);
+			}
+		}
+	}
+
+	/**
+	 * Adds a roster to the clan's history, unless it is the same as the last one
+	 *
+	 * @return whether the roster was added
+	 */
+	public synchronized boolean append(String clanName, List<ClanMemberMap> clanMembers) throws IOException
+	{
+		HistoryFile file = open(key(clanName));
+		long hash = Long.parseUnsignedLong(ClanRosterHash.of(clanMembers), 16);
+		if (file.recordCount > 0 && hash == file.lastHash)
+		{
+			return false;
+		}
+
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(clanMembers.size() * 16 + 64);
+		ClanRosterBinaryEncoder.encodeFull(clanName, clanMembers, payload);
+		long timestamp = Math.max(System.currentTimeMillis(), file.lastTimestamp);
+
+		ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.size() + CRC_BYTES);
+		record.putInt(MAGIC).putInt(payload.size()).putLong(timestamp).putLong(hash);
+		record.put(payload.toByteArray());
+		record.putInt(crc(record.array(), payload.size()));
+		record.flip();
+
+		long offset = file.size;
+		writeFully(file.records, record, offset);
+		file.records.force(false);
+		file.appended(offset, timestamp, hash, record.capacity());
+		return true;
+	}
+
+	/**
+	 * @return the last roster added at or before the timestamp, or null if there isn't one
+	 */
+	public synchronized ClanRoster asOf(String clanName, long timestamp) throws IOException
+	{
+		String key = key(clanName);
+		if (!this.files.containsKey(key) && !new File(this.historyDir, key + ".log").exists())
+		{
+			return null;
+		}
+
+		HistoryFile file = open(key);
+		int index = file.floorIndex(timestamp);
+		if (index < 0)
+		{
+			return null;
+		}
+
+		//Walk the headers from the indexed record to the last one in time
+		long found = -1;
+		int foundLength = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		for (long offset = file.indexOffsets[index]; offset < file.size; )
+		{
+			header.clear();
+			readFully(file.records, header, offset);
+			int length = header.getInt(4);
+			if (header.getLong(8) > timestamp)
+			{
+				break;
+			}
+			found = offset;
+			foundLength = length;
+			offset += HEADER_BYTES + length + CRC_BYTES;
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + foundLength + CRC_BYTES);
+		readFully(file.records, record, found);
+		if (record.getInt(HEADER_BYTES + foundLength) != crc(record.array(), foundLength))
+		{
+			throw new IOException("Roster history record at " + found + " is corrupt");
+		}
+		return ClanRosterBinaryDecoder.decode(new ByteArrayInputStream(record.array(), HEADER_BYTES, foundLength)).getClanMembers();
+	}
+
+	/**
+	 * @return how many rosters the clan's history holds
+	 */
+	public synchronized int size(String clanName) throws IOException
+	{
+		String key = key(clanName);
+		if (!this.files.containsKey(key) && !new File(this.historyDir, key + ".log").exists())
+		{
+			return 0;
+		}
+		return open(key).recordCount;
+	}
+
+	public synchronized void close()
+	{
+		for (HistoryFile file : this.files.values())
+		{
+			try
+			{
+				file.records.close();
+				file.index.close();
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to close roster history", e);
+			}
+		}
+		this.files.clear();
+	}
+
+	private HistoryFile open(String key) throws IOException
+	{
+		HistoryFile file = this.files.get(key);
+		if (file == null)
+		{
+			Files.createDirectories(this.historyDir.toPath());
+			file = new HistoryFile(
+				FileChannel.open(new File(this.historyDir, key + ".log").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+				FileChannel.open(new File(this.historyDir, key + ".idx").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+			file.recover();
+			this.files.put(key, file);
+		}
+		return file;
+	}
+
+	private static String key(String clanName)
+	{
+		return Hashing.sha256().hashString(clanName, StandardCharsets.UTF_8).toString();
+	}
+
+	/**
+	 * @return the CRC32 of a record's timestamp, hash and payload
+	 */
+	private static int crc(byte[] record, int payloadLength)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(record, 8, HEADER_BYTES - 8 + payloadLength);
+		return (int) crc.getValue();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position);
+			if (read < 0)
+			{
+				throw new EOFException();
+			}
+			position += read;
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * One clan's log and its index, which is small enough to keep in memory
+	 */
+	private static class HistoryFile
+	{
+		private final FileChannel records;
+		private final FileChannel index;
+
+		private long[] indexTimestamps = new long[16];
+		private long[] indexOffsets = new long[16];
+		private int indexSize;
+
+		private long size;
+		private int recordCount;
+		private long lastTimestamp;
+		private long lastHash;
+
+		HistoryFile(FileChannel records, FileChannel index)
+		{
+			this.records = records;
+			this.index = index;
+		}
+
+		/**
+		 * Reads the index, then checks every record from the last indexed one,
+		 * truncating the log at the first which is cut off or corrupt and
+		 * indexing any records the index missed
+		 */
+		void recover() throws IOException
+		{
+			long logSize = this.records.size();
+			long indexBytes = this.index.size() / INDEX_ENTRY_BYTES * INDEX_ENTRY_BYTES;
+			ByteBuffer entries = ByteBuffer.allocate((int) indexBytes);
+			readFully(this.index, entries, 0);
+			while (entries.remaining() >= INDEX_ENTRY_BYTES)
+			{
+				long timestamp = entries.getLong();
+				long offset = entries.getLong();
+				if (offset >= logSize || (this.indexSize > 0 && offset <= this.indexOffsets[this.indexSize - 1]))
+				{
+					break;
+				}
+				addIndexEntry(timestamp, offset);
+			}
+
+			long end = scan(logSize);
+			while (this.indexSize > 0 && this.indexOffsets[this.indexSize - 1] >= end)
+			{
+				//The indexed record itself was cut off, so check the one before it
+				this.indexSize--;
+				end = scan(end);
+			}
+
+			if (end < logSize)
+			{
+				log.warn("Truncating roster history from {} to {} bytes", logSize, end);
+				this.records.truncate(end);
+				this.records.force(true);
+			}
+			this.size = end;
+			this.index.truncate((long) this.indexSize * INDEX_ENTRY_BYTES);
+		}
+
+		/**
+		 * Checks the records from the last indexed one, which is record number
+		 * (indexSize - 1) * INDEX_INTERVAL. The ones before it were checked
+		 * when the log was last opened.
+		 *
+		 * @return the offset after the last good record
+		 */
+		private long scan(long logSize) throws IOException
+		{
+			long offset = this.indexSize == 0 ? 0 : this.indexOffsets[this.indexSize - 1];
+			this.recordCount = Math.max(0, this.indexSize - 1) * INDEX_INTERVAL;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			while (offset + HEADER_BYTES + CRC_BYTES <= logSize)
+			{
+				header.clear();
+				readFully(this.records, header, offset);
+				int length = header.getInt(4);
+				if (header.getInt(0) != MAGIC || length < 0 || length > MAX_PAYLOAD_BYTES
+					|| offset + HEADER_BYTES + length + CRC_BYTES > logSize)
+				{
+					break;
+				}
+
+				ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length + CRC_BYTES);
+				readFully(this.records, record, offset);
+				if (record.getInt(HEADER_BYTES + length) != crc(record.array(), length))
+				{
+					break;
+				}
+
+				long timestamp = record.getLong(8);
+				if (this.recordCount % INDEX_INTERVAL == 0 && (this.indexSize == 0 || this.indexOffsets[this.indexSize - 1] < offset))
+				{
+					writeIndexEntry(timestamp, offset);
+				}
+				this.recordCount++;
+				this.lastTimestamp = timestamp;
+				this.lastHash = record.getLong(16);
+				offset += record.capacity();
+			}
+			return offset;
+		}
+
+		void appended(long offset, long timestamp, long hash, int recordBytes) throws IOException
+		{
+			if (this.recordCount % INDEX_INTERVAL == 0)
+			{
+				writeIndexEntry(timestamp, offset);
+			}
+			this.recordCount++;
+			this.size = offset + recordBytes;
+			this.lastTimestamp = timestamp;
+			this.lastHash = hash;
+		}
+
+		/**
+		 * @return the last index entry at or before the timestamp, or -1 if the first record is after it
+		 */
+		int floorIndex(long timestamp)
+		{
+			int found = Arrays.binarySearch(this.indexTimestamps, 0, this.indexSize, timestamp);
+			if (found < 0)
+			{
+				return -found - 2;
+			}
+
+			//Records can share a timestamp, the last of them is wanted
+			while (found + 1 < this.indexSize && this.indexTimestamps[found + 1] == timestamp)
+			{
+				found++;
+			}
+			return found;
+		}
+
+		private void writeIndexEntry(long timestamp, long offset) throws IOException
+		{
+			ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+			entry.putLong(timestamp).putLong(offset).flip();
+			writeFully(this.index, entry, (long) this.indexSize * INDEX_ENTRY_BYTES);
+			addIndexEntry(timestamp, offset);
+		}
+
+		private void addIndexEntry(long timestamp, long offset)
+		{
+			if (this.indexSize == this.indexTimestamps.length)
+			{
+				this.indexTimestamps = Arrays.copyOf(this.indexTimestamps, this.indexSize * 2);
+				this.indexOffsets = Arrays.copyOf(this.indexOffsets, this.indexSize * 2);
+			}
+			this.indexTimestamps[this.indexSize] = timestamp;
+			this.indexOffsets[this.indexSize] = offset;
+			this.indexSize++;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import net.runelite.http.api.RuneLiteAPI;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Request bodies which serialize the export straight into the request as it
+ * is sent, rather than building the payload up front
+ */
+public final class ClanRosterRequestBody
+{
+	public static final MediaType BINARY = MediaType.parse("application/x-clanmate-roster");
+	public static final MediaType CSV = MediaType.parse("text/csv; charset=utf-8");
+
+	private ClanRosterRequestBody()
+	{
+	}
+
+	/**
+	 * @return a body writing any export model as json
+	 */
+	public static RequestBody json(Object model)
+	{
+		return new RequestBody()
+		{
+			@Override
+			public MediaType contentType()
+			{
+				return RuneLiteAPI.JSON;
+			}
+
+			@Override
+			public void writeTo(BufferedSink sink) throws IOException
+			{
+				Writer writer = new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8);
+				ClanRosterWriter.writeJson(model, writer);
+				writer.flush();
+			}
+		};
+	}
+
+	/**
+	 * @return a body writing the roster as plain csv, whatever the clipboard's csv template, so servers always get the same layout
+	 */
+	public static RequestBody csv(List<ClanMemberMap> clanMemberMaps)
+	{
+		return new RequestBody()
+		{
+			@Override
+			public MediaType contentType()
+			{
+				return CSV;
+			}
+
+			@Override
+			public void writeTo(BufferedSink sink) throws IOException
+			{
+				Writer writer = new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8);
+				ClanRosterWriter.writeCsv(clanMemberMaps, false, writer);
+				writer.flush();
+			}
+		};
+	}
+
+	/**
+	 * @return a body writing the roster with {@link ClanRosterBinaryEncoder}
+	 */
+	public static RequestBody binary(String clanName, List<ClanMemberMap> clanMemberMaps)
+	{
+		return new RequestBody()
+		{
+			@Override
+			public MediaType contentType()
+			{
+				return BINARY;
+			}
+
+			@Override
+			public void writeTo(BufferedSink sink) throws IOException
+			{
+				ClanRosterBinaryEncoder.encode(clanName, clanMemberMaps, sink.outputStream());
+			}
+		};
+	}
+
+	/**
+	 * Gzips another body as it is written. The request needs a Content-Encoding: gzip header.
+	 */
+	public static RequestBody gzip(RequestBody body)
+	{
+		return new RequestBody()
+		{
+			@Override
+			public MediaType contentType()
+			{
+				return body.contentType();
+			}
+
+			@Override
+			public long contentLength()
+			{
+				return -1;
+			}
+
+			@Override
+			public void writeTo(BufferedSink sink) throws IOException
+			{
+				BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
+				body.writeTo(gzipSink);
+				gzipSink.close();
+			}
+		};
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+import net.runelite.http.api.RuneLiteAPI;
+
+/**
+ * Keeps the last roster successfully exported for each clan and url, and its
+ * hash, so later exports can send only what changed or be skipped entirely
+ */
+@Slf4j
+@Singleton
+public class ClanRosterSnapshotStore
+{
+	/**
+	 * Where the plugin keeps its files
+	 */
+	static final File EXPORT_DIR = new File(RuneLite.RUNELITE_DIR, "clanmate-export");
+
+	private static final Gson GSON = RuneLiteAPI.GSON;
+	private static final Type ROSTER_TYPE = new TypeToken<List<ClanMemberMap>>()
+	{
+	}.getType();
+
+	private final File snapshotDir;
+
+	@Inject
+	ClanRosterSnapshotStore()
+	{
+		this(new File(EXPORT_DIR, "snapshots"));
+	}
+
+	ClanRosterSnapshotStore(File snapshotDir)
+	{
+		this.snapshotDir = snapshotDir;
+	}
+
+	/**
+	 * @return the last roster exported for this clan and url, or null if there isn't one
+	 */
+	public List<ClanMemberMap> load(String clanName, String url)
+	{
+		File file = snapshotFile(clanName, url);
+		if (!file.exists())
+		{
+			return null;
+		}
+
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			List<ClanMemberMap> clanMembers = GSON.fromJson(reader, ROSTER_TYPE);
+			return clanMembers == null ? null : ClanRoster.copyOf(clanMembers);
+		}
+		catch (IOException | JsonParseException e)
+		{
+			log.warn("Unable to read roster snapshot {}", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the last roster exported for this clan to the first of the destinations
+	 *         which has accepted one, or null if none have
+	 */
+	public List<ClanMemberMap> loadFirst(String clanName, List<ClanMateExportDestination> destinations)
+	{
+		List<ClanMemberMap> clanMembers = null;
+		for (int i = 0; i < destinations.size() && clanMembers == null; i++)
+		{
+			clanMembers = load(clanName, destinations.get(i).getUrl());
+		}
+		return clanMembers;
+	}
+
+	/**
+	 * @return the {@link ClanRosterHash#contentOf content hash} of the last roster
+	 *         exported for this clan and url, or null if there isn't one
+	 */
+	public String loadContentHash(String clanName, String url)
+	{
+		File file = hashFile(clanName, url);
+		if (file.exists())
+		{
+			try
+			{
+				return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to read roster hash {}", file, e);
+			}
+		}
+
+		//Snapshots from before hashes were kept
+		List<ClanMemberMap> clanMembers = load(clanName, url);
+		return clanMembers == null ? null : ClanRosterHash.contentOf(clanMembers);
+	}
+
+	/**
+	 * Records a roster as successfully exported for this clan and url
+	 */
+	public void save(String clanName, String url, List<ClanMemberMap> clanMembers)
+	{
+		File file = snapshotFile(clanName, url);
+		File tmp = new File(this.snapshotDir, file.getName() + ".tmp");
+		File hashFile = hashFile(clanName, url);
+		File hashTmp = new File(this.snapshotDir, hashFile.getName() + ".tmp");
+		try
+		{
+			Files.createDirectories(this.snapshotDir.toPath());
+			try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8))
+			{
+				GSON.toJson(clanMembers, writer);
+			}
+			Files.write(hashTmp.toPath(), ClanRosterHash.contentOf(clanMembers).getBytes(StandardCharsets.UTF_8));
+			//The server has this roster, so its hash goes first
+			Files.move(hashTmp.toPath(), hashFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to write roster snapshot {}", file, e);
+		}
+	}
+
+	/**
+	 * @return a file name safe key for a clan and url
+	 */
+	static String key(String clanName, String url)
+	{
+		return Hashing.sha256().hashString(clanName + '\n' + url, StandardCharsets.UTF_8).toString();
+	}
+
+	private File snapshotFile(String clanName, String url)
+	{
+		return new File(this.snapshotDir, key(clanName, url) + ".json");
+	}
+
+	private File hashFile(String clanName, String url)
+	{
+		return new File(this.snapshotDir, key(clanName, url) + ".hash");
+	}
+}
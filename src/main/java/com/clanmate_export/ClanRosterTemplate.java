@@ -0,0 +1,486 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * How text exports are laid out. A template is the name of a preset, csv, tsv,
+ * markdown or discord, or the fields to write in order followed by options
+ * separated by |, such as {@code rsn,rank,joined,* | delimiter=; | header}.
+ * Fields are rsn, rank, joined, * for every other column, or another column
+ * by name. Templates are parsed once, when the config changes, and compiled
+ * into a {@link RowWriter} for the columns being exported, which leaves
+ * nothing to decide while writing rows.
+ */
+public final class ClanRosterTemplate
+{
+	private static final String RSN = "rsn";
+	private static final String RANK = "rank";
+	private static final String JOINED = "joined";
+	private static final String OTHER_COLUMNS = "*";
+
+	private static final List<String> ALL_FIELDS = Collections.unmodifiableList(Arrays.asList(RSN, RANK, JOINED, OTHER_COLUMNS));
+
+	/**
+	 * The csv exports have always been written as, names only rows keeping their trailing comma
+	 */
+	public static final ClanRosterTemplate CSV = new ClanRosterTemplate("csv", ALL_FIELDS, ",", Escape.CSV, false, "", "", ",");
+	public static final ClanRosterTemplate TSV = new ClanRosterTemplate("tsv", ALL_FIELDS, "\t", Escape.TSV, true, "", "", "");
+	public static final ClanRosterTemplate MARKDOWN = new ClanRosterTemplate("markdown", ALL_FIELDS, " | ", Escape.MARKDOWN, true, "| ", " |", " |");
+	public static final ClanRosterTemplate DISCORD = new ClanRosterTemplate("discord", ALL_FIELDS, " - ", Escape.DISCORD, false, "", "", "");
+
+	private static final ClanRosterTemplate[] PRESETS = {CSV, TSV, MARKDOWN, DISCORD};
+
+	enum Escape
+	{
+		/**
+		 * Written as they are
+		 */
+		NONE,
+		/**
+		 * Quoted when they hold the delimiter, a quote or a line break, quotes doubled
+		 */
+		CSV,
+		/**
+		 * Tabs and line breaks turned into spaces
+		 */
+		TSV,
+		/**
+		 * Pipes and backslashes escaped for a markdown table cell
+		 */
+		MARKDOWN,
+		/**
+		 * Discord's formatting characters escaped, so names with underscores aren't turned into italics
+		 */
+		DISCORD
+	}
+
+	private final String spec;
+	private final List<String> fields;
+	private final String delimiter;
+	private final Escape escape;
+	private final boolean header;
+	private final String prefix;
+	private final String suffix;
+	private final String namesOnlySuffix;
+
+	/**
+	 * The last compilation, reused while the columns stay the same
+	 */
+	private volatile RowWriter compiled;
+
+	private ClanRosterTemplate(String spec, List<String> fields, String delimiter, Escape escape, boolean header,
+		String prefix, String suffix, String namesOnlySuffix)
+	{
+		this.spec = spec;
+		this.fields = fields;
+		this.delimiter = delimiter;
+		this.escape = escape;
+		this.header = header;
+		this.prefix = prefix;
+		this.suffix = suffix;
+		this.namesOnlySuffix = namesOnlySuffix;
+	}
+
+	/**
+	 * @return the template for a line of config, csv if it is blank
+	 * @throws IllegalArgumentException if the template can't be read
+	 */
+	public static ClanRosterTemplate parse(String spec)
+	{
+		if (spec == null || spec.trim().isEmpty())
+		{
+			return CSV;
+		}
+
+		String[] parts = spec.split("\\|");
+		String first = parts[0].trim();
+		for (ClanRosterTemplate preset : PRESETS)
+		{
+			if (parts.length == 1 && preset.spec.equalsIgnoreCase(first))
+			{
+				return preset;
+			}
+		}
+
+		List<String> fields = new ArrayList<>();
+		for (String field : first.split(","))
+		{
+			field = field.trim();
+			if (field.isEmpty())
+			{
+				throw new IllegalArgumentException("Empty field in export template: " + spec);
+			}
+			String lower = field.toLowerCase(Locale.ROOT);
+			fields.add(ALL_FIELDS.contains(lower) ? lower : field);
+		}
+
+		String delimiter = ",";
+		Escape escape = Escape.CSV;
+		boolean header = false;
+		String prefix = "";
+		String suffix = "";
+		for (int i = 1; i < parts.length; i++)
+		{
+			String option = parts[i].trim();
+			String lower = option.toLowerCase(Locale.ROOT);
+			if (option.isEmpty())
+			{
+				continue;
+			}
+			else if (lower.equals("header"))
+			{
+				header = true;
+			}
+			else if (lower.startsWith("delimiter="))
+			{
+				delimiter = text(option.substring(10));
+			}
+			else if (lower.startsWith("prefix="))
+			{
+				prefix = text(option.substring(7));
+			}
+			else if (lower.startsWith("suffix="))
+			{
+				suffix = text(option.substring(7));
+			}
+			else if (lower.startsWith("escape="))
+			{
+				escape = Escape.valueOf(option.substring(7).trim().toUpperCase(Locale.ROOT));
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown export template option '" + option + "'");
+			}
+		}
+		return new ClanRosterTemplate(spec.trim(), Collections.unmodifiableList(fields), delimiter, escape, header, prefix, suffix, suffix);
+	}
+
+	/**
+	 * @return the text an option stands for, with names for what can't be typed into a template
+	 */
+	private static String text(String value)
+	{
+		switch (value.trim().toLowerCase(Locale.ROOT))
+		{
+			case "tab":
+				return "\t";
+			case "pipe":
+				return "|";
+			case "space":
+				return " ";
+			default:
+				return value.trim();
+		}
+	}
+
+	/**
+	 * @param columnNames   the other columns in the export, in order
+	 * @param userNamesOnly write only the names, whatever fields the template has
+	 * @return a row writer for this template and these columns
+	 */
+	public RowWriter compile(Collection<String> columnNames, boolean userNamesOnly)
+	{
+		RowWriter last = this.compiled;
+		if (last != null && last.compiledFor(columnNames, userNamesOnly))
+		{
+			return last;
+		}
+
+		List<String> names = new ArrayList<>();
+		List<Function<ClanMemberMap, String>> values = new ArrayList<>();
+		for (String field : userNamesOnly ? Collections.singletonList(RSN) : this.fields)
+		{
+			switch (field)
+			{
+				case RSN:
+					names.add("RSN");
+					values.add(member -> String.valueOf(member.getRSN()));
+					break;
+				case RANK:
+					names.add("Rank");
+					values.add(member -> String.valueOf(member.getRank()));
+					break;
+				case JOINED:
+					names.add("Joined");
+					values.add(member -> String.valueOf(member.getJoinedDate()));
+					break;
+				case OTHER_COLUMNS:
+					for (String columnName : columnNames)
+					{
+						names.add(columnName);
+						values.add(column(columnName));
+					}
+					break;
+				default:
+					names.add(field);
+					values.add(column(field));
+			}
+		}
+
+		Cell escaper = escaper(this.escape, this.delimiter);
+		MemberCell[] cells = new MemberCell[values.size()];
+		for (int i = 0; i < cells.length; i++)
+		{
+			Function<ClanMemberMap, String> value = values.get(i);
+			cells[i] = (member, out) -> escaper.append(value.apply(member), out);
+		}
+
+		String headerText = null;
+		if (this.header)
+		{
+			StringBuilder sb = new StringBuilder();
+			try
+			{
+				appendRow(sb, names, escaper);
+				if (this.escape == Escape.MARKDOWN)
+				{
+					sb.append('\n');
+					appendRow(sb, Collections.nCopies(names.size(), "---"), (text, out) -> out.append(text));
+				}
+			}
+			catch (IOException e)
+			{
+				//StringBuilder doesn't throw
+				throw new IllegalStateException(e);
+			}
+			headerText = sb.toString();
+		}
+
+		RowWriter rowWriter = new RowWriter(new ArrayList<>(columnNames), userNamesOnly, headerText, this.prefix,
+			this.delimiter, userNamesOnly ? this.namesOnlySuffix : this.suffix, cells);
+		this.compiled = rowWriter;
+		return rowWriter;
+	}
+
+	private void appendRow(StringBuilder sb, List<String> cells, Cell escaper) throws IOException
+	{
+		sb.append(this.prefix);
+		for (int i = 0; i < cells.size(); i++)
+		{
+			if (i > 0)
+			{
+				sb.append(this.delimiter);
+			}
+			escaper.append(cells.get(i), sb);
+		}
+		sb.append(this.suffix);
+	}
+
+	private static Function<ClanMemberMap, String> column(String columnName)
+	{
+		return member -> member.getColumns().getOrDefault(columnName, "");
+	}
+
+	private static Cell escaper(Escape escape, String delimiter)
+	{
+		switch (escape)
+		{
+			case CSV:
+				return (text, out) -> appendCsv(text, delimiter, out);
+			case TSV:
+				return (text, out) -> appendReplacing(text, "\t\r\n", "", out);
+			case MARKDOWN:
+				return (text, out) -> appendReplacing(text, "\r\n", "|\\", out);
+			case DISCORD:
+				return (text, out) -> appendReplacing(text, "\r\n", "\\*_~`|>", out);
+			default:
+				return (text, out) -> out.append(text);
+		}
+	}
+
+	/**
+	 * Appends text as a csv cell, quoted when it holds the delimiter, a quote or a line break
+	 */
+	static void appendCsv(String text, String delimiter, Appendable out) throws IOException
+	{
+		if ((delimiter.isEmpty() || text.indexOf(delimiter) < 0) && text.indexOf('"') < 0
+			&& text.indexOf('\n') < 0 && text.indexOf('\r') < 0)
+		{
+			out.append(text);
+			return;
+		}
+
+		out.append('"');
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '"')
+			{
+				out.append('"');
+			}
+			out.append(c);
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Appends text with the spaced characters turned into spaces, and the escaped characters behind a backslash
+	 */
+	private static void appendReplacing(String text, String spaced, String escaped, Appendable out) throws IOException
+	{
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (spaced.indexOf(c) >= 0)
+			{
+				out.append(' ');
+			}
+			else if (escaped.indexOf(c) >= 0)
+			{
+				out.append('\\').append(c);
+			}
+			else
+			{
+				out.append(c);
+			}
+		}
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof ClanRosterTemplate && this.spec.equals(((ClanRosterTemplate) o).spec);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hashCode(this.spec);
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.spec;
+	}
+
+	/**
+	 * A template compiled for the columns of an export
+	 */
+	public static final class RowWriter
+	{
+		private final List<String> columnNames;
+		private final boolean userNamesOnly;
+		private final String header;
+		private final String suffix;
+		private final MemberCell[] cells;
+
+		/**
+		 * What goes before each cell, the prefix then delimiters
+		 */
+		private final String[] separators;
+
+		private RowWriter(List<String> columnNames, boolean userNamesOnly, String header, String prefix, String delimiter,
+			String suffix, MemberCell[] cells)
+		{
+			this.columnNames = columnNames;
+			this.userNamesOnly = userNamesOnly;
+			this.header = header;
+			this.suffix = suffix;
+			this.cells = cells;
+			this.separators = new String[cells.length];
+			Arrays.fill(this.separators, delimiter);
+			if (cells.length > 0)
+			{
+				this.separators[0] = prefix;
+			}
+		}
+
+		private boolean compiledFor(Collection<String> columnNames, boolean userNamesOnly)
+		{
+			if (this.userNamesOnly != userNamesOnly || this.columnNames.size() != columnNames.size())
+			{
+				return false;
+			}
+
+			int i = 0;
+			for (String columnName : columnNames)
+			{
+				if (!this.columnNames.get(i++).equals(columnName))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Writes the header if there is one, then a row for each member, a line break between each
+		 */
+		public void write(List<ClanMemberMap> members, Appendable out) throws IOException
+		{
+			String lineBreak = "";
+			if (this.header != null)
+			{
+				out.append(this.header);
+				lineBreak = "\n";
+			}
+
+			for (ClanMemberMap member : members)
+			{
+				out.append(lineBreak);
+				writeRow(member, out);
+				lineBreak = "\n";
+			}
+		}
+
+		public void writeRow(ClanMemberMap member, Appendable out) throws IOException
+		{
+			for (int i = 0; i < this.cells.length; i++)
+			{
+				out.append(this.separators[i]);
+				this.cells[i].append(member, out);
+			}
+			out.append(this.suffix);
+		}
+	}
+
+	/**
+	 * Appends one escaped value
+	 */
+	private interface Cell
+	{
+		void append(String text, Appendable out) throws IOException;
+	}
+
+	/**
+	 * Writes a value of a member
+	 */
+	private interface MemberCell
+	{
+		void append(ClanMemberMap member, Appendable out) throws IOException;
+	}
+}
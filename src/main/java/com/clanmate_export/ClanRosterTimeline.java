@@ -0,0 +1,575 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A time series of each clan's roster, kept as the changes between successive
+ * exports rather than whole rosters. Names and ranks are stored once each in a
+ * dictionary shared by every snapshot, and each snapshot records only who
+ * joined, left or changed rank. Queries binary search the snapshot times and
+ * read only the changes in range, or a member's own changes, so they take time
+ * in proportion to the changes involved rather than the number of snapshots
+ * times the roster size.
+ * <p>
+ * Each clan has a file of records, each an int length, the payload and an int
+ * CRC32 of the payload. A payload is varints:
+ * <pre>
+ * timestamp    epoch millis, never going backwards
+ * names        count, then the names added to the dictionary as strings
+ * ranks        count, then the ranks added to the dictionary as strings
+ * joined       count, then name id and rank id
+ * left         count, then name ids
+ * rankChanged  count, then name id and rank id
+ * </pre>
+ * The first snapshot is where the timeline starts rather than a change, so
+ * its members are only reported in their own history. A record cut off by a
+ * crash is truncated when the file is opened.
+ */
+@Slf4j
+@Singleton
+public class ClanRosterTimeline
+{
+	private static final int CRC_BYTES = 4;
+
+	private final File timelineDir;
+	private final Map<String, Timeline> timelines = new HashMap<>();
+
+	@Inject
+	ClanRosterTimeline()
+	{
+		this(new File(ClanRosterSnapshotStore.EXPORT_DIR, "timeline"));
+	}
+
+	ClanRosterTimeline(File timelineDir)
+	{
+		this.timelineDir = timelineDir;
+	}
+
+	/**
+	 * Records a roster as the clan's latest snapshot, storing only what changed since the last one
+	 */
+	public void append(String clanName, List<ClanMemberMap> clanMembers) throws IOException
+	{
+		append(clanName, clanMembers, System.currentTimeMillis());
+	}
+
+	synchronized void append(String clanName, List<ClanMemberMap> clanMembers, long timestamp) throws IOException
+	{
+		Timeline timeline = open(clanName);
+		timestamp = Math.max(timestamp, timeline.lastTimestamp());
+
+		List<String> newNames = new ArrayList<>();
+		List<String> newRanks = new ArrayList<>();
+		Map<String, Integer> pendingNames = new HashMap<>();
+		Map<String, Integer> pendingRanks = new HashMap<>();
+		ByteArrayOutputStream joined = new ByteArrayOutputStream();
+		ByteArrayOutputStream rankChanged = new ByteArrayOutputStream();
+		int joinedCount = 0;
+		int rankChangedCount = 0;
+
+		Map<Integer, Integer> stillHere = new HashMap<>(timeline.members);
+		for (ClanMemberMap clanMember : clanMembers)
+		{
+			int nameId = id(clanMember.getRSN(), timeline.names, timeline.nameIds, newNames, pendingNames);
+			int rankId = id(clanMember.getRank(), timeline.ranks, timeline.rankIds, newRanks, pendingRanks);
+			Integer previousRank = stillHere.remove(nameId);
+			if (previousRank == null)
+			{
+				ClanRosterBinaryEncoder.writeVarInt(joined, nameId);
+				ClanRosterBinaryEncoder.writeVarInt(joined, rankId);
+				joinedCount++;
+			}
+			else if (previousRank != rankId)
+			{
+				ClanRosterBinaryEncoder.writeVarInt(rankChanged, nameId);
+				ClanRosterBinaryEncoder.writeVarInt(rankChanged, rankId);
+				rankChangedCount++;
+			}
+		}
+
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		ClanRosterBinaryEncoder.writeVarLong(payload, timestamp);
+		ClanRosterBinaryEncoder.writeVarInt(payload, newNames.size());
+		for (String name : newNames)
+		{
+			ClanRosterBinaryEncoder.writeString(payload, name);
+		}
+		ClanRosterBinaryEncoder.writeVarInt(payload, newRanks.size());
+		for (String rank : newRanks)
+		{
+			ClanRosterBinaryEncoder.writeString(payload, rank);
+		}
+		ClanRosterBinaryEncoder.writeVarInt(payload, joinedCount);
+		joined.writeTo(payload);
+		ClanRosterBinaryEncoder.writeVarInt(payload, stillHere.size());
+		for (int nameId : stillHere.keySet())
+		{
+			ClanRosterBinaryEncoder.writeVarInt(payload, nameId);
+		}
+		ClanRosterBinaryEncoder.writeVarInt(payload, rankChangedCount);
+		rankChanged.writeTo(payload);
+
+		byte[] bytes = payload.toByteArray();
+		ByteBuffer record = ByteBuffer.allocate(4 + bytes.length + CRC_BYTES);
+		record.putInt(bytes.length).put(bytes).putInt(crc(bytes, 0, bytes.length)).flip();
+		long offset = timeline.size;
+		while (record.hasRemaining())
+		{
+			offset += timeline.channel.write(record, offset);
+		}
+		timeline.channel.force(false);
+		timeline.size = offset;
+		timeline.apply(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * @return every change seen from one time to another, inclusive, in order
+	 */
+	public synchronized List<ClanMemberChange> changesBetween(String clanName, long from, long to) throws IOException
+	{
+		Timeline timeline = open(clanName);
+		List<ClanMemberChange> changes = new ArrayList<>();
+		int end = timeline.eventsUpTo(to);
+		for (int event = timeline.firstChangeFrom(from); event < end; event++)
+		{
+			changes.add(timeline.change(event));
+		}
+		return changes;
+	}
+
+	/**
+	 * @return the members first seen, or seen again after leaving, from one time to another
+	 */
+	public synchronized List<ClanMemberChange> joinedBetween(String clanName, long from, long to) throws IOException
+	{
+		return ofType(changesBetween(clanName, from, to), ClanMemberChange.Type.JOINED);
+	}
+
+	/**
+	 * @return the members who left from one time to another
+	 */
+	public synchronized List<ClanMemberChange> leftBetween(String clanName, long from, long to) throws IOException
+	{
+		return ofType(changesBetween(clanName, from, to), ClanMemberChange.Type.LEFT);
+	}
+
+	/**
+	 * @return a member's joins, leaves and rank changes, in order
+	 */
+	public synchronized List<ClanMemberChange> history(String clanName, String rsn) throws IOException
+	{
+		Timeline timeline = open(clanName);
+		List<ClanMemberChange> changes = new ArrayList<>();
+		Integer nameId = timeline.nameIds.get(rsn);
+		if (nameId != null)
+		{
+			for (int event : timeline.eventsByName.get(nameId).toArray())
+			{
+				changes.add(timeline.change(event));
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Works out who stayed among the members who joined from one time to
+	 * another. Joins too recent to know about yet are left out.
+	 *
+	 * @param days how long after joining a member has to still be in the clan
+	 * @return for each member who joined, their change leaving the clan if they
+	 *         left within the days, or otherwise their change joining
+	 */
+	public synchronized List<ClanMemberChange> retention(String clanName, long from, long to, int days) throws IOException
+	{
+		Timeline timeline = open(clanName);
+		long window = days * 86_400_000L;
+		List<ClanMemberChange> retention = new ArrayList<>();
+		int end = timeline.eventsUpTo(to);
+		for (int event = timeline.firstChangeFrom(from); event < end; event++)
+		{
+			if (timeline.eventTypes[event] != ClanMemberChange.Type.JOINED.ordinal())
+			{
+				continue;
+			}
+
+			long joinedAt = timeline.eventTime(event);
+			if (joinedAt + window > timeline.lastTimestamp())
+			{
+				continue;
+			}
+
+			//The member's next change after joining, if it is leaving within the window
+			ClanMemberChange outcome = timeline.change(event);
+			IntList memberEvents = timeline.eventsByName.get(timeline.eventNames[event]);
+			for (int i = memberEvents.indexOf(event) + 1; i < memberEvents.size; i++)
+			{
+				int next = memberEvents.values[i];
+				if (timeline.eventTime(next) > joinedAt + window)
+				{
+					break;
+				}
+				if (timeline.eventTypes[next] == ClanMemberChange.Type.LEFT.ordinal())
+				{
+					outcome = timeline.change(next);
+					break;
+				}
+			}
+			retention.add(outcome);
+		}
+		return retention;
+	}
+
+	/**
+	 * @return the share of a {@link #retention} result who stayed, from 0 to 1
+	 */
+	public static double retentionRate(List<ClanMemberChange> retention)
+	{
+		if (retention.isEmpty())
+		{
+			return 0;
+		}
+		return (double) ofType(retention, ClanMemberChange.Type.JOINED).size() / retention.size();
+	}
+
+	public synchronized void close()
+	{
+		for (Timeline timeline : this.timelines.values())
+		{
+			try
+			{
+				timeline.channel.close();
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to close roster timeline", e);
+			}
+		}
+		this.timelines.clear();
+	}
+
+	private Timeline open(String clanName) throws IOException
+	{
+		Timeline timeline = this.timelines.get(clanName);
+		if (timeline == null)
+		{
+			Files.createDirectories(this.timelineDir.toPath());
+			String key = Hashing.sha256().hashString(clanName, StandardCharsets.UTF_8).toString();
+			timeline = new Timeline(FileChannel.open(new File(this.timelineDir, key + ".timeline").toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+			timeline.load();
+			this.timelines.put(clanName, timeline);
+		}
+		return timeline;
+	}
+
+	/**
+	 * @return the id of a name or rank, adding it to the new entries if the dictionary doesn't have it yet
+	 */
+	private static int id(String value, List<String> dictionary, Map<String, Integer> ids, List<String> added, Map<String, Integer> addedIds)
+	{
+		Integer id = ids.get(value);
+		if (id == null)
+		{
+			id = addedIds.get(value);
+			if (id == null)
+			{
+				id = dictionary.size() + added.size();
+				added.add(value);
+				addedIds.put(value, id);
+			}
+		}
+		return id;
+	}
+
+	private static List<ClanMemberChange> ofType(List<ClanMemberChange> changes, ClanMemberChange.Type type)
+	{
+		List<ClanMemberChange> matching = new ArrayList<>();
+		for (ClanMemberChange change : changes)
+		{
+			if (change.getChange() == type)
+			{
+				matching.add(change);
+			}
+		}
+		return matching;
+	}
+
+	private static int crc(byte[] bytes, int offset, int length)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * A growable list of ints
+	 */
+	private static class IntList
+	{
+		private int[] values = new int[4];
+		private int size;
+
+		void add(int value)
+		{
+			if (size == values.length)
+			{
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int indexOf(int value)
+		{
+			//Values are added in order
+			return Arrays.binarySearch(values, 0, size, value);
+		}
+
+		int[] toArray()
+		{
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * One clan's timeline, with every change held in memory as parallel arrays in time order
+	 */
+	private static class Timeline
+	{
+		private final FileChannel channel;
+		private long size;
+
+		private final List<String> names = new ArrayList<>();
+		private final Map<String, Integer> nameIds = new HashMap<>();
+		private final List<String> ranks = new ArrayList<>();
+		private final Map<String, Integer> rankIds = new HashMap<>();
+
+		/**
+		 * Rank ids of the members in the latest snapshot, by name id
+		 */
+		private final Map<Integer, Integer> members = new HashMap<>();
+
+		private long[] snapshotTimes = new long[16];
+		/**
+		 * Index of each snapshot's first change
+		 */
+		private int[] snapshotEvents = new int[16];
+		private int snapshotCount;
+
+		private int[] eventTypes = new int[64];
+		private int[] eventNames = new int[64];
+		private int[] eventRanks = new int[64];
+		private int[] eventSnapshots = new int[64];
+		private int eventCount;
+
+		/**
+		 * Indexes of each member's changes, by name id
+		 */
+		private final Map<Integer, IntList> eventsByName = new HashMap<>();
+
+		Timeline(FileChannel channel)
+		{
+			this.channel = channel;
+		}
+
+		/**
+		 * Reads every record, truncating the file at the first which is cut off or corrupt
+		 */
+		void load() throws IOException
+		{
+			long fileSize = this.channel.size();
+			ByteBuffer file = ByteBuffer.allocate((int) fileSize);
+			while (file.hasRemaining())
+			{
+				if (this.channel.read(file, file.position()) < 0)
+				{
+					throw new EOFException();
+				}
+			}
+			byte[] bytes = file.array();
+
+			int offset = 0;
+			while (offset + 4 + CRC_BYTES <= bytes.length)
+			{
+				int length = file.getInt(offset);
+				if (length < 0 || offset + 4 + length + CRC_BYTES > bytes.length
+					|| file.getInt(offset + 4 + length) != crc(bytes, offset + 4, length))
+				{
+					break;
+				}
+				apply(new ByteArrayInputStream(bytes, offset + 4, length));
+				offset += 4 + length + CRC_BYTES;
+			}
+
+			if (offset < fileSize)
+			{
+				log.warn("Truncating roster timeline from {} to {} bytes", fileSize, offset);
+				this.channel.truncate(offset);
+				this.channel.force(true);
+			}
+			this.size = offset;
+		}
+
+		/**
+		 * Adds a snapshot's changes to the timeline
+		 */
+		void apply(ByteArrayInputStream in) throws IOException
+		{
+			long timestamp = ClanRosterBinaryDecoder.readVarLong(in);
+			if (this.snapshotCount == this.snapshotTimes.length)
+			{
+				this.snapshotTimes = Arrays.copyOf(this.snapshotTimes, this.snapshotCount * 2);
+				this.snapshotEvents = Arrays.copyOf(this.snapshotEvents, this.snapshotCount * 2);
+			}
+			this.snapshotTimes[this.snapshotCount] = timestamp;
+			this.snapshotEvents[this.snapshotCount] = this.eventCount;
+			this.snapshotCount++;
+
+			for (int i = ClanRosterBinaryDecoder.readVarInt(in); i > 0; i--)
+			{
+				String name = ClanRosterBinaryDecoder.readString(in);
+				this.nameIds.put(name, this.names.size());
+				this.names.add(name);
+			}
+			for (int i = ClanRosterBinaryDecoder.readVarInt(in); i > 0; i--)
+			{
+				String rank = ClanRosterBinaryDecoder.readString(in);
+				this.rankIds.put(rank, this.ranks.size());
+				this.ranks.add(rank);
+			}
+			for (int i = ClanRosterBinaryDecoder.readVarInt(in); i > 0; i--)
+			{
+				int nameId = ClanRosterBinaryDecoder.readVarInt(in);
+				int rankId = ClanRosterBinaryDecoder.readVarInt(in);
+				this.members.put(nameId, rankId);
+				addEvent(ClanMemberChange.Type.JOINED, nameId, rankId);
+			}
+			for (int i = ClanRosterBinaryDecoder.readVarInt(in); i > 0; i--)
+			{
+				int nameId = ClanRosterBinaryDecoder.readVarInt(in);
+				this.members.remove(nameId);
+				addEvent(ClanMemberChange.Type.LEFT, nameId, -1);
+			}
+			for (int i = ClanRosterBinaryDecoder.readVarInt(in); i > 0; i--)
+			{
+				int nameId = ClanRosterBinaryDecoder.readVarInt(in);
+				int rankId = ClanRosterBinaryDecoder.readVarInt(in);
+				this.members.put(nameId, rankId);
+				addEvent(ClanMemberChange.Type.RANK_CHANGED, nameId, rankId);
+			}
+		}
+
+		long lastTimestamp()
+		{
+			return this.snapshotCount == 0 ? 0 : this.snapshotTimes[this.snapshotCount - 1];
+		}
+
+		/**
+		 * @return the index after the last change seen at or before a time
+		 */
+		int eventsUpTo(long timestamp)
+		{
+			int snapshot = Arrays.binarySearch(this.snapshotTimes, 0, this.snapshotCount, timestamp);
+			if (snapshot < 0)
+			{
+				snapshot = -snapshot - 1;
+			}
+			else
+			{
+				//Snapshots can share a time, take all of them
+				while (snapshot < this.snapshotCount && this.snapshotTimes[snapshot] == timestamp)
+				{
+					snapshot++;
+				}
+			}
+			return snapshot == this.snapshotCount ? this.eventCount : this.snapshotEvents[snapshot];
+		}
+
+		/**
+		 * @return the index of the first change seen at or after a time, skipping the first snapshot
+		 */
+		int firstChangeFrom(long timestamp)
+		{
+			int first = this.snapshotCount > 1 ? this.snapshotEvents[1] : this.eventCount;
+			return Math.max(first, timestamp == Long.MIN_VALUE ? 0 : eventsUpTo(timestamp - 1));
+		}
+
+		long eventTime(int event)
+		{
+			return this.snapshotTimes[this.eventSnapshots[event]];
+		}
+
+		ClanMemberChange change(int event)
+		{
+			long timestamp = eventTime(event);
+			int rankId = this.eventRanks[event];
+			return new ClanMemberChange(this.names.get(this.eventNames[event]), ClanMemberChange.Type.values()[this.eventTypes[event]],
+				rankId < 0 ? "" : this.ranks.get(rankId),
+				Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate().format(ClanRoster.JOINED_DATE_FORMAT),
+				timestamp);
+		}
+
+		private void addEvent(ClanMemberChange.Type type, int nameId, int rankId)
+		{
+			if (this.eventCount == this.eventTypes.length)
+			{
+				int capacity = this.eventCount * 2;
+				this.eventTypes = Arrays.copyOf(this.eventTypes, capacity);
+				this.eventNames = Arrays.copyOf(this.eventNames, capacity);
+				this.eventRanks = Arrays.copyOf(this.eventRanks, capacity);
+				this.eventSnapshots = Arrays.copyOf(this.eventSnapshots, capacity);
+			}
+			this.eventTypes[this.eventCount] = type.ordinal();
+			this.eventNames[this.eventCount] = nameId;
+			this.eventRanks[this.eventCount] = rankId;
+			this.eventSnapshots[this.eventCount] = this.snapshotCount - 1;
+			this.eventsByName.computeIfAbsent(nameId, id -> new IntList()).add(this.eventCount);
+			this.eventCount++;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Objects;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Clipboard contents which hold on to the compact roster and only write it
+ * out when something is pasted, in whichever flavor is asked for. Each flavor
+ * is written at most once. Plain text is the export format set in the config,
+ * csv laid out by the export template, and the roster can also be pasted as
+ * plain csv or as an html table.
+ */
+@Slf4j
+public class ClanRosterTransferable implements Transferable, ClipboardOwner
+{
+	static final DataFlavor CSV_FLAVOR = new DataFlavor("text/csv;class=java.lang.String", "CSV");
+
+	private static final DataFlavor[] FLAVORS = {DataFlavor.stringFlavor, CSV_FLAVOR, DataFlavor.allHtmlFlavor};
+
+	private final String clanName;
+	private final ClanRoster clanMembers;
+	private final ClanMateExportDataFormat format;
+	private final ClanRosterTemplate template;
+	private final boolean userNamesOnly;
+	private final ClanMateExportMetrics metrics;
+
+	/**
+	 * What has been written so far, in the same order as FLAVORS
+	 */
+	private final String[] written = new String[FLAVORS.length];
+	private volatile boolean owner = true;
+
+	ClanRosterTransferable(String clanName, ClanRoster clanMembers, ClanMateExportDataFormat format, boolean userNamesOnly,
+		ClanMateExportMetrics metrics)
+	{
+		this(clanName, clanMembers, format, ClanRosterTemplate.CSV, userNamesOnly, metrics);
+	}
+
+	ClanRosterTransferable(String clanName, ClanRoster clanMembers, ClanMateExportDataFormat format, ClanRosterTemplate template,
+		boolean userNamesOnly, ClanMateExportMetrics metrics)
+	{
+		this.clanName = clanName;
+		this.clanMembers = clanMembers;
+		this.format = format;
+		this.template = template;
+		this.userNamesOnly = userNamesOnly;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return true if other is still on the clipboard and would paste exactly the same as this
+	 */
+	public boolean sameAs(ClanRosterTransferable other)
+	{
+		return other != null && other.owner
+			&& Objects.equals(this.clanName, other.clanName)
+			&& this.clanMembers.getContentHash().equals(other.clanMembers.getContentHash())
+			&& this.format == other.format
+			&& this.template.equals(other.template)
+			&& this.userNamesOnly == other.userNamesOnly;
+	}
+
+	@Override
+	public DataFlavor[] getTransferDataFlavors()
+	{
+		return FLAVORS.clone();
+	}
+
+	@Override
+	public boolean isDataFlavorSupported(DataFlavor flavor)
+	{
+		return indexOf(flavor) >= 0;
+	}
+
+	@Override
+	public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException
+	{
+		int index = indexOf(flavor);
+		if (index < 0)
+		{
+			throw new UnsupportedFlavorException(flavor);
+		}
+
+		synchronized (this.written)
+		{
+			if (this.written[index] == null)
+			{
+				this.written[index] = write(FLAVORS[index]);
+			}
+			return this.written[index];
+		}
+	}
+
+	@Override
+	public void lostOwnership(Clipboard clipboard, Transferable contents)
+	{
+		this.owner = false;
+	}
+
+	private String write(DataFlavor flavor) throws IOException
+	{
+		long start = System.nanoTime();
+		StringWriter out = new StringWriter();
+		if (flavor == CSV_FLAVOR)
+		{
+			ClanRosterWriter.writeCsv(this.clanMembers, this.userNamesOnly, out);
+		}
+		else if (flavor == DataFlavor.allHtmlFlavor)
+		{
+			ClanRosterWriter.writeHtml(this.clanMembers, this.userNamesOnly, out);
+		}
+		else
+		{
+			ClanRosterWriter.write(this.format, this.template, this.clanName, this.clanMembers, this.userNamesOnly, out);
+		}
+
+		if (this.metrics != null)
+		{
+			this.metrics.recordStage(ClanMateExportMetrics.Stage.SERIALIZE, start);
+			this.metrics.recordPayloadBytes(out.getBuffer().length());
+		}
+		log.debug("Wrote {} clan members for a paste as {}", this.clanMembers.size(), flavor.getHumanPresentableName());
+		return out.toString();
+	}
+
+	private static int indexOf(DataFlavor flavor)
+	{
+		for (int i = 0; i < FLAVORS.length; i++)
+		{
+			if (FLAVORS[i].equals(flavor))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
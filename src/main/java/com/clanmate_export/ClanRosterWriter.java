@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import net.runelite.http.api.RuneLiteAPI;
+
+/**
+ * Writes clan rosters out row by row, so the full export never has to be held as one String
+ */
+public final class ClanRosterWriter
+{
+	private static final Gson GSON = RuneLiteAPI.GSON;
+
+	private ClanRosterWriter()
+	{
+	}
+
+	/**
+	 * Writes the clan members in the given format, csv as it has always been written
+	 *
+	 * @param format        the format to write
+	 * @param clanName      the name of the clan, binary only
+	 * @param clanMemberMaps Clan members info
+	 * @param userNamesOnly only write the names, csv only
+	 * @param out           where to write to
+	 */
+	public static void write(ClanMateExportDataFormat format, String clanName, List<ClanMemberMap> clanMemberMaps, boolean userNamesOnly, Appendable out) throws IOException
+	{
+		write(format, ClanRosterTemplate.CSV, clanName, clanMemberMaps, userNamesOnly, out);
+	}
+
+	/**
+	 * Writes the clan members in the given format
+	 *
+	 * @param template      how to lay out csv
+	 * @see #write(ClanMateExportDataFormat, String, List, boolean, Appendable)
+	 */
+	public static void write(ClanMateExportDataFormat format, ClanRosterTemplate template, String clanName, List<ClanMemberMap> clanMemberMaps,
+		boolean userNamesOnly, Appendable out) throws IOException
+	{
+		switch (format)
+		{
+			case JSON:
+				writeJson(clanMemberMaps, out);
+				break;
+			case CSV:
+				writeTemplate(template, clanMemberMaps, userNamesOnly, out);
+				break;
+			case BINARY:
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ClanRosterBinaryEncoder.encode(clanName, clanMemberMaps, bytes);
+				out.append(Base64.getEncoder().encodeToString(bytes.toByteArray()));
+				break;
+		}
+	}
+
+	/**
+	 * Writes a csv row for each clan member, any other columns following the joined date
+	 *
+	 * @param clanMemberMaps Clan members info
+	 * @param userNamesOnly leave out rank and joined date
+	 * @param out           where to write to
+	 */
+	public static void writeCsv(List<ClanMemberMap> clanMemberMaps, boolean userNamesOnly, Appendable out) throws IOException
+	{
+		writeTemplate(ClanRosterTemplate.CSV, clanMemberMaps, userNamesOnly, out);
+	}
+
+	/**
+	 * Writes the clan members laid out by a template
+	 *
+	 * @param userNamesOnly write only the names, whatever fields the template has
+	 */
+	public static void writeTemplate(ClanRosterTemplate template, List<ClanMemberMap> clanMemberMaps, boolean userNamesOnly, Appendable out) throws IOException
+	{
+		Collection<String> columnNames = clanMemberMaps.isEmpty()
+			? Collections.emptyList()
+			: clanMemberMaps.get(0).getColumns().keySet();
+		template.compile(columnNames, userNamesOnly).write(clanMemberMaps, out);
+	}
+
+	/**
+	 * Writes the clan members as an html table, for pasting into documents and spreadsheets
+	 *
+	 * @param userNamesOnly leave out rank, joined date and any other columns
+	 */
+	public static void writeHtml(List<ClanMemberMap> clanMemberMaps, boolean userNamesOnly, Appendable out) throws IOException
+	{
+		out.append("<table>\n<tr><th>RSN</th>");
+		if (!userNamesOnly)
+		{
+			out.append("<th>Rank</th><th>Joined</th>");
+			if (!clanMemberMaps.isEmpty())
+			{
+				for (String columnName : clanMemberMaps.get(0).getColumns().keySet())
+				{
+					appendCell("th", columnName, out);
+				}
+			}
+		}
+		out.append("</tr>\n");
+
+		for (ClanMemberMap clanMember : clanMemberMaps)
+		{
+			out.append("<tr>");
+			appendCell("td", clanMember.getRSN(), out);
+			if (!userNamesOnly)
+			{
+				appendCell("td", clanMember.getRank(), out);
+				appendCell("td", clanMember.getJoinedDate(), out);
+				for (String columnValue : clanMember.getColumns().values())
+				{
+					appendCell("td", columnValue, out);
+				}
+			}
+			out.append("</tr>\n");
+		}
+		out.append("</table>");
+	}
+
+	private static void appendCell(String tag, String text, Appendable out) throws IOException
+	{
+		out.append('<').append(tag).append('>');
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			switch (c)
+			{
+				case '&':
+					out.append("&amp;");
+					break;
+				case '<':
+					out.append("&lt;");
+					break;
+				case '>':
+					out.append("&gt;");
+					break;
+				case '"':
+					out.append("&quot;");
+					break;
+				default:
+					out.append(c);
+			}
+		}
+		out.append("</").append(tag).append('>');
+	}
+
+	/**
+	 * Writes roster changes in the given format, one csv row of rsn, change, rank
+	 * and date each, escaped as the csv template escapes them. There is no binary
+	 * form of changes, so they are written as json.
+	 */
+	public static void writeChanges(ClanMateExportDataFormat format, List<ClanMemberChange> changes, Appendable out) throws IOException
+	{
+		if (format != ClanMateExportDataFormat.CSV)
+		{
+			writeJson(changes, out);
+			return;
+		}
+
+		boolean first = true;
+		for (ClanMemberChange change : changes)
+		{
+			if (!first)
+			{
+				out.append('\n');
+			}
+			first = false;
+
+			appendCsv(change.getRSN(), out);
+			out.append(',').append(change.getChange().name()).append(',');
+			appendCsv(change.getRank(), out);
+			out.append(',');
+			appendCsv(change.getDate(), out);
+		}
+	}
+
+	private static void appendCsv(String text, Appendable out) throws IOException
+	{
+		ClanRosterTemplate.appendCsv(text == null ? "" : text, ",", out);
+	}
+
+	/**
+	 * Writes any export model as json. Gson writes lists an element at a time,
+	 * so rows go straight to out.
+	 */
+	public static void writeJson(Object model, Appendable out)
+	{
+		GSON.toJson(model, out);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import net.runelite.api.Client;
+import net.runelite.api.clan.ClanMember;
+import net.runelite.api.clan.ClanSettings;
+import net.runelite.api.clan.ClanTitle;
+
+/**
+ * Reads names and ranks straight from the clan settings, only going to the
+ * members page for the joined date and any other columns, which it takes
+ * from the {@link ClanMemberColumnCache} in whichever drop down they were shown.
+ */
+@Singleton
+public class ClanSettingsRosterSource implements ClanRosterSource
+{
+	private final Client client;
+	private final ClanMateExportConfig config;
+	private final ClanMemberColumnCache columnCache;
+
+	@Inject
+	ClanSettingsRosterSource(Client client, ClanMateExportConfig config, ClanMemberColumnCache columnCache)
+	{
+		this.client = client;
+		this.config = config;
+		this.columnCache = columnCache;
+	}
+
+	@Override
+	public ClanRosterCapture capture()
+	{
+		return capture(true);
+	}
+
+	/**
+	 * Reads the roster whether or not the members page is open. Columns which
+	 * haven't been shown are left empty, see {@link ClanRosterCapture#withJoinedDates}.
+	 */
+	public ClanRosterCapture captureWithoutPage()
+	{
+		return capture(false);
+	}
+
+	/**
+	 * @return the columns still to be shown on the members page before this source can export
+	 */
+	public List<String> missingColumns()
+	{
+		if (this.config.getExportUserNamesOnly())
+		{
+			return new ArrayList<>();
+		}
+
+		List<String> required = new ArrayList<>();
+		required.add(ClanMembersWidget.JOINED_COLUMN_NAME);
+		required.addAll(Arrays.asList(ClanMemberColumnCache.otherColumns(this.config)));
+		return this.columnCache.missing(required);
+	}
+
+	private ClanRosterCapture capture(boolean needsPage)
+	{
+		ClanSettings clanSettings = this.client.getClanSettings();
+		if (clanSettings == null)
+		{
+			return null;
+		}
+
+		this.columnCache.refresh(this.client);
+		if (needsPage && !missingColumns().isEmpty())
+		{
+			return null;
+		}
+
+		//There are only a handful of ranks so look each title up once
+		List<ClanMember> members = clanSettings.getMembers();
+		Map<Integer, String> rankTitles = new HashMap<>();
+		String[] rsns = new String[members.size()];
+		String[] ranks = new String[members.size()];
+		for (int i = 0; i < rsns.length; i++)
+		{
+			ClanMember member = members.get(i);
+			int rankId = member.getRank().getRank();
+			String rank = rankTitles.get(rankId);
+			if (rank == null)
+			{
+				ClanTitle title = clanSettings.titleForRank(member.getRank());
+				rank = title == null ? Integer.toString(rankId) : title.getName();
+				rankTitles.put(rankId, rank);
+			}
+
+			rsns[i] = member.getName();
+			ranks[i] = rank;
+		}
+
+		String[] columnNames = ClanMemberColumnCache.otherColumns(this.config);
+		return ClanRosterCapture.withColumns(clanSettings.getName(), rsns, ranks,
+			this.columnCache.get(ClanMembersWidget.JOINED_COLUMN_NAME), columnNames, this.columnCache.get(columnNames));
+	}
+}
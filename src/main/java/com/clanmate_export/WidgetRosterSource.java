@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import net.runelite.api.Client;
+import net.runelite.api.clan.ClanSettings;
+
+/**
+ * Fallback source which takes every column from the members page. Columns
+ * are read into the {@link ClanMemberColumnCache} as they are shown, so
+ * 'Rank', 'Joined' and any other columns exported can be picked in either
+ * drop down, one after another.
+ */
+@Singleton
+public class WidgetRosterSource implements ClanRosterSource
+{
+	private final Client client;
+	private final ClanMateExportConfig config;
+	private final ClanMemberColumnCache columnCache;
+	private final ClanMateExportChatMenuManager clanMateExportChatMenuManager;
+
+	@Inject
+	WidgetRosterSource(Client client, ClanMateExportConfig config, ClanMemberColumnCache columnCache,
+		ClanMateExportChatMenuManager clanMateExportChatMenuManager)
+	{
+		this.client = client;
+		this.config = config;
+		this.columnCache = columnCache;
+		this.clanMateExportChatMenuManager = clanMateExportChatMenuManager;
+	}
+
+	@Override
+	public ClanRosterCapture capture()
+	{
+		if (this.client.getWidget(ClanMembersWidget.RSN_COLUMN) == null)
+		{
+			return null;
+		}
+
+		this.columnCache.refresh(this.client);
+		List<String> missing = missingColumns();
+		if (!missing.isEmpty())
+		{
+			clanMateExportChatMenuManager.showMissingColumns(missing);
+			return null;
+		}
+
+		//Names and ranks are read together, the other columns are matched up by name unless shown beside them
+		ClanMemberColumnCache.Column rankColumn = this.columnCache.get(ClanMembersWidget.RANK_COLUMN_NAME);
+		String[] columnNames = ClanMemberColumnCache.otherColumns(this.config);
+		ClanSettings clanSettings = this.client.getClanSettings();
+		return ClanRosterCapture.withColumns(clanSettings != null ? clanSettings.getName() : "",
+			rankColumn.getRsns(), rankColumn.getValues(), this.columnCache.get(ClanMembersWidget.JOINED_COLUMN_NAME),
+			columnNames, this.columnCache.get(columnNames));
+	}
+
+	/**
+	 * @return the columns still to be shown on the members page before an export can be made
+	 */
+	public List<String> missingColumns()
+	{
+		List<String> required = new ArrayList<>();
+		required.add(ClanMembersWidget.RANK_COLUMN_NAME);
+		required.add(ClanMembersWidget.JOINED_COLUMN_NAME);
+		required.addAll(Arrays.asList(ClanMemberColumnCache.otherColumns(this.config)));
+		return this.columnCache.missing(required);
+	}
+}
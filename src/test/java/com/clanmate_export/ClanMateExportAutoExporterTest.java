@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class ClanMateExportAutoExporterTest
+{
+	private static final long QUIET = 60;
+	private static final long MIN_INTERVAL = 900;
+
+	@Test
+	public void testExportsOnceQuiet()
+	{
+		assertEquals(1060, ClanMateExportAutoExporter.exportAt(1000, 1000, 0, QUIET, MIN_INTERVAL));
+		//Each change in a burst pushes the export back
+		assertEquals(1090, ClanMateExportAutoExporter.exportAt(1030, 1000, 0, QUIET, MIN_INTERVAL));
+	}
+
+	@Test
+	public void testLongBurstIsStillExported()
+	{
+		assertEquals(1300, ClanMateExportAutoExporter.exportAt(1280, 1000, 0, QUIET, MIN_INTERVAL));
+	}
+
+	@Test
+	public void testExportsKeptApart()
+	{
+		assertEquals(1900, ClanMateExportAutoExporter.exportAt(1010, 1010, 1000, QUIET, MIN_INTERVAL));
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ClanMateExportDeltaModelTest
+{
+	private static final List<ClanMemberMap> BEFORE = Arrays.asList(
+		new ClanMemberMap("Alice", "Recruit", "01-Jan-2021", Collections.singletonMap(ClanMateExportHiscores.TOTAL_XP_COLUMN, "1000")),
+		new ClanMemberMap("Bob", "Recruit", "02-Jan-2021", Collections.singletonMap(ClanMateExportHiscores.TOTAL_XP_COLUMN, "2000")));
+
+	@Test
+	public void testXpGainIsNotARankChange()
+	{
+		List<ClanMemberMap> after = Arrays.asList(
+			new ClanMemberMap("Alice", "Recruit", "01-Jan-2021", Collections.singletonMap(ClanMateExportHiscores.TOTAL_XP_COLUMN, "1500")),
+			new ClanMemberMap("Bob", "Recruit", "02-Jan-2021", Collections.singletonMap(ClanMateExportHiscores.TOTAL_XP_COLUMN, "2000")));
+
+		ClanMateExportDeltaModel delta = ClanMateExportDeltaModel.between("Some Clan", BEFORE, after);
+
+		assertTrue(delta.isEmpty());
+		assertEquals(ClanRosterHash.of(BEFORE), delta.getHash());
+	}
+
+	@Test
+	public void testPromotionWithXpGainIsARankChange()
+	{
+		List<ClanMemberMap> after = Arrays.asList(
+			new ClanMemberMap("Alice", "Corporal", "01-Jan-2021", Collections.singletonMap(ClanMateExportHiscores.TOTAL_XP_COLUMN, "1500")),
+			new ClanMemberMap("Bob", "Recruit", "02-Jan-2021", Collections.singletonMap(ClanMateExportHiscores.TOTAL_XP_COLUMN, "2000")));
+
+		ClanMateExportDeltaModel delta = ClanMateExportDeltaModel.between("Some Clan", BEFORE, after);
+
+		assertEquals(Collections.singletonList(after.get(0)), delta.getRankChanges());
+		assertTrue(delta.getJoined().isEmpty());
+		assertTrue(delta.getLeft().isEmpty());
+	}
+
+	@Test
+	public void testJoinedAndLeft()
+	{
+		List<ClanMemberMap> after = Arrays.asList(
+			BEFORE.get(0),
+			new ClanMemberMap("Carol", "Recruit", "03-Jan-2021"));
+
+		ClanMateExportDeltaModel delta = ClanMateExportDeltaModel.between("Some Clan", BEFORE, after);
+
+		assertEquals(Collections.singletonList(after.get(1)), delta.getJoined());
+		assertEquals(Collections.singletonList("Bob"), delta.getLeft());
+		assertTrue(delta.getRankChanges().isEmpty());
+		assertEquals(ClanRosterHash.of(after), delta.getHash());
+	}
+
+	@Test
+	public void testJoinedDateChangeIsAnUpdate()
+	{
+		List<ClanMemberMap> after = Arrays.asList(
+			new ClanMemberMap("Alice", "Recruit", "", BEFORE.get(0).getColumns()),
+			BEFORE.get(1));
+
+		ClanMateExportDeltaModel delta = ClanMateExportDeltaModel.between("Some Clan", BEFORE, after);
+
+		assertTrue(delta.getJoined().isEmpty());
+		assertTrue(delta.getLeft().isEmpty());
+		assertEquals(Collections.singletonList(after.get(0)), delta.getRankChanges());
+	}
+
+	@Test
+	public void testColumnChangeIsAnUpdate()
+	{
+		List<ClanMemberMap> before = Collections.singletonList(
+			new ClanMemberMap("Alice", "Recruit", "01-Jan-2021", Collections.singletonMap("Clan title", "Recruit")));
+		List<ClanMemberMap> after = Collections.singletonList(
+			new ClanMemberMap("Alice", "Recruit", "01-Jan-2021", Collections.singletonMap("Clan title", "Skiller")));
+
+		ClanMateExportDeltaModel delta = ClanMateExportDeltaModel.between("Some Clan", before, after);
+
+		assertEquals(after, delta.getRankChanges());
+		assertTrue(delta.getJoined().isEmpty());
+	}
+
+	@Test
+	public void testUnchanged()
+	{
+		ClanMateExportDeltaModel delta = ClanMateExportDeltaModel.between("Some Clan", BEFORE, BEFORE);
+
+		assertTrue(delta.isEmpty());
+	}
+}
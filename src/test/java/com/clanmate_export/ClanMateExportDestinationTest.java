@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ClanMateExportDestinationTest
+{
+	@Test
+	public void testParse()
+	{
+		ClanMateExportDestination destination = ClanMateExportDestination.parse(
+			" https://example.com/roster | format=csv | timeout=10 | gzip | pages=500 | Authorization: Bearer a:b ");
+
+		assertEquals("https://example.com/roster", destination.getUrl());
+		assertEquals("example.com", destination.getName());
+		assertEquals(ClanMateExportDataFormat.CSV, destination.getFormat());
+		assertEquals(10_000, destination.getTimeoutMs());
+		assertTrue(destination.isCompress());
+		assertEquals(500, destination.getPageSize());
+		assertEquals("Bearer a:b", destination.getHeaders().get("Authorization"));
+	}
+
+	@Test
+	public void testDefaults()
+	{
+		ClanMateExportDestination destination = ClanMateExportDestination.parse("https://example.com/roster | format=xml");
+
+		assertEquals(ClanMateExportDataFormat.JSON, destination.getFormat());
+		assertEquals(ClanMateExportDestination.DEFAULT_TIMEOUT_MS, destination.getTimeoutMs());
+		assertEquals(0, destination.getPageSize());
+		assertTrue(destination.getHeaders().isEmpty());
+	}
+
+	@Test
+	public void testInvalidLines()
+	{
+		assertNull(ClanMateExportDestination.parse("   "));
+		assertNull(ClanMateExportDestination.parse("not a url | format=csv"));
+	}
+}
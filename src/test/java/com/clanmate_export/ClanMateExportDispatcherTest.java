@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ClanMateExportDispatcherTest
+{
+	private final List<String> started = new ArrayList<>();
+	private final Map<String, CompletableFuture<Void>> running = new HashMap<>();
+
+	private final ClanMateExportDispatcher<String> dispatcher = new ClanMateExportDispatcher<>((key, input) ->
+	{
+		started.add(key + "=" + input);
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		running.put(key, done);
+		return done;
+	});
+
+	@Test
+	public void testRunsOneAtATimePerKey()
+	{
+		assertTrue(dispatcher.dispatch("clan", "first"));
+		assertTrue(dispatcher.dispatch("other clan", "first"));
+		assertFalse(dispatcher.dispatch("clan", "second"));
+		assertEquals(2, started.size());
+		assertTrue(dispatcher.isPending("clan"));
+		assertFalse(dispatcher.isPending("other clan"));
+	}
+
+	@Test
+	public void testCoalescesIntoOneFollowUpWithTheLatest()
+	{
+		dispatcher.dispatch("clan", "first");
+		for (int i = 0; i < 10; i++)
+		{
+			assertFalse(dispatcher.dispatch("clan", "click " + i));
+		}
+
+		running.get("clan").complete(null);
+		assertEquals(2, started.size());
+		assertEquals("clan=click 9", started.get(1));
+		assertFalse(dispatcher.isPending("clan"));
+
+		running.get("clan").complete(null);
+		assertEquals(2, started.size());
+		assertTrue(dispatcher.dispatch("clan", "again"));
+	}
+
+	@Test
+	public void testMergesFollowUps()
+	{
+		List<Boolean> notified = new ArrayList<>();
+		ClanMateExportDispatcher<Boolean> sends = new ClanMateExportDispatcher<>((key, notify) ->
+		{
+			notified.add(notify);
+			return running.computeIfAbsent(key, k -> new CompletableFuture<>());
+		}, Boolean::logicalOr);
+
+		sends.dispatch("key", false);
+		sends.dispatch("key", true);
+		sends.dispatch("key", false);
+		running.remove("key").complete(null);
+		assertEquals(2, notified.size());
+		assertTrue(notified.get(1));
+	}
+
+	@Test
+	public void testFailedExportStillRunsFollowUp()
+	{
+		ClanMateExportDispatcher<String> failing = new ClanMateExportDispatcher<>((key, input) ->
+		{
+			started.add(input);
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			running.put(key, done);
+			if (input.equals("first"))
+			{
+				done.completeExceptionally(new IllegalStateException());
+				throw new IllegalStateException();
+			}
+			return done;
+		});
+
+		failing.dispatch("clan", "first");
+		assertTrue(failing.dispatch("clan", "second"));
+		assertEquals(2, started.size());
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClanMateExportHiscoresTest
+{
+	private static final ClanRoster ROSTER = ClanRoster.copyOf(Arrays.asList(
+		new ClanMemberMap("Zezima", "Owner", "19-Jun-2021"),
+		new ClanMemberMap("Lynx Titan", "Sapphire", "4-Jul-2021"),
+		new ClanMemberMap("Nobody", "Recruit", "12-Aug-2021")));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final MockWebServer server = new MockWebServer();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private ClanMateExportConfig config;
+	private File cacheFile;
+
+	@Before
+	public void before() throws Exception
+	{
+		//A stand-in for the hiscores, which doesn't know Nobody
+		server.setDispatcher(new Dispatcher()
+		{
+			@Override
+			public MockResponse dispatch(RecordedRequest request)
+			{
+				switch (request.getRequestUrl().queryParameter("player"))
+				{
+					case "Zezima":
+						return new MockResponse().setBody("123,2277,200000000\n1,99,13034431\n");
+					case "Lynx Titan":
+						return new MockResponse().setBody("1,2277,4600000000\n1,99,200000000\n");
+					default:
+						return new MockResponse().setResponseCode(404);
+				}
+			}
+		});
+		server.start();
+
+		String url = server.url("/index_lite.ws").toString();
+		config = new ClanMateExportConfig()
+		{
+			@Override
+			public String getHiscoreUrl()
+			{
+				return url;
+			}
+		};
+		cacheFile = new File(folder.newFolder(), "hiscores.json");
+	}
+
+	@After
+	public void after() throws Exception
+	{
+		server.shutdown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testTotalsAreAdded()
+	{
+		ClanRoster members = hiscores(new ClanMateExportHiscoreCache(cacheFile)).enrich(ROSTER, Runnable::run).join();
+
+		assertEquals(3, server.getRequestCount());
+		assertEquals("2277", members.get(0).getColumns().get(ClanMateExportHiscores.TOTAL_LEVEL_COLUMN));
+		assertEquals("200000000", members.get(0).getColumns().get(ClanMateExportHiscores.TOTAL_XP_COLUMN));
+		assertEquals("4600000000", members.get(1).getColumns().get(ClanMateExportHiscores.TOTAL_XP_COLUMN));
+		assertEquals("", members.get(2).getColumns().get(ClanMateExportHiscores.TOTAL_LEVEL_COLUMN));
+		assertEquals(ROSTER.get(1).getJoinedDate(), members.get(1).getJoinedDate());
+		assertEquals(ROSTER.getHash(), members.getHash());
+	}
+
+	@Test
+	public void testRepeatExportsAreNotLookedUp()
+	{
+		ClanMateExportHiscoreCache cache = new ClanMateExportHiscoreCache(cacheFile);
+		ClanRoster first = hiscores(cache).enrich(ROSTER, Runnable::run).join();
+		ClanRoster again = hiscores(cache).enrich(ROSTER, Runnable::run).join();
+		assertEquals(3, server.getRequestCount());
+		assertEquals(first.getHash(), again.getHash());
+
+		//Nor after a restart
+		ClanRoster restarted = hiscores(new ClanMateExportHiscoreCache(cacheFile)).enrich(ROSTER, Runnable::run).join();
+		assertEquals(3, server.getRequestCount());
+		assertEquals(first.getHash(), restarted.getHash());
+	}
+
+	@Test
+	public void testLookupsAreNotWaitedOn() throws Exception
+	{
+		//Two lookups a second, so the last of the three starts a second in
+		ClanMateExportHiscores hiscores = new ClanMateExportHiscores(new OkHttpClient(), config,
+			new ClanMateExportHiscoreCache(cacheFile), executor, 2);
+		CompletableFuture<ClanRoster> enriched = hiscores.enrich(ROSTER, Runnable::run);
+		assertFalse(enriched.isDone());
+
+		ClanRoster members = enriched.get(5, TimeUnit.SECONDS);
+		assertEquals(3, server.getRequestCount());
+		assertEquals("2277", members.get(0).getColumns().get(ClanMateExportHiscores.TOTAL_LEVEL_COLUMN));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedAreDropped()
+	{
+		ClanMateExportHiscoreCache cache = new ClanMateExportHiscoreCache(cacheFile);
+		for (int i = 0; i <= ClanMateExportHiscoreCache.MAX_ENTRIES; i++)
+		{
+			cache.put("Member " + i, new ClanMateExportHiscoreCache.Entry(32, 0, 0));
+			if (i == 1)
+			{
+				cache.get("Member 0", 0, 1);
+			}
+		}
+
+		assertEquals(ClanMateExportHiscoreCache.MAX_ENTRIES, cache.size());
+		assertNull(cache.get("Member 1", 0, 1));
+		assertEquals(32, cache.get("Member 0", 0, 1).totalLevel);
+		assertNull(cache.get("Member 0", 2, 1));
+	}
+
+	@Test
+	public void testParse()
+	{
+		assertEquals(1500, ClanMateExportHiscores.parse("5000,1500,30000000", 0).totalLevel);
+		assertFalse(ClanMateExportHiscores.parse("-1,-1,-1", 0).isRanked());
+		assertNull(ClanMateExportHiscores.parse("<html>", 0));
+		assertNull(ClanMateExportHiscores.parse(null, 0));
+	}
+
+	private ClanMateExportHiscores hiscores(ClanMateExportHiscoreCache cache)
+	{
+		return new ClanMateExportHiscores(new OkHttpClient(), config, cache, executor, 1000);
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * A local stand-in for a server receiving URL exports. Faults can be scripted
+ * for the next requests, or injected at random rates along with latency. A
+ * roster with the same If-None-Match as the last one accepted is answered with a 304.
+ * Pages are kept by export id until the export is committed, a commit for an
+ * export missing pages being answered with a 409. The server can be set to
+ * forget pages, as one restarting between them and the commit would.
+ */
+public class ClanMateExportIngestServer implements Closeable
+{
+	public enum Fault
+	{
+		SERVER_ERROR,
+		TOO_MANY_REQUESTS,
+		DROP_CONNECTION,
+		CONFLICT,
+		BAD_REQUEST
+	}
+
+	private final MockWebServer server = new MockWebServer();
+	private final Queue<Fault> scriptedFaults = new ConcurrentLinkedQueue<>();
+	private final List<RecordedRequest> accepted = Collections.synchronizedList(new ArrayList<>());
+	private final List<RecordedRequest> acceptedPages = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String, Set<Integer>> pages = new ConcurrentHashMap<>();
+
+	private volatile String currentTag;
+	private volatile boolean forgetPages;
+	private volatile long latencyMs;
+	private volatile double serverErrorRate;
+	private volatile double throttleRate;
+	private volatile double dropRate;
+
+	public ClanMateExportIngestServer() throws IOException
+	{
+		server.setDispatcher(new Dispatcher()
+		{
+			@Override
+			public MockResponse dispatch(RecordedRequest request)
+			{
+				return respond(request);
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * @return the url exports should be sent to
+	 */
+	public String url()
+	{
+		return server.url("/ingest").toString();
+	}
+
+	/**
+	 * Fails the next requests with these faults, in order
+	 */
+	public void script(Fault... faults)
+	{
+		Collections.addAll(scriptedFaults, faults);
+	}
+
+	/**
+	 * Answers pages with a 200 without keeping them, so every commit is answered with a 409
+	 */
+	public void setForgetPages(boolean forgetPages)
+	{
+		this.forgetPages = forgetPages;
+	}
+
+	public void setLatency(long latencyMs)
+	{
+		this.latencyMs = latencyMs;
+	}
+
+	/**
+	 * Fails requests at random with 503s, 429s and dropped connections at these rates
+	 */
+	public void setFaultRates(double serverErrorRate, double throttleRate, double dropRate)
+	{
+		this.serverErrorRate = serverErrorRate;
+		this.throttleRate = throttleRate;
+		this.dropRate = dropRate;
+	}
+
+	/**
+	 * @return the requests answered with a 200, other than pages
+	 */
+	public List<RecordedRequest> getAccepted()
+	{
+		synchronized (accepted)
+		{
+			return new ArrayList<>(accepted);
+		}
+	}
+
+	/**
+	 * @return the pages answered with a 200
+	 */
+	public List<RecordedRequest> getAcceptedPages()
+	{
+		synchronized (acceptedPages)
+		{
+			return new ArrayList<>(acceptedPages);
+		}
+	}
+
+	public int getRequestCount()
+	{
+		return server.getRequestCount();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		server.shutdown();
+	}
+
+	private MockResponse respond(RecordedRequest request)
+	{
+		Fault fault = scriptedFaults.poll();
+		if (fault == null)
+		{
+			double roll = ThreadLocalRandom.current().nextDouble();
+			if (roll < dropRate)
+			{
+				fault = Fault.DROP_CONNECTION;
+			}
+			else if (roll < dropRate + serverErrorRate)
+			{
+				fault = Fault.SERVER_ERROR;
+			}
+			else if (roll < dropRate + serverErrorRate + throttleRate)
+			{
+				fault = Fault.TOO_MANY_REQUESTS;
+			}
+		}
+
+		MockResponse response = new MockResponse().setHeadersDelay(latencyMs, TimeUnit.MILLISECONDS);
+		if (fault == null)
+		{
+			String tag = request.getHeader("If-None-Match");
+			if (tag != null && tag.equals(currentTag))
+			{
+				return response.setResponseCode(304);
+			}
+
+			String mode = request.getHeader(ClanMateExportUploader.EXPORT_MODE_HEADER);
+			String exportId = request.getHeader(ClanMateExportUploader.EXPORT_ID_HEADER);
+			if ("page".equals(mode))
+			{
+				if (forgetPages)
+				{
+					return response.setResponseCode(200);
+				}
+				pages.computeIfAbsent(exportId, id -> ConcurrentHashMap.newKeySet())
+					.add(Integer.parseInt(request.getHeader(ClanMateExportUploader.EXPORT_PAGE_HEADER)));
+				acceptedPages.add(request);
+				return response.setResponseCode(200);
+			}
+			if ("commit".equals(mode))
+			{
+				Set<Integer> received = pages.remove(exportId);
+				if (received == null || received.size() != Integer.parseInt(request.getHeader(ClanMateExportUploader.EXPORT_PAGES_HEADER)))
+				{
+					return response.setResponseCode(409);
+				}
+			}
+
+			currentTag = tag;
+			accepted.add(request);
+			return response.setResponseCode(200);
+		}
+
+		switch (fault)
+		{
+			case SERVER_ERROR:
+				return response.setResponseCode(503).setHeader("Retry-After", "0");
+			case TOO_MANY_REQUESTS:
+				return response.setResponseCode(429).setHeader("Retry-After", "0");
+			case DROP_CONNECTION:
+				return response.setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+			case CONFLICT:
+				return response.setResponseCode(409);
+			default:
+				return response.setResponseCode(400);
+		}
+	}
+
+	/**
+	 * @return an uploader keeping its outbox and snapshots under dir, with a short retry backoff
+	 */
+	public static ClanMateExportUploader uploader(OkHttpClient webClient, ClanMateExportConfig config, File dir,
+		ClanMateExportChatMenuManager clanMateExportChatMenuManager, ScheduledExecutorService executor)
+	{
+		ClanMateExportUploader uploader = new ClanMateExportUploader(webClient, config,
+			new ClanMateExportOutbox(new File(dir, "outbox")), new ClanRosterSnapshotStore(new File(dir, "snapshots")),
+			clanMateExportChatMenuManager, executor, new ClanMateExportMetrics());
+		uploader.setBaseRetryDelay(10);
+		return uploader;
+	}
+
+	/**
+	 * @return a chat menu manager which records what it would have shown
+	 */
+	public static ClanMateExportChatMenuManager recordingChatMenu(ClanMateExportConfig config, List<ClanMateExportChatMenuManager.WhatToShow> shown)
+	{
+		return new ClanMateExportChatMenuManager(null, null, config, null)
+		{
+			@Override
+			public void update(WhatToShow whatToShow)
+			{
+				shown.add(whatToShow);
+			}
+		};
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Fires many concurrent URL exports at a local {@link ClanMateExportIngestServer}
+ * and reports latency percentiles and the success rate.
+ * <p>
+ * Arguments: exports, members per export, latency ms, 503 rate, 429 rate, drop rate.
+ * For example {@code 200 500 50 0.05 0.05 0.02}.
+ */
+public class ClanMateExportLoadHarness
+{
+	public static void main(String[] args) throws Exception
+	{
+		int exports = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int memberCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 50;
+		double serverErrorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.05;
+		double throttleRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.05;
+		double dropRate = args.length > 5 ? Double.parseDouble(args[5]) : 0.02;
+
+		//A different owner for each clan, so the server can't answer 304 for a roster it has seen
+		List<List<ClanMemberMap>> rosters = new ArrayList<>(exports);
+		for (int clan = 0; clan < exports; clan++)
+		{
+			ClanRoster.Builder roster = new ClanRoster.Builder(memberCount);
+			roster.add("Owner " + clan, "Owner", "1-Jan-2021");
+			for (int i = 1; i < memberCount; i++)
+			{
+				roster.add("Member " + i, i % 10 == 0 ? "Ruby" : "Sapphire", (1 + i % 28) + "-Jun-2021");
+			}
+			rosters.add(roster.build());
+		}
+
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequests(exports);
+		dispatcher.setMaxRequestsPerHost(exports);
+		OkHttpClient webClient = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+
+		ClanMateExportConfig config = new ClanMateExportConfig()
+		{
+		};
+		File dir = Files.createTempDirectory("clanmate-export-load").toFile();
+		ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+
+		try (ClanMateExportIngestServer server = new ClanMateExportIngestServer())
+		{
+			server.setLatency(latencyMs);
+			server.setFaultRates(serverErrorRate, throttleRate, dropRate);
+			ClanMateExportUploader uploader = ClanMateExportIngestServer.uploader(webClient, config, dir,
+				ClanMateExportIngestServer.recordingChatMenu(config, new ArrayList<>()), executor);
+			uploader.setMaxRequestsPerDestination(exports);
+
+			ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+			List<CompletableFuture<Boolean>> results = new ArrayList<>(exports);
+			long started = System.nanoTime();
+			for (int i = 0; i < exports; i++)
+			{
+				long exportStarted = System.nanoTime();
+				//A clan each so the outbox doesn't coalesce them
+				results.add(uploader.export("Clan " + i, server.url(), rosters.get(i))
+					.whenComplete((accepted, e) -> latencies.add(System.nanoTime() - exportStarted)));
+			}
+
+			int succeeded = 0;
+			for (CompletableFuture<Boolean> result : results)
+			{
+				if (result.get(5, TimeUnit.MINUTES))
+				{
+					succeeded++;
+				}
+			}
+			long elapsed = System.nanoTime() - started;
+
+			long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+			System.out.printf("exports %d, members %d, requests %d, elapsed %d ms%n",
+				exports, memberCount, server.getRequestCount(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+			System.out.printf("success rate %.1f%%, p50 %d ms, p99 %d ms%n",
+				100.0 * succeeded / exports, percentileMs(sorted, 0.50), percentileMs(sorted, 0.99));
+			uploader.stop();
+		}
+		finally
+		{
+			executor.shutdownNow();
+			webClient.dispatcher().executorService().shutdown();
+		}
+	}
+
+	private static long percentileMs(long[] sorted, double percentile)
+	{
+		if (sorted.length == 0)
+		{
+			return 0;
+		}
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+		return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(index, 0)]);
+	}
+}
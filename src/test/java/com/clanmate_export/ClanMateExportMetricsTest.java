@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ClanMateExportMetricsTest
+{
+	@Test
+	public void testHistogramBuckets()
+	{
+		ClanMateExportMetrics.Histogram histogram = new ClanMateExportMetrics.Histogram();
+		for (int i = 0; i < 90; i++)
+		{
+			histogram.record(3);
+		}
+		for (int i = 0; i < 9; i++)
+		{
+			histogram.record(600);
+		}
+		histogram.record(5000);
+
+		assertEquals(100, histogram.count());
+		assertEquals(10670, histogram.sum());
+		assertEquals(106, histogram.mean());
+		assertEquals(5000, histogram.max());
+		//Percentiles are the top of the power of two bucket holding them
+		assertEquals(3, histogram.percentile(0.5));
+		assertEquals(3, histogram.percentile(0.9));
+		assertEquals(1023, histogram.percentile(0.95));
+		assertEquals(1023, histogram.percentile(0.99));
+		//Never more than the largest value seen
+		assertEquals(5000, histogram.percentile(1));
+	}
+
+	@Test
+	public void testHistogramEdges()
+	{
+		ClanMateExportMetrics.Histogram histogram = new ClanMateExportMetrics.Histogram();
+		assertEquals(0, histogram.mean());
+		assertEquals(0, histogram.percentile(0.99));
+
+		histogram.record(-5);
+		histogram.record(0);
+		assertEquals(2, histogram.count());
+		assertEquals(0, histogram.sum());
+		assertEquals(0, histogram.percentile(1));
+
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+	}
+
+	@Test
+	public void testStatusClasses()
+	{
+		ClanMateExportMetrics metrics = new ClanMateExportMetrics();
+		metrics.recordStatus(200);
+		metrics.recordStatus(204);
+		metrics.recordStatus(304);
+		metrics.recordStatus(429);
+		metrics.recordStatus(503);
+		metrics.recordStatus(-1);
+		metrics.recordStatus(999);
+
+		assertTrue(metrics.dump(), metrics.dump().endsWith("Statuses: failed=2 1xx=0 2xx=2 3xx=1 4xx=1 5xx=1"));
+	}
+}
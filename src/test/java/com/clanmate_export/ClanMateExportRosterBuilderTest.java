@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class ClanMateExportRosterBuilderTest
+{
+	private static final List<ClanMemberMap> LAST_EXPORTED = Arrays.asList(
+		new ClanMemberMap("Zezima", "Owner", "1-Jan-2020"),
+		new ClanMemberMap("Lynx Titan", "Sapphire", "4-Jul-2021"));
+
+	private int loads;
+
+	private final ClanRosterSnapshotStore snapshotStore = new ClanRosterSnapshotStore(new File("snapshots"))
+	{
+		@Override
+		public List<ClanMemberMap> loadFirst(String clanName, List<ClanMateExportDestination> destinations)
+		{
+			loads++;
+			return LAST_EXPORTED;
+		}
+	};
+
+	private final ClanMateExportRosterBuilder rosterBuilder = new ClanMateExportRosterBuilder(new ClanMateExportConfig()
+	{
+	}, new ClanMateExportMetrics(), snapshotStore, null, new ClanMemberIndex(), null, null);
+
+	@Test
+	public void testMissingDatesComeFromLastExport()
+	{
+		//As read by an automatic export, without the members page
+		ClanRosterCapture capture = ClanRosterCapture.withColumns("Clan", new String[]{"Zezima", "Lynx Titan", "Woox"},
+			new String[]{"Owner", "Sapphire", "Recruit"}, null, new String[0], new ClanMemberColumnCache.Column[0]);
+
+		ClanRoster members = rosterBuilder.build(capture, Runnable::run).join();
+		assertEquals("1-Jan-2020", members.getJoinedDate(0));
+		assertEquals("4-Jul-2021", members.getJoinedDate(1));
+		assertEquals("", members.getJoinedDate(2));
+		assertEquals(1, loads);
+	}
+
+	@Test
+	public void testNameChangesAreLinked()
+	{
+		ClanMemberColumnCache.Column joined = new ClanMemberColumnCache.Column(ClanMembersWidget.JOINED_COLUMN_NAME,
+			new String[]{"Zezima", "Woox"}, new String[]{"1-Jan-2020", "4-Jul-2021"});
+		ClanRosterCapture capture = ClanRosterCapture.withColumns("Clan", new String[]{"Zezima", "Woox"},
+			new String[]{"Owner", "Sapphire"}, joined, new String[0], new ClanMemberColumnCache.Column[0]);
+
+		ClanRoster members = rosterBuilder.build(capture, Runnable::run).join();
+		assertEquals("Lynx Titan", members.getPreviousRsn(1));
+		//Only read to link the first roster, the capture had its dates
+		assertEquals(1, loads);
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClanMateExportUploaderTest
+{
+	private static final List<ClanMemberMap> ROSTER = Arrays.asList(
+		new ClanMemberMap("ClanMember 1", "Sapphire", "19-Jun-2021"),
+		new ClanMemberMap("ClanMember 2", "Sapphire", "4-Jul-2021"));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<ClanMateExportChatMenuManager.WhatToShow> shown = Collections.synchronizedList(new ArrayList<>());
+	private ClanMateExportMode exportMode = ClanMateExportMode.FULL;
+	private ClanMateExportIngestServer server;
+	private ScheduledExecutorService executor;
+	private ClanMateExportConfig config;
+	private ClanMateExportUploader uploader;
+
+	@Before
+	public void before() throws Exception
+	{
+		config = new ClanMateExportConfig()
+		{
+			@Override
+			public ClanMateExportMode getExportMode()
+			{
+				return exportMode;
+			}
+		};
+
+		server = new ClanMateExportIngestServer();
+		executor = Executors.newSingleThreadScheduledExecutor();
+		uploader = newUploader();
+	}
+
+	private ClanMateExportUploader newUploader() throws Exception
+	{
+		return ClanMateExportIngestServer.uploader(new OkHttpClient(), config, folder.newFolder(),
+			ClanMateExportIngestServer.recordingChatMenu(config, shown), executor);
+	}
+
+	@After
+	public void after() throws Exception
+	{
+		uploader.stop();
+		executor.shutdownNow();
+		server.close();
+	}
+
+	@Test
+	public void testExportAccepted() throws Exception
+	{
+		assertTrue(uploader.export("Some Clan", server.url(), ROSTER).get(5, TimeUnit.SECONDS));
+
+		List<RecordedRequest> accepted = server.getAccepted();
+		assertEquals(1, accepted.size());
+		assertEquals("full", accepted.get(0).getHeader(ClanMateExportUploader.EXPORT_MODE_HEADER));
+		assertEquals(ClanRosterHash.of(ROSTER), accepted.get(0).getHeader(ClanMateExportUploader.ROSTER_HASH_HEADER));
+		assertTrue(accepted.get(0).getBody().clone().readUtf8().contains("\"clanName\":\"Some Clan\""));
+		assertEquals(Collections.singletonList(ClanMateExportChatMenuManager.WhatToShow.SUCCESS), shown);
+	}
+
+	@Test
+	public void testFailuresAreRetried() throws Exception
+	{
+		server.script(ClanMateExportIngestServer.Fault.SERVER_ERROR,
+			ClanMateExportIngestServer.Fault.DROP_CONNECTION,
+			ClanMateExportIngestServer.Fault.TOO_MANY_REQUESTS);
+
+		assertTrue(uploader.export("Some Clan", server.url(), ROSTER).get(10, TimeUnit.SECONDS));
+		assertEquals(4, server.getRequestCount());
+		assertEquals(1, server.getAccepted().size());
+	}
+
+	@Test
+	public void testClientErrorIsGivenUp() throws Exception
+	{
+		server.script(ClanMateExportIngestServer.Fault.BAD_REQUEST);
+
+		assertFalse(uploader.export("Some Clan", server.url(), ROSTER).get(5, TimeUnit.SECONDS));
+		assertEquals(1, server.getRequestCount());
+		assertTrue(shown.contains(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_FAILED));
+	}
+
+	@Test
+	public void testConflictResendsFullRoster() throws Exception
+	{
+		exportMode = ClanMateExportMode.DELTA;
+		assertTrue(uploader.export("Some Clan", server.url(), ROSTER).get(5, TimeUnit.SECONDS));
+
+		List<ClanMemberMap> changed = new ArrayList<>(ROSTER);
+		changed.add(new ClanMemberMap("ClanMember 3", "Recruit", "12-Aug-2021"));
+		server.script(ClanMateExportIngestServer.Fault.CONFLICT);
+		assertTrue(uploader.export("Some Clan", server.url(), changed).get(5, TimeUnit.SECONDS));
+
+		List<RecordedRequest> accepted = server.getAccepted();
+		assertEquals(3, server.getRequestCount());
+		assertEquals(2, accepted.size());
+		assertEquals("full", accepted.get(1).getHeader(ClanMateExportUploader.EXPORT_MODE_HEADER));
+		assertEquals(ClanRosterHash.of(changed), accepted.get(1).getHeader(ClanMateExportUploader.ROSTER_HASH_HEADER));
+	}
+
+	@Test
+	public void testUnchangedRosterIsSkipped() throws Exception
+	{
+		assertTrue(uploader.export("Some Clan", server.url(), ROSTER).get(5, TimeUnit.SECONDS));
+
+		List<ClanMemberMap> reordered = Arrays.asList(ROSTER.get(1), ROSTER.get(0));
+		assertTrue(uploader.export("Some Clan", server.url(), reordered).get(5, TimeUnit.SECONDS));
+		assertEquals(1, server.getRequestCount());
+		assertTrue(shown.contains(ClanMateExportChatMenuManager.WhatToShow.UNCHANGED));
+	}
+
+	@Test
+	public void testNewHiscoresAreSent() throws Exception
+	{
+		assertTrue(uploader.export("Some Clan", server.url(), totalLevel("1500")).get(5, TimeUnit.SECONDS));
+		assertTrue(uploader.export("Some Clan", server.url(), totalLevel("1510")).get(5, TimeUnit.SECONDS));
+
+		List<RecordedRequest> accepted = server.getAccepted();
+		assertEquals(2, accepted.size());
+		assertEquals(accepted.get(0).getHeader(ClanMateExportUploader.ROSTER_HASH_HEADER),
+			accepted.get(1).getHeader(ClanMateExportUploader.ROSTER_HASH_HEADER));
+		assertTrue(accepted.get(1).getBody().clone().readUtf8().contains("\"Total level\":\"1510\""));
+		assertFalse(shown.contains(ClanMateExportChatMenuManager.WhatToShow.UNCHANGED));
+	}
+
+	@Test
+	public void testNotModifiedIsAccepted() throws Exception
+	{
+		assertTrue(uploader.export("Some Clan", server.url(), ROSTER).get(5, TimeUnit.SECONDS));
+
+		//A second client which hasn't exported this roster itself
+		ClanMateExportUploader other = newUploader();
+		assertTrue(other.export("Some Clan", server.url(), ROSTER).get(5, TimeUnit.SECONDS));
+		assertEquals(2, server.getRequestCount());
+		assertEquals(1, server.getAccepted().size());
+		assertEquals("\"" + ClanRosterHash.of(ROSTER) + "\"", server.getAccepted().get(0).getHeader("If-None-Match"));
+
+		assertTrue(other.export("Some Clan", server.url(), ROSTER).get(5, TimeUnit.SECONDS));
+		assertEquals(2, server.getRequestCount());
+		other.stop();
+	}
+
+	@Test
+	public void testDestinationsAreSentSeparately() throws Exception
+	{
+		try (ClanMateExportIngestServer slow = new ClanMateExportIngestServer())
+		{
+			slow.setLatency(2000);
+			ClanMateExportDestination slowDestination = new ClanMateExportDestination(slow.url(),
+				ClanMateExportDataFormat.BINARY, false, 200, Collections.emptyMap());
+			ClanMateExportDestination csvDestination = new ClanMateExportDestination(server.url(),
+				ClanMateExportDataFormat.CSV, false, 5000, Collections.singletonMap("Authorization", "Bearer abc"));
+
+			CompletableFuture<Boolean> slowExport = uploader.export("Some Clan", slowDestination, ROSTER, false);
+			assertTrue(uploader.export("Some Clan", csvDestination, ROSTER, false).get(5, TimeUnit.SECONDS));
+			assertFalse(slowExport.isDone());
+
+			RecordedRequest request = server.getAccepted().get(0);
+			assertEquals("Bearer abc", request.getHeader("Authorization"));
+			assertTrue(request.getHeader("Content-Type").startsWith("text/csv"));
+			assertTrue(request.getBody().clone().readUtf8().startsWith("ClanMember 1,Sapphire,19-Jun-2021"));
+		}
+	}
+
+	@Test
+	public void testPagesResumeAfterFailure() throws Exception
+	{
+		List<ClanMemberMap> roster = new ArrayList<>();
+		for (int i = 1; i <= 5; i++)
+		{
+			roster.add(new ClanMemberMap("ClanMember " + i, "Sapphire", "19-Jun-2021"));
+		}
+		ClanMateExportDestination paged = new ClanMateExportDestination(server.url(),
+			ClanMateExportDataFormat.JSON, false, 5000, Collections.emptyMap(), 2);
+
+		server.script(ClanMateExportIngestServer.Fault.SERVER_ERROR);
+		assertTrue(uploader.export("Some Clan", paged, roster, false).get(10, TimeUnit.SECONDS));
+
+		//Only the page which failed is sent again
+		assertEquals(3, server.getAcceptedPages().size());
+		assertEquals(5, server.getRequestCount());
+
+		List<RecordedRequest> accepted = server.getAccepted();
+		assertEquals(1, accepted.size());
+		assertEquals("commit", accepted.get(0).getHeader(ClanMateExportUploader.EXPORT_MODE_HEADER));
+		assertEquals("3", accepted.get(0).getHeader(ClanMateExportUploader.EXPORT_PAGES_HEADER));
+		assertEquals(ClanRosterHash.of(roster), accepted.get(0).getHeader(ClanMateExportUploader.ROSTER_HASH_HEADER));
+		assertEquals(accepted.get(0).getHeader(ClanMateExportUploader.EXPORT_ID_HEADER),
+			server.getAcceptedPages().get(0).getHeader(ClanMateExportUploader.EXPORT_ID_HEADER));
+	}
+
+	@Test
+	public void testConflictingCommitIsGivenUp() throws Exception
+	{
+		List<ClanMemberMap> roster = new ArrayList<>();
+		for (int i = 1; i <= 5; i++)
+		{
+			roster.add(new ClanMemberMap("ClanMember " + i, "Sapphire", "19-Jun-2021"));
+		}
+		ClanMateExportDestination paged = new ClanMateExportDestination(server.url(),
+			ClanMateExportDataFormat.JSON, false, 5000, Collections.emptyMap(), 2);
+
+		server.setForgetPages(true);
+		assertFalse(uploader.export("Some Clan", paged, roster, true).get(20, TimeUnit.SECONDS));
+
+		//Every attempt sends the three pages again then a commit, backing off in between
+		assertEquals(ClanMateExportUploader.MAX_ATTEMPTS * 4, server.getRequestCount());
+		assertTrue(server.getAccepted().isEmpty());
+		assertTrue(shown.contains(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_RETRYING));
+		assertTrue(shown.contains(ClanMateExportChatMenuManager.WhatToShow.WEB_REQUEST_FAILED));
+	}
+
+	private static List<ClanMemberMap> totalLevel(String totalLevel)
+	{
+		return Collections.singletonList(new ClanMemberMap("ClanMember 1", "Sapphire", "19-Jun-2021",
+			Collections.singletonMap(ClanMateExportHiscores.TOTAL_LEVEL_COLUMN, totalLevel)));
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.runelite.api.Client;
+import net.runelite.api.clan.ClanSettings;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetType;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ClanMemberColumnCacheTest
+{
+	private static final String[] NAMES = {"Zezima", "Lynx Titan", "Woox"};
+
+	private final Map<Integer, Widget> widgets = new HashMap<>();
+	private final Client client = ClanMembersPageReplay.proxy(Client.class, (method, args) ->
+	{
+		switch (method)
+		{
+			case "getWidget":
+				return widgets.get((Integer) args[0]);
+			case "getClanSettings":
+				return ClanMembersPageReplay.proxy(ClanSettings.class, (settingsMethod, settingsArgs) ->
+					settingsMethod.equals("getName") ? "Test Clan" : Collections.nCopies(NAMES.length, null));
+			default:
+				return null;
+		}
+	});
+
+	@Test
+	public void testColumnsMergeAcrossDropDowns()
+	{
+		ClanMateExportConfig config = new ClanMateExportConfig()
+		{
+			@Override
+			public String getOtherColumns()
+			{
+				return "Last active, Rank";
+			}
+		};
+		ClanMemberColumnCache columnCache = new ClanMemberColumnCache();
+		WidgetRosterSource source = new WidgetRosterSource(client, config, columnCache, null);
+
+		show(NAMES, "Rank", new String[]{"Owner", "<col=ff0000>Ruby</col>", "Sapphire"},
+			"Last active", new String[]{"Today", "Yesterday", "Last week"});
+		assertTrue(columnCache.update(client));
+		assertFalse(columnCache.update(client));
+		assertEquals(Collections.singletonList("Joined"), source.missingColumns());
+
+		//The page re-sorted while the drop downs were changed
+		String[] reordered = {"Woox", "Zezima", "Lynx Titan"};
+		show(reordered, "Joined", new String[]{"3-Mar-2021", "1-Jan-2021", "2-Feb-2021"},
+			"Rank", new String[]{"Sapphire", "Owner", "Ruby"});
+		assertTrue(columnCache.update(client));
+		assertTrue(source.missingColumns().isEmpty());
+
+		List<ClanMemberMap> members = source.capture().toMembers();
+		assertEquals(3, members.size());
+		assertEquals("Zezima", members.get(1).getRSN());
+		assertEquals("Owner", members.get(1).getRank());
+		assertEquals("1-Jan-2021", members.get(1).getJoinedDate());
+		assertEquals(Collections.singletonMap("Last active", "Today"), members.get(1).getColumns());
+		assertEquals("Woox", members.get(0).getRSN());
+		assertEquals("Last week", members.get(0).getColumns().get("Last active"));
+	}
+
+	@Test
+	public void testColumnsSurviveCopies() throws Exception
+	{
+		ClanRoster.Builder builder = new ClanRoster.Builder(2).columns("Last active");
+		builder.add("Zezima", "Owner", "1-Jan-2021", "Today");
+		builder.add("Woox", "Sapphire", "3-Mar-2021", "Last week");
+		ClanRoster roster = builder.build();
+
+		ClanRoster copy = ClanRoster.copyOf(Arrays.asList(roster.get(0), roster.get(1)));
+		assertEquals(roster.getHash(), copy.getHash());
+		assertEquals(roster.getHash(), ClanRosterHash.of(Arrays.asList(roster.get(0), roster.get(1))));
+		assertFalse(roster.getHash().equals(ClanRoster.copyOf(Arrays.asList(
+			new ClanMemberMap("Zezima", "Owner", "1-Jan-2021"), new ClanMemberMap("Woox", "Sapphire", "3-Mar-2021"))).getHash()));
+
+		StringBuilder csv = new StringBuilder();
+		ClanRosterWriter.writeCsv(copy, false, csv);
+		assertEquals("Zezima,Owner,1-Jan-2021,Today\nWoox,Sapphire,3-Mar-2021,Last week", csv.toString());
+	}
+
+	/**
+	 * Lays out the members page with the given columns in the two drop downs
+	 */
+	private void show(String[] names, String firstLabel, String[] firstValues, String secondLabel, String[] secondValues)
+	{
+		Widget[] rsns = new Widget[names.length * 3];
+		for (int i = 0; i < names.length; i++)
+		{
+			rsns[i * 3] = widget(WidgetType.RECTANGLE, null, null);
+			rsns[i * 3 + 1] = widget(WidgetType.TEXT, names[i], null);
+			rsns[i * 3 + 2] = widget(WidgetType.GRAPHIC, null, null);
+		}
+		widgets.put(ClanMembersWidget.RSN_COLUMN, widget(WidgetType.LAYER, null, rsns));
+		widgets.put(ClanMembersWidget.FIRST_COLUMN, column(firstValues));
+		widgets.put(ClanMembersWidget.SECOND_COLUMN, column(secondValues));
+		widgets.put(ClanMembersWidget.FIRST_DROP_DOWN, dropDown(firstLabel));
+		widgets.put(ClanMembersWidget.SECOND_DROP_DOWN, dropDown(secondLabel));
+	}
+
+	private static Widget column(String[] values)
+	{
+		//A background for each member before the text cells
+		Widget[] children = new Widget[values.length * 2];
+		for (int i = 0; i < values.length; i++)
+		{
+			children[i] = widget(WidgetType.RECTANGLE, null, null);
+			children[values.length + i] = widget(WidgetType.TEXT, values[i], null);
+		}
+		return widget(WidgetType.LAYER, null, children);
+	}
+
+	private static Widget dropDown(String label)
+	{
+		Widget[] children = new Widget[ClanMembersWidget.DROP_DOWN_LABEL_INDEX + 1];
+		for (int i = 0; i < children.length; i++)
+		{
+			children[i] = widget(WidgetType.TEXT, i == ClanMembersWidget.DROP_DOWN_LABEL_INDEX ? label : "", null);
+		}
+		return widget(WidgetType.LAYER, null, children);
+	}
+
+	private static Widget widget(int type, String text, Widget[] children)
+	{
+		return ClanMembersPageReplay.proxy(Widget.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getType":
+					return type;
+				case "getText":
+					return text;
+				case "getChildren":
+					return children;
+				default:
+					return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class ClanMemberIndexTest
+{
+	private final ClanMemberIndex index = new ClanMemberIndex();
+
+	@Test
+	public void testNameChangeOnItsOwnDay()
+	{
+		ClanRoster before = roster("Zezima", "Owner", "1-Jan-2020", "Lynx Titan", "Sapphire", "4-Jul-2021");
+		ClanRoster after = roster("Zezima", "Owner", "1-Jan-2020", "Woox", "Sapphire", "4-Jul-2021", "B0aty", "Recruit", "1-Mar-2022");
+
+		index.link("Clan", before, () -> null);
+		ClanRoster linked = index.link("Clan", after, () -> null);
+
+		assertNull(linked.getPreviousRsn(0));
+		assertEquals("Lynx Titan", linked.getPreviousRsn(1));
+		assertNull(linked.getPreviousRsn(2));
+		assertEquals("Lynx Titan", linked.get(1).getPreviousRsn());
+	}
+
+	@Test
+	public void testSameDayPicksMostAlike()
+	{
+		ClanRoster before = roster("Iron Mammal", "Gold", "4-Jul-2021", "Settled", "Gold", "4-Jul-2021");
+		ClanRoster after = roster("Settled Again", "Gold", "4-Jul-2021", "Iron Mammal2", "Gold", "4-Jul-2021");
+
+		String[] previousRsns = ClanMemberIndex.previousRsns(before, after);
+		assertEquals("Settled", previousRsns[0]);
+		assertEquals("Iron Mammal", previousRsns[1]);
+	}
+
+	@Test
+	public void testUnknownDatesNeedAlikeNamesAndRank()
+	{
+		ClanRoster before = roster("Mod Ash", "Owner", "", "Some Guy", "Gold", "");
+		ClanRoster after = roster("Mod Ash2", "Owner", "", "Other Guy", "Recruit", "");
+
+		String[] previousRsns = ClanMemberIndex.previousRsns(before, after);
+		assertEquals("Mod Ash", previousRsns[0]);
+		assertNull(previousRsns[1]);
+		assertNull(ClanMemberIndex.previousRsns(after, after));
+	}
+
+	@Test
+	public void testPreviousNamesAreKept()
+	{
+		index.link("Clan", roster("Lynx Titan", "Sapphire", "4-Jul-2021"), () -> null);
+		ClanRoster renamed = index.link("Clan", roster("Woox", "Sapphire", "4-Jul-2021"), () -> null);
+		assertSame(renamed, index.link("Clan", roster("Woox", "Sapphire", "4-Jul-2021"), () -> null));
+
+		ClanRoster promoted = index.link("Clan", roster("Woox", "Owner", "4-Jul-2021"), () -> null);
+		assertEquals("Lynx Titan", promoted.getPreviousRsn(0));
+	}
+
+	@Test
+	public void testNewHiscoresAreKept()
+	{
+		index.link("Clan", totalLevel("1500"), () -> null);
+		ClanRoster trained = index.link("Clan", totalLevel("1510"), () -> null);
+
+		assertEquals("1510", trained.getColumn(0, 0));
+		assertEquals("1510", trained.get(0).getColumns().get(ClanMateExportHiscores.TOTAL_LEVEL_COLUMN));
+	}
+
+	@Test
+	public void testEarlierRosterIsUsedFirst()
+	{
+		List<ClanMemberMap> earlier = new ArrayList<>(roster("Lynx Titan", "Sapphire", "4-Jul-2021"));
+		ClanRoster linked = index.link("Clan", roster("Woox", "Sapphire", "4-Jul-2021"), () -> earlier);
+		assertEquals("Lynx Titan", linked.getPreviousRsn(0));
+	}
+
+	@Test
+	public void testFind()
+	{
+		assertNull(index.find("Clan", "zez", 5));
+
+		index.link("Clan", roster("Lynx Titan", "Sapphire", "4-Jul-2021"), () -> null);
+		index.link("Clan", roster("Zezima", "Owner", "1-Jan-2020", "Woox", "Sapphire", "4-Jul-2021", "Titan_Slayer", "Gold", "1-Mar-2022",
+			"Not Titan", "Gold", "1-Mar-2022", "Titan", "Gold", "2-Mar-2022"), () -> null);
+
+		assertEquals(names("Titan", "Titan_Slayer", "Woox", "Not Titan"), names(index.find("Clan", "TITAN", 5)));
+		assertEquals(names("Titan", "Titan_Slayer"), names(index.find("Clan", "titan", 2)));
+		assertEquals(names("Titan_Slayer"), names(index.find("Clan", "titan slayer", 5)));
+		assertEquals(names("Zezima"), names(index.find("Clan", "ze", 5)));
+		assertEquals(names("Woox"), names(index.find("Clan", "lynx", 5)));
+		assertEquals(names(), names(index.find("Clan", "durial", 5)));
+	}
+
+	private static ClanRoster roster(String... fields)
+	{
+		ClanRoster.Builder builder = new ClanRoster.Builder(fields.length / 3);
+		for (int i = 0; i < fields.length; i += 3)
+		{
+			builder.add(fields[i], fields[i + 1], fields[i + 2]);
+		}
+		return builder.build();
+	}
+
+	private static ClanRoster totalLevel(String totalLevel)
+	{
+		return new ClanRoster.Builder(1).columns(ClanMateExportHiscores.TOTAL_LEVEL_COLUMN)
+			.add("Zezima", "Owner", "1-Jan-2020", totalLevel)
+			.build();
+	}
+
+	private static List<String> names(String... names)
+	{
+		return Arrays.asList(names);
+	}
+
+	private static List<String> names(List<ClanMemberMap> members)
+	{
+		List<String> names = new ArrayList<>();
+		for (ClanMemberMap member : members)
+		{
+			names.add(member.getRSN());
+		}
+		return names;
+	}
+}
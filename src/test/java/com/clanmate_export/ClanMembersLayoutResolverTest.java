@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.lang.reflect.Proxy;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetType;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class ClanMembersLayoutResolverTest
+{
+	private static final int R = WidgetType.RECTANGLE;
+	private static final int T = WidgetType.TEXT;
+	private static final int G = WidgetType.GRAPHIC;
+
+	@Test
+	public void testInspect()
+	{
+		ClanMembersLayoutResolver.ColumnLayout names = ClanMembersLayoutResolver.inspect(children(R, T, G, R, T, G, R, T, G));
+		assertEquals(3, names.getRows());
+		assertEquals(1, names.index(0));
+		assertEquals(7, names.index(2));
+
+		ClanMembersLayoutResolver.ColumnLayout values = ClanMembersLayoutResolver.inspect(children(R, R, R, T, T, T));
+		assertEquals(3, values.getRows());
+		assertEquals(3, values.index(0));
+		assertEquals(5, values.index(2));
+
+		assertEquals(0, ClanMembersLayoutResolver.inspect(children()).getRows());
+		assertNull(ClanMembersLayoutResolver.inspect(children(T, R, T, T)));
+		assertNull(ClanMembersLayoutResolver.inspect(children(T, R, T, R, R, R, T)));
+	}
+
+	@Test
+	public void testLayoutIsKeptUntilFingerprintChanges()
+	{
+		ClanMembersLayoutResolver resolver = new ClanMembersLayoutResolver();
+		ClanMembersLayoutResolver.ColumnLayout names = resolver.resolve(ClanMembersLayoutResolver.NAMES, children(R, T, G, R, T, G), -1);
+		assertSame(names, resolver.resolve(ClanMembersLayoutResolver.NAMES, children(R, T, G, R, T, G), -1));
+		assertNotSame(names, resolver.resolve(ClanMembersLayoutResolver.NAMES, children(R, T, G, R, T, G, R, T, G), -1));
+
+		//A column which doesn't line up with the names isn't read
+		assertNull(resolver.resolve(ClanMembersLayoutResolver.FIRST_COLUMN, children(R, R, T, T), 3));
+		assertEquals(2, resolver.resolve(ClanMembersLayoutResolver.FIRST_COLUMN, children(R, R, T, T), 2).getRows());
+	}
+
+	private static Widget[] children(int... types)
+	{
+		Widget[] children = new Widget[types.length];
+		for (int i = 0; i < types.length; i++)
+		{
+			int type = types[i];
+			children[i] = (Widget) Proxy.newProxyInstance(Widget.class.getClassLoader(), new Class<?>[]{Widget.class},
+				(proxy, method, args) -> method.getName().equals("getType") ? type : null);
+		}
+		return children;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.runelite.api.Client;
+import net.runelite.api.clan.ClanSettings;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetInfo;
+
+/**
+ * Plays a recorded members page back through stand-ins for the client and its
+ * widgets, so the scrape can be tested and benchmarked without logging in
+ */
+final class ClanMembersPageReplay
+{
+	private ClanMembersPageReplay()
+	{
+	}
+
+	/**
+	 * @param name the fixture's file name in the fixtures resource folder, without .txt
+	 */
+	static ClanMembersPageFixture load(String name) throws IOException
+	{
+		InputStream in = ClanMembersPageReplay.class.getResourceAsStream("fixtures/" + name + ".txt");
+		if (in == null)
+		{
+			throw new IOException("No fixture named " + name);
+		}
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
+		{
+			return ClanMembersPageFixture.read(reader);
+		}
+	}
+
+	/**
+	 * @return a client showing the recorded members page, with the recorded clan settings
+	 */
+	static Client client(ClanMembersPageFixture fixture)
+	{
+		Map<Integer, Widget> widgets = new HashMap<>();
+		for (Map.Entry<Integer, ClanMembersPageFixture.RecordedWidget> entry : fixture.getWidgets().entrySet())
+		{
+			widgets.put(entry.getKey(), widget(entry.getKey(), -1, entry.getValue()));
+		}
+
+		ClanSettings clanSettings = proxy(ClanSettings.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getName":
+					return fixture.getClanName();
+				case "getMembers":
+					return Collections.nCopies(fixture.getMemberCount(), null);
+				default:
+					return null;
+			}
+		});
+
+		return proxy(Client.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getWidget":
+					return widgets.get(args.length == 1 ? (Integer) args[0] : WidgetInfo.PACK((Integer) args[0], (Integer) args[1]));
+				case "getClanSettings":
+					return clanSettings;
+				default:
+					return null;
+			}
+		});
+	}
+
+	private static Widget widget(int id, int index, ClanMembersPageFixture.RecordedWidget recorded)
+	{
+		Widget[] children = null;
+		if (recorded.getChildren() != null)
+		{
+			children = new Widget[recorded.getChildren().length];
+			for (int i = 0; i < children.length; i++)
+			{
+				if (recorded.getChildren()[i] != null)
+				{
+					children[i] = widget(id, i, recorded.getChildren()[i]);
+				}
+			}
+		}
+
+		Widget[] replayedChildren = children;
+		return proxy(Widget.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getId":
+					return id;
+				case "getIndex":
+					return index;
+				case "getType":
+					return recorded.getType();
+				case "getText":
+					return recorded.getText();
+				case "getChildren":
+					return replayedChildren;
+				case "isHidden":
+					return false;
+				default:
+					return null;
+			}
+		});
+	}
+
+	/**
+	 * Answers the calls made to a {@link #proxy}, by method name
+	 */
+	interface Handler
+	{
+		Object invoke(String method, Object[] args);
+	}
+
+	/**
+	 * @return an implementation of the interface which hands every call to the handler
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T proxy(Class<T> type, Handler handler)
+	{
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+			(proxy, method, args) -> handler.invoke(method.getName(), args));
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import net.runelite.api.Client;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Runs the members page scrape against recorded pages
+ */
+public class ClanMembersPageReplayTest
+{
+	private final ClanMateExportConfig config = new ClanMateExportConfig()
+	{
+	};
+
+	@Test
+	public void testScrapesSmallPage() throws Exception
+	{
+		Client client = ClanMembersPageReplay.client(ClanMembersPageReplay.load("members-small"));
+		WidgetRosterSource source = new WidgetRosterSource(client, config, new ClanMemberColumnCache(), null);
+
+		ClanRosterCapture capture = source.capture();
+		assertEquals("Test Clan", capture.getClanName());
+		StringBuilder csv = new StringBuilder();
+		ClanRosterWriter.writeCsv(capture.toMembers(), false, csv);
+		assertEquals("Zezima,Owner,4-Jan-2022\n"
+			+ "Lynx Titan,Deputy Owner,12-Feb-2022\n"
+			+ "Woox,Ruby,1-Jun-2021\n"
+			+ "Iron Mammal,Sapphire,28-Jun-2021\n"
+			+ "B0aty,Sapphire,31-Dec-2021", csv.toString());
+	}
+
+	@Test
+	public void testNamesAreKeptAsWritten() throws Exception
+	{
+		//The names have a tag, a hyphen, an underscore and a non-breaking space
+		Client client = ClanMembersPageReplay.client(ClanMembersPageReplay.load("members-names"));
+		WidgetRosterSource source = new WidgetRosterSource(client, config, new ClanMemberColumnCache(), null);
+
+		StringBuilder csv = new StringBuilder();
+		ClanRosterWriter.writeCsv(source.capture().toMembers(), false, csv);
+		assertEquals("Mod_Ash,Owner,4-Jan-2022\n"
+			+ "Iron-Man,Deputy Owner,12-Feb-2022\n"
+			+ "Lynx Titan,Sapphire,1-Jun-2021", csv.toString());
+	}
+
+	@Test
+	public void testScrapesLargePage() throws Exception
+	{
+		ClanMembersPageFixture fixture = ClanMembersPageReplay.load("members-500");
+		assertEquals(500, fixture.getMemberCount());
+		WidgetRosterSource source = new WidgetRosterSource(ClanMembersPageReplay.client(fixture), config,
+			new ClanMemberColumnCache(), null);
+
+		List<ClanMemberMap> members = source.capture().toMembers();
+		assertEquals(500, members.size());
+		assertEquals("Member 0", members.get(0).getRSN());
+		assertEquals("Owner", members.get(0).getRank());
+		assertEquals("Member 499", members.get(499).getRSN());
+		assertEquals("Administrator", members.get(499).getRank());
+		assertEquals("24-Jun-2022", members.get(499).getJoinedDate());
+	}
+
+	@Test
+	public void testMalformedPageIsNotRead() throws Exception
+	{
+		//The rank column is missing a row and the second drop down has no label
+		Client client = ClanMembersPageReplay.client(ClanMembersPageReplay.load("members-malformed"));
+		ClanMemberColumnCache columnCache = new ClanMemberColumnCache();
+		WidgetRosterSource source = new WidgetRosterSource(client, config, columnCache, null);
+
+		assertFalse(columnCache.update(client));
+		assertEquals(Arrays.asList("Rank", "Joined"), source.missingColumns());
+		assertNull(columnCache.get("Rank"));
+	}
+
+	@Test
+	public void testRecordingMatchesFixture() throws Exception
+	{
+		for (String name : new String[]{"members-small", "members-names", "members-500", "members-malformed"})
+		{
+			ClanMembersPageFixture recorded = ClanMembersPageFixture.record(ClanMembersPageReplay.client(ClanMembersPageReplay.load(name)));
+			StringWriter out = new StringWriter();
+			recorded.write(out);
+			assertEquals(name, fixtureText(name), out.toString());
+		}
+	}
+
+	@Test
+	public void testTextsAreEscaped() throws Exception
+	{
+		String text = "tab\there\\ new\nline";
+		assertEquals("tab\\there\\\\ new\\nline", ClanMembersPageFixture.escape(text));
+		assertEquals(text, ClanMembersPageFixture.unescape(ClanMembersPageFixture.escape(text)));
+
+		ClanMembersPageFixture fixture = ClanMembersPageFixture.read(new BufferedReader(new StringReader(
+			"clan\t" + ClanMembersPageFixture.escape(text) + "\nmembers\t0\n")));
+		assertEquals(text, fixture.getClanName());
+	}
+
+	private static String fixtureText(String name) throws Exception
+	{
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+			ClanMembersPageReplay.class.getResourceAsStream("fixtures/" + name + ".txt"), StandardCharsets.UTF_8)))
+		{
+			return reader.lines().map(line -> line + '\n').collect(Collectors.joining());
+		}
+	}
+}
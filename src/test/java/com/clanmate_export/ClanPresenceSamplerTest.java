@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.runelite.api.clan.ClanChannel;
+import net.runelite.api.clan.ClanChannelMember;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ClanPresenceSamplerTest
+{
+	private static final long MINUTE = 60_000;
+
+	private final ClanPresenceSampler sampler = new ClanPresenceSampler();
+	private final List<String> records = new ArrayList<>();
+
+	@Test
+	public void testRecordsOnlyChanges()
+	{
+		sampler.sample(channel("Clan", member("Alice", 301), member("Bob", 302)), 0);
+		sampler.sample(channel("Clan", member("Alice", 301), member("Bob", 302)), 600);
+		sampler.sample(channel("Clan", member("Alice", 330), member("Bob", 302)), 1200);
+		sampler.sample(channel("Clan", member("Alice", 330)), 1800);
+
+		assertEquals(4, drain());
+		assertEquals(Arrays.asList("0 Alice 301", "0 Bob 302", "1200 Alice 330", "1800 Bob 0"), records);
+		assertEquals(0, drain());
+	}
+
+	@Test
+	public void testHoldsOnWithoutAChannel()
+	{
+		sampler.sample(channel("Clan", member("Alice", 301)), 0);
+		sampler.sample(null, 600);
+		sampler.sample(channel("Clan", member("Alice", 301)), 1200);
+		sampler.leaveAll(1800);
+		sampler.leaveAll(2400);
+
+		drain();
+		assertEquals(Arrays.asList("0 Alice 301", "1800 Alice 0"), records);
+	}
+
+	@Test
+	public void testLeavesWhenTheChannelChanges()
+	{
+		sampler.sample(channel("Clan", member("Alice", 301)), 0);
+		sampler.sample(channel("Other clan", member("Alice", 301)), 600);
+
+		drain();
+		assertEquals(Arrays.asList("0 Alice 301", "600 Alice 0", "600 Alice 301"), records);
+	}
+
+	@Test
+	public void testDropsRecordsWhenFull()
+	{
+		for (int i = 0; i < ClanPresenceSampler.CAPACITY + 10; i++)
+		{
+			sampler.sample(channel("Clan", member("Alice", 301 + i % 2)), i);
+		}
+
+		assertEquals(ClanPresenceSampler.CAPACITY, drain());
+		assertEquals(10, sampler.takeDropped());
+		sampler.sample(channel("Clan", member("Alice", 300)), 0);
+		assertEquals(1, drain());
+	}
+
+	@Test
+	public void testBatchesSessions()
+	{
+		ClanMateExportActivity activity = new ClanMateExportActivity(sampler, null, null, null);
+		//Starts the first batch at 0
+		assertTrue(activity.batches(0).isEmpty());
+
+		sampler.sample(channel("Clan", member("Alice", 301), member("Bob", 302)), MINUTE);
+		sampler.sample(channel("Clan", member("Alice", 330), member("Bob", 302)), 2 * MINUTE);
+		sampler.sample(channel("Clan", member("Bob", 302)), 3 * MINUTE);
+		activity.drain();
+
+		List<ClanActivityBatch> batches = activity.batches(4 * MINUTE);
+		assertEquals(1, batches.size());
+		ClanActivityBatch batch = batches.get(0);
+		assertEquals("Clan", batch.getClanName());
+		assertEquals(240, batch.getTo());
+		assertEquals(Arrays.asList("Alice", "Bob"), batch.getMembers());
+		assertEquals(3, batch.getSessions().size());
+		assertArrayEquals(new int[]{0, 301, 60, 120}, batch.getSessions().get(0));
+		assertArrayEquals(new int[]{0, 330, 120, 180}, batch.getSessions().get(1));
+		//Bob is still online, so is cut off at the end of the batch
+		assertArrayEquals(new int[]{1, 302, 60, 240}, batch.getSessions().get(2));
+
+		//and carried on into the next one
+		batches = activity.batches(5 * MINUTE);
+		assertEquals(240, batches.get(0).getFrom());
+		assertEquals(Arrays.asList("Bob"), batches.get(0).getMembers());
+		assertArrayEquals(new int[]{0, 302, 0, 60}, batches.get(0).getSessions().get(0));
+
+		sampler.leaveAll(5 * MINUTE);
+		activity.drain();
+		assertTrue(activity.batches(6 * MINUTE).isEmpty());
+	}
+
+	private int drain()
+	{
+		return sampler.drain((time, memberId, world) -> records.add(time + " " + sampler.name(memberId) + " " + world));
+	}
+
+	private static ClanChannel channel(String name, ClanChannelMember... members)
+	{
+		List<ClanChannelMember> memberList = Arrays.asList(members);
+		return ClanMembersPageReplay.proxy(ClanChannel.class, (method, args) -> "getName".equals(method) ? name : "getMembers".equals(method) ? memberList : null);
+	}
+
+	private static ClanChannelMember member(String name, int world)
+	{
+		return ClanMembersPageReplay.proxy(ClanChannelMember.class, (method, args) -> "getName".equals(method) ? name : "getWorld".equals(method) ? world : null);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ClanRosterBinaryEncoderTest
+{
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		List<ClanMemberMap> roster = Arrays.asList(
+			new ClanMemberMap("ClanMember 1", "Sapphire", "19-Jun-2021"),
+			new ClanMemberMap("ClanMember 2", "Ruby", "4-Jul-2021"),
+			new ClanMemberMap("Zezima", "Sapphire", ""),
+			new ClanMemberMap("Ünïcode", "Owner", "1-Jan-2000"));
+
+		ClanRosterBinaryDecoder decoded = ClanRosterBinaryDecoder.decode(encode("Some Clan", roster));
+
+		assertEquals("Some Clan", decoded.clanName);
+		assertEquals(roster.size(), decoded.clanMemberMaps.size());
+		for (int i = 0; i < roster.size(); i++)
+		{
+			assertEquals(roster.get(i).getRSN(), decoded.clanMemberMaps.get(i).getRSN());
+			assertEquals(roster.get(i).getRank(), decoded.clanMemberMaps.get(i).getRank());
+			assertEquals(roster.get(i).getJoinedDate(), decoded.clanMemberMaps.get(i).getJoinedDate());
+		}
+	}
+
+	@Test
+	public void testFullRoundTrip() throws Exception
+	{
+		List<ClanMemberMap> roster = Arrays.asList(
+			new ClanMemberMap("ClanMember 1", "Sapphire", "19-Jun-2021", Collections.singletonMap("Clan title", "Skiller"), "Old Name"),
+			new ClanMemberMap("ClanMember 2", "Ruby", "Some time ago", Collections.singletonMap("Clan title", "")),
+			new ClanMemberMap("Zezima", "Sapphire", "", Collections.singletonMap("Clan title", "Legend")));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ClanRosterBinaryEncoder.encodeFull("Some Clan", roster, out);
+		ClanRosterBinaryDecoder decoded = ClanRosterBinaryDecoder.decode(out.toByteArray());
+
+		assertEquals("Some Clan", decoded.clanName);
+		for (int i = 0; i < roster.size(); i++)
+		{
+			assertEquals(roster.get(i).getRSN(), decoded.clanMemberMaps.get(i).getRSN());
+			assertEquals(roster.get(i).getJoinedDate(), decoded.clanMemberMaps.get(i).getJoinedDate());
+			assertEquals(roster.get(i).getColumns(), decoded.clanMemberMaps.get(i).getColumns());
+			assertEquals(roster.get(i).getPreviousRsn(), decoded.clanMemberMaps.get(i).getPreviousRsn());
+		}
+		assertEquals(ClanRosterHash.of(roster), decoded.clanMemberMaps.getHash());
+	}
+
+	@Test
+	public void testSmallerThanJson() throws Exception
+	{
+		List<ClanMemberMap> roster = new ArrayList<>();
+		for (int i = 0; i < 500; i++)
+		{
+			roster.add(new ClanMemberMap("Member " + i, i % 10 == 0 ? "Ruby" : "Sapphire", (1 + i % 28) + "-Jun-2021"));
+		}
+
+		StringBuilder json = new StringBuilder();
+		ClanRosterWriter.writeJson(new ClanMateExportWebRequestModel("Some Clan", roster), json);
+		int binaryLength = encode("Some Clan", roster).length;
+
+		assertTrue("binary " + binaryLength + " json " + json.length(), binaryLength * 3 < json.length());
+	}
+
+	private static byte[] encode(String clanName, List<ClanMemberMap> roster) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ClanRosterBinaryEncoder.encode(clanName, roster, out);
+		return out.toByteArray();
+	}
+}
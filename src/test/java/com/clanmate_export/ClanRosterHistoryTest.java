@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClanRosterHistoryTest
+{
+	private static final int ROSTERS = 40;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dir;
+	private final List<Long> addedAt = new ArrayList<>();
+
+	@Before
+	public void before() throws Exception
+	{
+		dir = folder.newFolder();
+		ClanRosterHistory history = new ClanRosterHistory(dir);
+		for (int i = 1; i <= ROSTERS; i++)
+		{
+			assertTrue(history.append("Some Clan", roster(i)));
+			addedAt.add(System.currentTimeMillis());
+			Thread.sleep(2);
+		}
+		history.close();
+	}
+
+	@Test
+	public void testAsOf() throws Exception
+	{
+		ClanRosterHistory history = new ClanRosterHistory(dir);
+
+		assertEquals(ROSTERS, history.size("Some Clan"));
+		for (int i = 0; i < ROSTERS; i++)
+		{
+			assertEquals(i + 1, history.asOf("Some Clan", addedAt.get(i)).size());
+		}
+		assertEquals(ClanRosterHash.of(roster(ROSTERS)), history.asOf("Some Clan", Long.MAX_VALUE).getHash());
+		assertNull(history.asOf("Some Clan", 0));
+		assertNull(history.asOf("Other Clan", Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testUnchangedRosterIsNotAdded() throws Exception
+	{
+		ClanRosterHistory history = new ClanRosterHistory(dir);
+
+		assertFalse(history.append("Some Clan", roster(ROSTERS)));
+		assertEquals(ROSTERS, history.size("Some Clan"));
+	}
+
+	@Test
+	public void testCutOffRecordIsTruncated() throws Exception
+	{
+		File log = file(".log");
+		try (RandomAccessFile file = new RandomAccessFile(log, "rw"))
+		{
+			file.setLength(file.length() - 5);
+		}
+
+		ClanRosterHistory history = new ClanRosterHistory(dir);
+		history.recover();
+		assertEquals(ROSTERS - 1, history.size("Some Clan"));
+		assertEquals(ROSTERS - 1, history.asOf("Some Clan", Long.MAX_VALUE).size());
+
+		assertTrue(history.append("Some Clan", roster(ROSTERS)));
+		assertEquals(ROSTERS, history.asOf("Some Clan", Long.MAX_VALUE).size());
+	}
+
+	@Test
+	public void testLostIndexIsRebuilt() throws Exception
+	{
+		assertTrue(file(".idx").delete());
+
+		ClanRosterHistory history = new ClanRosterHistory(dir);
+		assertEquals(ROSTERS, history.size("Some Clan"));
+		for (int i = 0; i < ROSTERS; i++)
+		{
+			assertEquals(i + 1, history.asOf("Some Clan", addedAt.get(i)).size());
+		}
+		assertEquals(ROSTERS / ClanRosterHistory.INDEX_INTERVAL + 1, file(".idx").length() / 16);
+	}
+
+	@Test
+	public void testWholeRosterIsKept() throws Exception
+	{
+		List<ClanMemberMap> roster = Arrays.asList(
+			new ClanMemberMap("ClanMember 1", "Sapphire", "19-Jun-2021", Collections.singletonMap("Clan title", "Skiller"), "Old Name"),
+			new ClanMemberMap("ClanMember 2", "Ruby", "Some time ago", Collections.singletonMap("Clan title", "Legend")));
+
+		ClanRosterHistory history = new ClanRosterHistory(dir);
+		assertTrue(history.append("Some Clan", roster));
+
+		ClanRoster kept = history.asOf("Some Clan", Long.MAX_VALUE);
+		assertEquals(ClanRosterHash.of(roster), kept.getHash());
+		assertEquals("Old Name", kept.get(0).getPreviousRsn());
+		assertEquals("Some time ago", kept.get(1).getJoinedDate());
+		assertEquals("Legend", kept.get(1).getColumns().get("Clan title"));
+		assertFalse(history.append("Some Clan", kept));
+	}
+
+	private File file(String extension)
+	{
+		File[] files = dir.listFiles((d, name) -> name.endsWith(extension));
+		assertEquals(1, files.length);
+		return files[0];
+	}
+
+	private static List<ClanMemberMap> roster(int size)
+	{
+		ClanRoster.Builder roster = new ClanRoster.Builder(size);
+		for (int i = 0; i < size; i++)
+		{
+			roster.add("ClanMember " + i, i % 3 == 0 ? "Ruby" : "Sapphire", "19-Jun-2021");
+		}
+		return roster.build();
+	}
+}
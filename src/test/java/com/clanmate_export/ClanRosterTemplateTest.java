@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class ClanRosterTemplateTest
+{
+	private static final List<ClanMemberMap> MEMBERS = Arrays.asList(
+		new ClanMemberMap("Zezima", "Owner", "1-Jan-2022", columns("1500", "Zezima's alt")),
+		new ClanMemberMap("Lynx_Titan", "Sapphire", "4-Jul-2021", columns("2277", "Main")),
+		new ClanMemberMap("Woox", "Recruit", "19-Jun-2021", columns("2100", "Says \"hi\", often")));
+
+	private static Map<String, String> columns(String totalLevel, String notes)
+	{
+		Map<String, String> columns = new LinkedHashMap<>();
+		columns.put("Total level", totalLevel);
+		columns.put("Notes", notes);
+		return columns;
+	}
+
+	@Test
+	public void testDefaultMatchesCsv() throws IOException
+	{
+		List<ClanMemberMap> members = Arrays.asList(
+			new ClanMemberMap("Zezima", "Owner", "1-Jan-2022"),
+			new ClanMemberMap("Lynx Titan", "Sapphire", "4-Jul-2021"));
+
+		assertEquals("Zezima,Owner,1-Jan-2022\nLynx Titan,Sapphire,4-Jul-2021", write(ClanRosterTemplate.parse(""), members, false));
+		assertEquals("Zezima,\nLynx Titan,", write(ClanRosterTemplate.CSV, members, true));
+		assertSame(ClanRosterTemplate.CSV, ClanRosterTemplate.parse("csv"));
+	}
+
+	@Test
+	public void testCsvEscaping() throws IOException
+	{
+		assertEquals("Zezima,Owner,1-Jan-2022,1500,Zezima's alt\n"
+				+ "Lynx_Titan,Sapphire,4-Jul-2021,2277,Main\n"
+				+ "Woox,Recruit,19-Jun-2021,2100,\"Says \"\"hi\"\", often\"",
+			write(ClanRosterTemplate.CSV, MEMBERS, false));
+	}
+
+	@Test
+	public void testPresets() throws IOException
+	{
+		assertEquals("RSN\tRank\tJoined\tTotal level\tNotes\nZezima\tOwner\t1-Jan-2022\t1500\tZezima's alt",
+			write(ClanRosterTemplate.parse("tsv"), MEMBERS.subList(0, 1), false));
+		assertEquals("| RSN | Rank | Joined | Total level | Notes |\n| --- | --- | --- | --- | --- |\n| Lynx_Titan | Sapphire | 4-Jul-2021 | 2277 | Main |",
+			write(ClanRosterTemplate.parse("Markdown"), MEMBERS.subList(1, 2), false));
+		assertEquals("Lynx\\_Titan - Sapphire - 4-Jul-2021 - 2277 - Main",
+			write(ClanRosterTemplate.parse("discord"), MEMBERS.subList(1, 2), false));
+	}
+
+	@Test
+	public void testCustomTemplate() throws IOException
+	{
+		ClanRosterTemplate template = ClanRosterTemplate.parse("joined, RSN, Total level, Missing | delimiter=; | header | prefix=> ");
+
+		assertEquals(">RSN", write(template, MEMBERS.subList(0, 0), true));
+		assertEquals(">Joined;RSN;Total level;Missing\n>1-Jan-2022;Zezima;1500;\n>4-Jul-2021;Lynx_Titan;2277;",
+			write(template, MEMBERS.subList(0, 2), false));
+		assertEquals(">RSN\n>Zezima", write(template, MEMBERS.subList(0, 1), true));
+	}
+
+	@Test
+	public void testRecompilesForOtherColumns() throws IOException
+	{
+		ClanRosterTemplate template = ClanRosterTemplate.parse("rsn,* | delimiter=tab | escape=none");
+		List<ClanMemberMap> noColumns = Arrays.asList(new ClanMemberMap("Zezima", "Owner", "1-Jan-2022"));
+
+		assertEquals("Zezima\t1500\tZezima's alt", write(template, MEMBERS.subList(0, 1), false));
+		assertEquals("Zezima", write(template, noColumns, false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownOption()
+	{
+		ClanRosterTemplate.parse("rsn,rank | colour=red");
+	}
+
+	private static String write(ClanRosterTemplate template, List<ClanMemberMap> members, boolean userNamesOnly) throws IOException
+	{
+		StringBuilder out = new StringBuilder();
+		ClanRosterWriter.writeTemplate(template, members, userNamesOnly, out);
+		return out.toString();
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class ClanRosterTest
+{
+	private static final List<ClanMemberMap> MEMBERS = Arrays.asList(
+		new ClanMemberMap("ClanMember 1", "Sapphire", "19-Jun-2021"),
+		new ClanMemberMap("ClanMember 2", "Ruby", "4-Jul-2021"),
+		new ClanMemberMap("Zero Padded", "Sapphire", "04-Jul-2021"),
+		new ClanMemberMap("No Date", "Owner", ""),
+		new ClanMemberMap("Odd Date", "Sapphire", "Yesterday"));
+
+	@Test
+	public void testViewsReadAsInput()
+	{
+		ClanRoster roster = ClanRoster.copyOf(MEMBERS);
+
+		assertEquals(MEMBERS.size(), roster.size());
+		assertEquals(3, roster.getRanks().length);
+		for (int i = 0; i < MEMBERS.size(); i++)
+		{
+			assertEquals(MEMBERS.get(i).getRSN(), roster.get(i).getRSN());
+			assertEquals(MEMBERS.get(i).getRank(), roster.get(i).getRank());
+			assertEquals(MEMBERS.get(i).getJoinedDate(), roster.get(i).getJoinedDate());
+		}
+		assertEquals(18797, roster.getJoinedEpochDay(0));
+		assertEquals(-1, roster.getJoinedEpochDay(3));
+	}
+
+	@Test
+	public void testExportsUnchanged() throws Exception
+	{
+		ClanRoster roster = ClanRoster.copyOf(MEMBERS);
+
+		StringBuilder expected = new StringBuilder();
+		StringBuilder actual = new StringBuilder();
+		ClanRosterWriter.writeCsv(MEMBERS, false, expected);
+		ClanRosterWriter.writeCsv(roster, false, actual);
+		assertEquals(expected.toString(), actual.toString());
+
+		expected.setLength(0);
+		actual.setLength(0);
+		ClanRosterWriter.writeJson(MEMBERS, expected);
+		ClanRosterWriter.writeJson(roster, actual);
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	@Test
+	public void testHashMatchesRows()
+	{
+		ClanRoster roster = ClanRoster.copyOf(MEMBERS);
+
+		ClanRosterHash hash = new ClanRosterHash();
+		for (int i = roster.size() - 1; i >= 0; i--)
+		{
+			hash.add(roster.get(i));
+		}
+		assertEquals(hash.value(), roster.getHash());
+	}
+}
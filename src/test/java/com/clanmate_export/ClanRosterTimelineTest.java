@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.clanmate_export;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClanRosterTimelineTest
+{
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	private static final long START = 1_600_000_000_000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dir;
+
+	/**
+	 * Week 0 starts with Alice and Bob. Carol joins in week 1 and leaves in
+	 * week 2, Bob is promoted in week 3 and Dave joins in week 4.
+	 */
+	@Before
+	public void before() throws Exception
+	{
+		dir = folder.newFolder();
+		ClanRosterTimeline timeline = new ClanRosterTimeline(dir);
+		timeline.append("Some Clan", roster("Alice", "Recruit", "Bob", "Recruit"), week(0));
+		timeline.append("Some Clan", roster("Alice", "Recruit", "Bob", "Recruit", "Carol", "Recruit"), week(1));
+		timeline.append("Some Clan", roster("Alice", "Recruit", "Bob", "Recruit"), week(2));
+		timeline.append("Some Clan", roster("Alice", "Recruit", "Bob", "Sergeant"), week(3));
+		timeline.append("Some Clan", roster("Alice", "Recruit", "Bob", "Sergeant", "Dave", "Recruit"), week(4));
+		timeline.append("Some Clan", roster("Alice", "Recruit", "Bob", "Sergeant", "Dave", "Recruit"), week(10));
+		timeline.close();
+	}
+
+	@Test
+	public void testJoinedAndLeft() throws Exception
+	{
+		ClanRosterTimeline timeline = new ClanRosterTimeline(dir);
+
+		List<ClanMemberChange> joined = timeline.joinedBetween("Some Clan", week(0), week(4));
+		assertEquals(2, joined.size());
+		assertEquals("Carol", joined.get(0).getRSN());
+		assertEquals(week(1), joined.get(0).getTimestamp());
+		assertEquals("Dave", joined.get(1).getRSN());
+
+		assertEquals(1, timeline.joinedBetween("Some Clan", week(2), week(10)).size());
+		assertEquals("Carol", timeline.leftBetween("Some Clan", week(2), week(2)).get(0).getRSN());
+		assertEquals(0, timeline.changesBetween("Some Clan", week(5), week(10)).size());
+	}
+
+	@Test
+	public void testHistory() throws Exception
+	{
+		ClanRosterTimeline timeline = new ClanRosterTimeline(dir);
+
+		List<ClanMemberChange> history = timeline.history("Some Clan", "Bob");
+		assertEquals(2, history.size());
+		assertEquals(ClanMemberChange.Type.JOINED, history.get(0).getChange());
+		assertEquals("Recruit", history.get(0).getRank());
+		assertEquals(ClanMemberChange.Type.RANK_CHANGED, history.get(1).getChange());
+		assertEquals("Sergeant", history.get(1).getRank());
+		assertEquals(week(3), history.get(1).getTimestamp());
+		assertEquals(0, timeline.history("Some Clan", "Nobody").size());
+	}
+
+	@Test
+	public void testRetention() throws Exception
+	{
+		ClanRosterTimeline timeline = new ClanRosterTimeline(dir);
+
+		List<ClanMemberChange> retention = timeline.retention("Some Clan", week(0), week(10), 30);
+		assertEquals(2, retention.size());
+		assertEquals(ClanMemberChange.Type.LEFT, retention.get(0).getChange());
+		assertEquals("Carol", retention.get(0).getRSN());
+		assertEquals(ClanMemberChange.Type.JOINED, retention.get(1).getChange());
+		assertEquals(0.5, ClanRosterTimeline.retentionRate(retention), 0);
+
+		//Dave joined too recently to know about 60 days
+		assertEquals(1, timeline.retention("Some Clan", week(0), week(10), 60).size());
+	}
+
+	@Test
+	public void testCutOffRecordIsTruncated() throws Exception
+	{
+		File[] files = dir.listFiles();
+		try (RandomAccessFile file = new RandomAccessFile(files[0], "rw"))
+		{
+			file.setLength(file.length() - 3);
+		}
+
+		//Only week 10 is lost, so 30 day retention isn't known for anyone
+		ClanRosterTimeline timeline = new ClanRosterTimeline(dir);
+		assertEquals(2, timeline.joinedBetween("Some Clan", week(0), week(10)).size());
+		assertEquals(0, timeline.retention("Some Clan", week(0), week(10), 30).size());
+		timeline.append("Some Clan", roster("Alice", "Recruit", "Bob", "Sergeant", "Dave", "Recruit"), week(11));
+		assertEquals(0, timeline.changesBetween("Some Clan", week(11), week(11)).size());
+	}
+
+	@Test
+	public void testChangesExport() throws Exception
+	{
+		ClanRosterTimeline timeline = new ClanRosterTimeline(dir);
+
+		StringBuilder csv = new StringBuilder();
+		ClanRosterWriter.writeChanges(ClanMateExportDataFormat.CSV, timeline.history("Some Clan", "Carol"), csv);
+		String[] rows = csv.toString().split("\n");
+		assertEquals(2, rows.length);
+		assertEquals("Carol,JOINED,Recruit,", rows[0].substring(0, rows[0].lastIndexOf(',') + 1));
+		assertEquals("Carol,LEFT,,", rows[1].substring(0, rows[1].lastIndexOf(',') + 1));
+	}
+
+	@Test
+	public void testChangesCsvIsEscaped() throws Exception
+	{
+		List<ClanMemberChange> changes = Collections.singletonList(
+			new ClanMemberChange("Alice", ClanMemberChange.Type.JOINED, "Rank, \"the\" best", "01-Jan-2021", START));
+
+		StringBuilder csv = new StringBuilder();
+		ClanRosterWriter.writeChanges(ClanMateExportDataFormat.CSV, changes, csv);
+		assertEquals("Alice,JOINED,\"Rank, \"\"the\"\" best\",01-Jan-2021", csv.toString());
+	}
+
+	private static long week(int week)
+	{
+		return START + week * 7 * DAY;
+	}
+
+	private static List<ClanMemberMap> roster(String... namesAndRanks)
+	{
+		List<ClanMemberMap> roster = new ArrayList<>();
+		for (int i = 0; i < namesAndRanks.length; i += 2)
+		{
+			roster.add(new ClanMemberMap(namesAndRanks[i], namesAndRanks[i + 1], ""));
+		}
+		return roster;
+	}
+}
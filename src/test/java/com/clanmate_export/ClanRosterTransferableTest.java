@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021, Bailey Townsend <baileytownsend2323@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.clanmate_export;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ClanRosterTransferableTest
+{
+	private static final ClanRoster MEMBERS = ClanRoster.copyOf(Arrays.asList(
+		new ClanMemberMap("ClanMember 1", "Sapphire", "19-Jun-2021"),
+		new ClanMemberMap("Tom & Jerry", "<Ruby>", "4-Jul-2021")));
+
+	@Test
+	public void testFlavors() throws Exception
+	{
+		ClanMateExportMetrics metrics = new ClanMateExportMetrics();
+		ClanRosterTransferable contents = new ClanRosterTransferable("Clan", MEMBERS, ClanMateExportDataFormat.CSV, false, metrics);
+		assertTrue(metrics.dump().contains("Serialize: 0 runs"));
+
+		Object text = contents.getTransferData(DataFlavor.stringFlavor);
+		assertEquals("ClanMember 1,Sapphire,19-Jun-2021\nTom & Jerry,<Ruby>,4-Jul-2021", text);
+		assertSame(text, contents.getTransferData(DataFlavor.stringFlavor));
+		assertTrue(metrics.dump().contains("Serialize: 1 runs"));
+		assertEquals(text, contents.getTransferData(ClanRosterTransferable.CSV_FLAVOR));
+		assertEquals("<table>\n<tr><th>RSN</th><th>Rank</th><th>Joined</th></tr>\n"
+				+ "<tr><td>ClanMember 1</td><td>Sapphire</td><td>19-Jun-2021</td></tr>\n"
+				+ "<tr><td>Tom &amp; Jerry</td><td>&lt;Ruby&gt;</td><td>4-Jul-2021</td></tr>\n</table>",
+			contents.getTransferData(DataFlavor.allHtmlFlavor));
+	}
+
+	@Test(expected = UnsupportedFlavorException.class)
+	public void testUnsupportedFlavor() throws Exception
+	{
+		new ClanRosterTransferable("Clan", MEMBERS, ClanMateExportDataFormat.CSV, false, null)
+			.getTransferData(DataFlavor.imageFlavor);
+	}
+
+	@Test
+	public void testSameAs()
+	{
+		ClanRosterTransferable first = new ClanRosterTransferable("Clan", MEMBERS, ClanMateExportDataFormat.CSV, false, null);
+		ClanRosterTransferable again = new ClanRosterTransferable("Clan", ClanRoster.copyOf(Arrays.asList(MEMBERS.get(0), MEMBERS.get(1))),
+			ClanMateExportDataFormat.CSV, false, null);
+		assertTrue(again.sameAs(first));
+		assertFalse(new ClanRosterTransferable("Clan", MEMBERS, ClanMateExportDataFormat.CSV, true, null).sameAs(first));
+
+		first.lostOwnership(null, first);
+		assertFalse(again.sameAs(first));
+	}
+}